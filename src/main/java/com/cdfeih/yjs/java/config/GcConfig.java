@@ -0,0 +1,14 @@
+package com.cdfeih.yjs.java.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 垃圾回收配置类，启用后按 yjs.gc.interval 的间隔定期释放文档中已删除内容占用的内存
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "yjs.gc", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class GcConfig {
+}
@@ -2,6 +2,7 @@ package com.cdfeih.yjs.java.controller;
 
 
 import com.cdfeih.yjs.java.crdt.CRDT;
+import com.cdfeih.yjs.java.crdt.delta.Delta;
 import com.cdfeih.yjs.java.crdt.operation.BaseCRDTOperation;
 import com.cdfeih.yjs.java.crdt.operation.CRDTOperation;
 import com.cdfeih.yjs.java.crdt.types.YArray;
@@ -10,6 +11,8 @@ import com.cdfeih.yjs.java.crdt.types.YText;
 import com.cdfeih.yjs.java.service.YDocService;
 import com.cdfeih.yjs.java.ydoc.YDoc;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -17,8 +20,13 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -29,6 +37,11 @@ import java.util.UUID;
 @RequestMapping("/api/crdt")
 public class RestApiController {
 
+    // 分页读取数组时的默认页大小和最大页大小
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 10000;
+    private static final int MAX_PAGE_ATTEMPTS = 3;
+
     private final YDocService yDocService;
 
     @Autowired
@@ -154,16 +167,98 @@ public class RestApiController {
 
     /**
      * 获取共享类型的状态
+     * <p>
+     * 指定offset或limit时按页读取数组，只复制请求的这一页，返回元素及数组总长度
      *
-     * @param docId 文档ID
-     * @param name  共享类型名称
-     * @return 共享类型状态
+     * @param docId  文档ID
+     * @param name   共享类型名称
+     * @param offset 分页起始位置，可选
+     * @param limit  每页元素数量，可选，默认100，最大10000
+     * @return 共享类型状态，或数组的一页元素
      */
     @GetMapping("/documents/{docId}/shared-types/{name}")
-    public ResponseEntity<?> getSharedTypeState(@PathVariable String docId, @PathVariable String name) {
+    public ResponseEntity<?> getSharedTypeState(@PathVariable String docId, @PathVariable String name,
+                                                @RequestParam(required = false) Integer offset,
+                                                @RequestParam(required = false) Integer limit) {
         try {
             CRDT sharedType = yDocService.getSharedType(docId, name);
-            return ResponseEntity.ok(sharedType.getState());
+            if (offset == null && limit == null) {
+                return ResponseEntity.ok(sharedType.getState());
+            }
+            if (!(sharedType instanceof YArray)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Paging is only supported for arrays: " + name));
+            }
+            if ((offset != null && offset < 0) || (limit != null && limit < 0)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "offset and limit must not be negative"));
+            }
+            return getArrayPage((YArray) sharedType, offset == null ? 0 : offset,
+                    limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * 读取数组的一页元素，只复制这一页
+     * <p>
+     * 读取期间数组被修改时重新读取，保证返回的元素和总数来自同一版本
+     */
+    private ResponseEntity<?> getArrayPage(YArray array, int offset, int limit) {
+        for (int attempt = 0; attempt < MAX_PAGE_ATTEMPTS; attempt++) {
+            try {
+                long version = array.getVersion();
+                int total = array.size();
+                int from = Math.min(offset, total);
+                List<Object> items = new ArrayList<>(array.slice(from, Math.min(total, from + limit)));
+                if (array.getVersion() != version) {
+                    continue;
+                }
+                return ResponseEntity.ok(Map.of(
+                        "offset", from,
+                        "limit", limit,
+                        "total", total,
+                        "version", version,
+                        "items", items
+                ));
+            } catch (ConcurrentModificationException | IndexOutOfBoundsException e) {
+                // 数组在读取期间被修改，重新读取
+            }
+        }
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "Array is being modified concurrently, please retry"));
+    }
+
+    /**
+     * 获取文本自指定版本以来的变更（Quill Delta格式）
+     *
+     * @param docId 文档ID
+     * @param name  文本名称
+     * @param since 客户端已有的版本
+     * @return 变更及当前版本；该版本的历史已被丢弃时返回410，客户端应重新获取完整状态
+     */
+    @GetMapping("/documents/{docId}/shared-types/{name}/delta")
+    public ResponseEntity<?> getTextDelta(@PathVariable String docId, @PathVariable String name,
+                                          @RequestParam long since) {
+        try {
+            CRDT sharedType = yDocService.getSharedType(docId, name);
+            if (!(sharedType instanceof YText)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Shared type is not a text: " + name));
+            }
+
+            YText text = (YText) sharedType;
+            long version = text.getVersion();
+            Delta delta = text.getDelta(since, version);
+            if (delta == null) {
+                return ResponseEntity.status(HttpStatus.GONE).body(Map.of(
+                        "error", "Delta history not available since version " + since,
+                        "version", version
+                ));
+            }
+            return ResponseEntity.ok(Map.of(
+                    "fromVersion", since,
+                    "version", version,
+                    "delta", delta
+            ));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.notFound().build();
         }
@@ -201,6 +296,59 @@ public class RestApiController {
         }
     }
 
+    /**
+     * 获取文档的二进制状态向量，客户端把它发送给另一方以获取自己缺少的更新
+     *
+     * @param docId 文档ID
+     * @return 编码后的状态向量
+     */
+    @GetMapping(value = "/documents/{docId}/state-vector", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> getStateVector(@PathVariable String docId) {
+        try {
+            return ResponseEntity.ok(yDocService.encodeStateVector(docId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * 获取客户端尚未见过的二进制更新
+     *
+     * @param docId       文档ID
+     * @param stateVector 客户端编码后的状态向量，为空时返回整个文档
+     * @return 编码后的更新
+     */
+    @PostMapping(value = "/documents/{docId}/updates/diff",
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> getUpdate(@PathVariable String docId,
+                                            @RequestBody(required = false) byte[] stateVector) {
+        try {
+            return ResponseEntity.ok(yDocService.encodeStateAsUpdate(docId, stateVector));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (UncheckedIOException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * 应用客户端发送的二进制更新
+     *
+     * @param docId  文档ID
+     * @param update 编码后的更新
+     * @return 应用结果
+     */
+    @PostMapping(value = "/documents/{docId}/updates", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Map<String, String>> applyUpdate(@PathVariable String docId, @RequestBody byte[] update) {
+        try {
+            yDocService.applyUpdate(docId, update);
+            return ResponseEntity.ok(Map.of("status", "success"));
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
     /**
      * 合并两个文档
      *
@@ -1,12 +1,18 @@
 package com.cdfeih.yjs.java.controller;
 
+import com.cdfeih.yjs.java.crdt.CRDT;
+import com.cdfeih.yjs.java.crdt.delta.Delta;
 import com.cdfeih.yjs.java.crdt.operation.CRDTOperation;
+import com.cdfeih.yjs.java.crdt.types.YText;
+import com.cdfeih.yjs.java.ydoc.Transaction;
 import com.cdfeih.yjs.java.ydoc.YDoc;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -15,6 +21,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -51,23 +58,92 @@ public class YjsController {
 
     /**
      * 处理客户端发送的CRDT操作
+     * <p>
+     * 文档ID取自目的地，操作的目标ID是文档中共享类型的名称
      *
+     * @param docId     文档ID
      * @param operation 操作对象
      */
-    @MessageMapping("/operation")
+    @MessageMapping("/operation/{docId}")
     @SendTo("/topic/operations")
-    public CRDTOperation handleOperation(@Payload CRDTOperation operation) {
+    public CRDTOperation handleOperation(@DestinationVariable String docId, @Payload CRDTOperation operation) {
         // 应用操作到相应的文档
-        String docId = operation.getTargetId();
         YDoc doc = documents.get(docId);
         if (doc != null) {
-            doc.applyOperation(operation);
+            String name = operation.getTargetId();
+            CRDT target = doc.get(name);
+            if (target instanceof YText) {
+                // 修改前后的版本号在同一个事务中、持有文本写锁时读取，并发的操作不会被漏掉或重复广播
+                Transaction tx = doc.transact(t -> {
+                    t.get(name);
+                    t.applyOperation(operation);
+                });
+                broadcastDelta(docId, name, (YText) target, tx.getStartVersion(name), tx.getCommittedVersion(name));
+            } else {
+                doc.applyOperation(operation);
+            }
         }
 
         // 广播操作给所有其他客户端
         return operation;
     }
 
+    /**
+     * 在一个事务中应用客户端发送的一批操作（如全部替换），向订阅文档的客户端广播合并后的一个二进制更新，
+     * 而不是每个操作一条消息
+     *
+     * @param docId      文档ID
+     * @param operations 操作列表
+     */
+    @MessageMapping("/operations/{docId}")
+    public void handleOperations(@DestinationVariable String docId, @Payload List<CRDTOperation> operations) {
+        YDoc doc = documents.get(docId);
+        if (doc == null || operations.isEmpty()) {
+            return;
+        }
+        Transaction tx = doc.transact(t -> operations.forEach(t::applyOperation));
+        if (!tx.getChanged().isEmpty()) {
+            messagingTemplate.convertAndSend("/topic/document/" + docId + "/update", tx.encodeUpdate());
+        }
+    }
+
+    /**
+     * 处理客户端发送的二进制更新（{@link YDoc#encodeStateAsUpdate(byte[])}的编码），应用后原样转发给订阅文档的客户端
+     * <p>
+     * 与{@link #handleOperation(String, CRDTOperation)}的JSON操作相比，更新只包含变化的结构，一次按键通常只有十几个字节
+     *
+     * @param docId  文档ID
+     * @param update 编码后的更新
+     */
+    @MessageMapping("/update/{docId}")
+    public void handleUpdate(@DestinationVariable String docId, @Payload byte[] update) {
+        YDoc doc = documents.get(docId);
+        if (doc == null) {
+            return;
+        }
+        doc.applyUpdate(update);
+        messagingTemplate.convertAndSend("/topic/document/" + docId + "/update", update);
+    }
+
+    /**
+     * 向订阅文档的客户端广播文本的增量变更，客户端无需重新获取整个文本
+     *
+     * @param docId       文档ID
+     * @param name        文本名称
+     * @param text        文本实例
+     * @param fromVersion 修改前的版本
+     * @param version     修改后的版本
+     */
+    private void broadcastDelta(String docId, String name, YText text, long fromVersion, long version) {
+        Delta delta = text.getDelta(fromVersion, version);
+        if (delta != null && !delta.isEmpty()) {
+            messagingTemplate.convertAndSend(
+                    "/topic/document/" + docId + "/delta",
+                    Map.of("name", name, "fromVersion", fromVersion, "version", version, "delta", delta)
+            );
+        }
+    }
+
     /**
      * 处理客户端连接
      *
@@ -159,4 +235,12 @@ public class YjsController {
         return Map.of("error", "Documents not found");
     }
 
+    /**
+     * 定期对WebSocket会话使用的文档执行垃圾回收，间隔由 yjs.gc.interval 配置（毫秒）
+     */
+    @Scheduled(fixedDelayString = "${yjs.gc.interval:60000}", initialDelayString = "${yjs.gc.interval:60000}")
+    public void collectGarbage() {
+        documents.values().forEach(YDoc::gc);
+    }
+
 }
\ No newline at end of file
@@ -1,25 +1,94 @@
 package com.cdfeih.yjs.java.crdt;
 
+import com.cdfeih.yjs.java.crdt.encoding.UpdateDecoder;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateEncoder;
+import com.cdfeih.yjs.java.crdt.event.YEvent;
+import com.fasterxml.jackson.annotation.JsonValue;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * CRDT接口的基础实现类
+ * <p>
+ * 共享类型可以作为YMap和YArray的值嵌套，嵌套的类型记录其父类型及所在位置，
+ * 其修改会通知父类型链上所有的深度观察者（{@link #observeDeep(Consumer)}）。嵌套的类型使用自己的客户端ID，
+ * 与父类型的时钟空间互不重叠，因此父类型的状态向量可以包含嵌套类型的状态向量（见{@link #getStateVector()}）。
+ * <p>
+ * 每次修改（批量修改时为每次提交）生成一个描述具体变化的事件，先通知类型自身的观察者（{@link #observe(Consumer)}），
+ * 再通知各级父类型上的深度观察者。观察者默认在修改的线程中同步执行，也可以在注册时指定执行器异步处理。
+ * 只有存在观察者时类型才记录变化的细节，没有观察者时不产生额外开销。
  */
 @Getter
 @Setter
 public abstract class BaseCRDT implements CRDT {
 
     private String id;
-    protected long version;
-    protected long timestamp;
+    // 版本号，每次修改递增；允许并发写入的类型（如YMap）在共享锁下递增，因此使用原子计数
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    protected final AtomicLong version;
+    protected volatile long timestamp;
+    // 本地副本的客户端ID，尚未生成过时钟时注册到YDoc会改为使用文档的客户端ID
+    private int clientId;
+    // 本地逻辑时钟，即下一个本地生成的结构将使用的时钟值
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicLong clock;
+    // 嵌套时所属的父类型，以及在父类型中的位置：映射的键或数组元素的ID
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile BaseCRDT parent;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile Object parentKey;
+    // 自身的观察者和深度观察者
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final transient List<Listener> observers;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final transient List<Listener> deepObservers;
+    // 批量修改的持有线程和嵌套深度，以及批量修改期间发生变化的类型（当前类型或其嵌套的类型），后两者只由持有线程访问
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile Thread batchOwner;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int batchDepth;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Set<BaseCRDT> batchChanges;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Object batchOrigin;
 
     public BaseCRDT() {
         this.id = generateId();
-        this.version = 0;
+        this.version = new AtomicLong();
         this.timestamp = System.currentTimeMillis();
+        this.clientId = ID.generateClientId();
+        this.clock = new AtomicLong();
+        this.observers = new CopyOnWriteArrayList<>();
+        this.deepObservers = new CopyOnWriteArrayList<>();
     }
 
     @Override
@@ -32,23 +101,413 @@ public abstract class BaseCRDT implements CRDT {
         return this.id;
     }
 
+    /**
+     * 获取版本号
+     *
+     * @return 版本号
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 获取客户端ID
+     *
+     * @return 客户端ID
+     */
+    public int getClientId() {
+        return clientId;
+    }
+
+    /**
+     * 获取嵌套时所属的父类型
+     *
+     * @return 父类型，未嵌套时为null
+     */
+    public BaseCRDT getParent() {
+        return parent;
+    }
+
+    /**
+     * 获取在父类型中的位置
+     *
+     * @return 映射的键或数组元素的ID，未嵌套时为null
+     */
+    public Object getParentKey() {
+        return parentKey;
+    }
+
+    /**
+     * 挂到父类型下，由容器类型在插入或复制嵌套值时调用
+     *
+     * @param parent 父类型
+     * @param key    在父类型中的位置
+     */
+    public void setParent(BaseCRDT parent, Object key) {
+        this.parentKey = key;
+        this.parent = parent;
+    }
+
+    /**
+     * 检查共享类型能否作为当前类型的值嵌套
+     *
+     * @param type 要嵌套的共享类型
+     * @throws IllegalArgumentException 类型已嵌套在其他位置，或是当前类型自身或其祖先
+     */
+    protected void checkNestable(BaseCRDT type) {
+        if (type.getParent() != null) {
+            throw new IllegalArgumentException("Shared type is already nested: " + type.getId());
+        }
+        for (BaseCRDT node = this; node != null; node = node.getParent()) {
+            if (node == type) {
+                throw new IllegalArgumentException("Shared type cannot contain itself: " + type.getId());
+            }
+        }
+    }
+
+    /**
+     * 注册观察者，当前类型自身发生变化时收到事件，嵌套类型的变化不会通知
+     * <p>
+     * 回调在修改的线程中同步执行，此时可能持有当前类型的写锁，不应在回调中修改该类型
+     *
+     * @param observer 观察者
+     */
+    public void observe(Consumer<YEvent> observer) {
+        observe(observer, null);
+    }
+
+    /**
+     * 注册观察者，事件交给指定的执行器处理
+     *
+     * @param observer 观察者
+     * @param executor 执行观察者回调的执行器，为null时在修改的线程中同步执行
+     */
+    public void observe(Consumer<YEvent> observer, Executor executor) {
+        observers.add(new Listener(observer, executor));
+    }
+
+    /**
+     * 移除观察者
+     *
+     * @param observer 观察者
+     */
+    public void unobserve(Consumer<YEvent> observer) {
+        observers.removeIf(listener -> listener.observer == observer);
+    }
+
+    /**
+     * 注册深度观察者，当前类型及其嵌套的所有类型发生变化时都会收到事件
+     * <p>
+     * 回调在修改的线程中同步执行，此时可能持有发生变化的类型的写锁，不应在回调中修改该类型
+     *
+     * @param observer 观察者
+     */
+    public void observeDeep(Consumer<YEvent> observer) {
+        observeDeep(observer, null);
+    }
+
+    /**
+     * 注册深度观察者，事件交给指定的执行器处理
+     *
+     * @param observer 观察者
+     * @param executor 执行观察者回调的执行器，为null时在修改的线程中同步执行
+     */
+    public void observeDeep(Consumer<YEvent> observer, Executor executor) {
+        deepObservers.add(new Listener(observer, executor));
+    }
+
+    /**
+     * 移除深度观察者
+     *
+     * @param observer 观察者
+     */
+    public void unobserveDeep(Consumer<YEvent> observer) {
+        deepObservers.removeIf(listener -> listener.observer == observer);
+    }
+
+    /**
+     * 检查当前类型的变化是否有观察者关心，没有时类型不需要记录变化的细节
+     *
+     * @return 当前类型或其某个祖先上是否注册了观察者
+     */
+    protected boolean isObserved() {
+        if (!observers.isEmpty()) {
+            return true;
+        }
+        for (BaseCRDT node = this; node != null; node = node.parent) {
+            if (!node.deepObservers.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取本地逻辑时钟的当前值
+     *
+     * @return 下一个本地生成的结构将使用的时钟值
+     */
+    public long getClock() {
+        return clock.get();
+    }
+
+    /**
+     * 为本地新生成的结构分配一段连续的时钟值
+     *
+     * @param length 结构包含的元素数量
+     * @return 分配到的第一个时钟值
+     */
+    protected long nextClock(int length) {
+        return clock.getAndAdd(length);
+    }
+
+    /**
+     * 见到其他副本生成的时钟后推进本地时钟（Lamport时钟），保证之后本地生成的时钟大于已见过的时钟
+     *
+     * @param observed 其他副本生成的时钟值
+     */
+    protected void observeClock(long observed) {
+        clock.accumulateAndGet(observed + 1, Math::max);
+    }
+
     @Override
     public abstract void merge(CRDT other);
 
     @Override
+    @JsonValue
     public abstract Object getState();
 
+    /**
+     * 获取状态向量，即本类型中每个客户端已见过的下一个时钟
+     * <p>
+     * 每个共享类型有独立的时钟空间，状态向量只对生成它的类型有意义。包含嵌套类型的类型同时合入
+     * 已构建的嵌套类型的状态向量，编码时对方已有的嵌套类型只需编码其中对方尚未见过的部分
+     *
+     * @return 客户端ID到时钟的映射
+     */
+    public abstract Map<Integer, Long> getStateVector();
+
+    /**
+     * 编码对方尚未见过的状态
+     * <p>
+     * 编码包含状态向量之后的结构以及完整的删除信息；新的嵌套类型以其完整状态编码，
+     * 对方已有的嵌套类型用同一个状态向量编码其内部的变化（见{@link com.cdfeih.yjs.java.crdt.encoding.ValueCodec#writeDelta}）。
+     * 状态向量为空时编码完整状态，可以用{@link #applyState(UpdateDecoder)}应用到同类型的空实例上。
+     *
+     * @param out         编码器
+     * @param stateVector 对方的状态向量（客户端ID -> 已见过的下一个时钟）
+     */
+    public abstract void encodeState(UpdateEncoder out, Map<Integer, Long> stateVector);
+
+    /**
+     * 应用{@link #encodeState(UpdateEncoder, Map)}编码的状态，与合并另一个副本的效果相同
+     *
+     * @param in 解码器
+     * @throws IOException 数据不完整或格式错误
+     */
+    public abstract void applyState(UpdateDecoder in) throws IOException;
+
     @Override
     public abstract void applyOperation(Object operation);
 
     /**
-     * 递增版本号
+     * 垃圾回收，释放已删除内容占用的内存，默认不做任何处理
+     */
+    public void gc() {
+    }
+
+    /**
+     * 检查类型或其已构建的嵌套类型中是否有不体现在状态向量上的删除
+     * <p>
+     * 序列的删除不产生新的时钟，从对方的状态向量无法判断对方是否见过，同步嵌套类型时据此决定状态向量没有推进的嵌套类型是否仍需发送
+     *
+     * @return 是否有这样的删除，默认为false
+     */
+    public boolean hasDeletions() {
+        return false;
+    }
+
+    /**
+     * 获取保护类型状态的读写锁，批量修改期间持有其写锁
+     *
+     * @return 读写锁
+     */
+    protected abstract ReadWriteLock getLock();
+
+    /**
+     * 开始批量修改：获取写锁，之后当前线程对该类型及其嵌套类型的修改不再逐次递增版本号和通知观察者，
+     * 而是在{@link #endBatch()}时每个发生变化的类型合并为一次。可以嵌套调用，最外层结束时才提交
+     */
+    public void beginBatch() {
+        beginBatch(null);
+    }
+
+    /**
+     * 开始批量修改，提交时产生的事件带有指定的来源
+     *
+     * @param origin 事件的来源，见{@link YEvent#getOrigin()}
+     */
+    public void beginBatch(Object origin) {
+        getLock().writeLock().lock();
+        if (batchDepth++ == 0) {
+            batchChanges = Collections.newSetFromMap(new IdentityHashMap<>());
+            batchOrigin = origin;
+            batchOwner = Thread.currentThread();
+        }
+    }
+
+    /**
+     * 结束批量修改并释放写锁，最外层结束时为期间发生变化的每个类型递增一次版本号并通知观察者
+     *
+     * @return 本次结束是否提交了变化
+     */
+    public boolean endBatch() {
+        return endBatch(null);
+    }
+
+    /**
+     * 结束批量修改并释放写锁，最外层结束时在释放写锁之前读取提交后的版本号
+     *
+     * @param committedVersion 接收提交后的版本号，与提交在同一次加锁中读取；可以为null
+     * @return 本次结束是否提交了变化
+     */
+    public boolean endBatch(LongConsumer committedVersion) {
+        try {
+            if (--batchDepth > 0) {
+                return false;
+            }
+            Set<BaseCRDT> changed = batchChanges;
+            Object origin = batchOrigin;
+            batchChanges = null;
+            batchOrigin = null;
+            batchOwner = null;
+            for (BaseCRDT type : changed) {
+                if (type == this) {
+                    commitVersion(origin);
+                    continue;
+                }
+                Lock nested = type.getLock().writeLock();
+                nested.lock();
+                try {
+                    type.commitVersion(origin);
+                } finally {
+                    nested.unlock();
+                }
+            }
+            if (committedVersion != null) {
+                committedVersion.accept(version.get());
+            }
+            return !changed.isEmpty();
+        } finally {
+            getLock().writeLock().unlock();
+        }
+    }
+
+    /**
+     * 递增版本号；当前线程正在对该类型或其祖先批量修改时，只记录变化，到批量修改结束时再递增
      */
     protected void incrementVersion() {
-        this.version++;
+        BaseCRDT batch = batchOf(Thread.currentThread());
+        if (batch != null) {
+            batch.batchChanges.add(this);
+            return;
+        }
+        commitVersion(null);
+    }
+
+    /**
+     * 检查当前线程是否正在对该类型或其祖先批量修改
+     *
+     * @return 是否在批量修改中
+     */
+    protected boolean isBatched() {
+        return batchOf(Thread.currentThread()) != null;
+    }
+
+    private BaseCRDT batchOf(Thread current) {
+        for (BaseCRDT node = this; node != null; node = node.parent) {
+            if (node.batchOwner == current) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 实际递增版本号并通知观察者
+     *
+     * @param origin 产生变化的事务的来源，可以为null
+     */
+    protected void commitVersion(Object origin) {
+        bumpVersion();
+        fireEvent(origin);
+    }
+
+    /**
+     * 只递增版本号和更新时间戳，不通知观察者；由调用方另行通知
+     */
+    protected void bumpVersion() {
+        version.incrementAndGet();
         this.timestamp = System.currentTimeMillis();
     }
 
+    /**
+     * 合并时把版本号推进到不小于另一个副本的版本号
+     *
+     * @param observed 另一个副本的版本号
+     */
+    protected void advanceVersion(long observed) {
+        version.accumulateAndGet(observed, Math::max);
+    }
+
+    /**
+     * 创建描述自上一个事件以来的变化的事件，并清空记录的变化；子类返回带有具体变化的事件
+     *
+     * @param origin 事件的来源
+     * @return 事件，没有观察者或没有可通知的变化时返回null
+     */
+    protected YEvent createEvent(Object origin) {
+        return isObserved() ? new YEvent(this, List.of(), origin) : null;
+    }
+
+    /**
+     * 通知当前类型的观察者以及各级父类型上的深度观察者，调用方已持有当前类型的写锁
+     *
+     * @param origin 事件的来源
+     */
+    protected void fireEvent(Object origin) {
+        dispatch(createEvent(origin));
+    }
+
+    /**
+     * 把事件通知给当前类型的观察者以及各级父类型上的深度观察者
+     *
+     * @param event 事件，为null时不通知
+     */
+    protected void dispatch(YEvent event) {
+        if (event == null) {
+            return;
+        }
+        for (Listener listener : observers) {
+            listener.accept(event);
+        }
+        Deque<Object> path = null;
+        for (BaseCRDT node = this; node != null; node = node.parent) {
+            if (!node.deepObservers.isEmpty()) {
+                YEvent deepEvent = path == null ? event : event.withPath(new ArrayList<>(path));
+                for (Listener listener : node.deepObservers) {
+                    listener.accept(deepEvent);
+                }
+            }
+            if (node.parent != null) {
+                if (path == null) {
+                    path = new ArrayDeque<>();
+                }
+                path.addFirst(node.parentKey);
+            }
+        }
+    }
+
     /**
      * 检查是否需要合并
      *
@@ -58,10 +517,29 @@ public abstract class BaseCRDT implements CRDT {
     protected boolean shouldMerge(CRDT other) {
         if (other instanceof BaseCRDT) {
             BaseCRDT otherBase = (BaseCRDT) other;
-            return otherBase.version > this.version ||
-                    (otherBase.version == this.version && otherBase.timestamp > this.timestamp);
+            return otherBase.getVersion() > getVersion() ||
+                    (otherBase.getVersion() == getVersion() && otherBase.timestamp > this.timestamp);
         }
         return true;
     }
 
-}
\ No newline at end of file
+    // 观察者及执行其回调的执行器
+    private static final class Listener {
+        final Consumer<YEvent> observer;
+        final Executor executor;
+
+        Listener(Consumer<YEvent> observer, Executor executor) {
+            this.observer = observer;
+            this.executor = executor;
+        }
+
+        void accept(YEvent event) {
+            if (executor == null) {
+                observer.accept(event);
+            } else {
+                executor.execute(() -> observer.accept(event));
+            }
+        }
+    }
+
+}
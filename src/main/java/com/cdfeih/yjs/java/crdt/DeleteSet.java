@@ -0,0 +1,236 @@
+package com.cdfeih.yjs.java.crdt;
+
+import com.cdfeih.yjs.java.crdt.encoding.UpdateDecoder;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateEncoder;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 删除集合，按客户端记录已删除结构的ID范围
+ * <p>
+ * 每个客户端的删除范围按时钟排序，相邻或重叠的范围会被合并，因此一段连续的删除只占用一条记录。
+ * 编码时按客户端写出范围，每个范围的起始时钟写为与上一个范围末尾的差值，连续删除通常只占几个字节。
+ * 该类不是线程安全的，调用方需要自行加锁。
+ */
+public class DeleteSet implements Serializable {
+
+    private final Map<Integer, Ranges> clients;
+
+    public DeleteSet() {
+        this.clients = new HashMap<>();
+    }
+
+    /**
+     * 删除范围的回调接口
+     */
+    @FunctionalInterface
+    public interface RangeConsumer {
+        void accept(int client, long clock, long length);
+    }
+
+    /**
+     * 记录一段删除范围
+     *
+     * @param client 客户端ID
+     * @param clock  起始时钟
+     * @param length 范围长度
+     */
+    public void add(int client, long clock, long length) {
+        if (length <= 0) {
+            return;
+        }
+        clients.computeIfAbsent(client, k -> new Ranges()).add(clock, length);
+    }
+
+    /**
+     * 检查指定范围是否已被完全删除
+     *
+     * @param client 客户端ID
+     * @param clock  起始时钟
+     * @param length 范围长度
+     * @return 是否已全部删除
+     */
+    public boolean contains(int client, long clock, long length) {
+        Ranges ranges = clients.get(client);
+        return ranges != null && ranges.contains(clock, length);
+    }
+
+    /**
+     * 检查指定ID是否已被删除
+     *
+     * @param client 客户端ID
+     * @param clock  时钟
+     * @return 是否已删除
+     */
+    public boolean isDeleted(int client, long clock) {
+        return contains(client, clock, 1);
+    }
+
+    /**
+     * 按客户端和时钟顺序遍历所有删除范围
+     *
+     * @param consumer 回调
+     */
+    public void forEach(RangeConsumer consumer) {
+        clients.forEach((client, ranges) -> {
+            for (int i = 0; i < ranges.size; i++) {
+                consumer.accept(client, ranges.clocks[i], ranges.lengths[i]);
+            }
+        });
+    }
+
+    /**
+     * 获取删除范围的数量
+     *
+     * @return 范围数量
+     */
+    public int size() {
+        int size = 0;
+        for (Ranges ranges : clients.values()) {
+            size += ranges.size;
+        }
+        return size;
+    }
+
+    /**
+     * 检查删除集合是否为空
+     *
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return clients.isEmpty();
+    }
+
+    /**
+     * 编码删除集合
+     *
+     * @param out 编码器
+     */
+    public void write(UpdateEncoder out) {
+        out.writeVarUint(clients.size());
+        clients.forEach((client, ranges) -> {
+            out.writeClient(client);
+            out.writeVarUint(ranges.size);
+            long end = 0;
+            for (int i = 0; i < ranges.size; i++) {
+                out.writeVarUint(ranges.clocks[i] - end);
+                out.writeVarUint(ranges.lengths[i]);
+                end = ranges.clocks[i] + ranges.lengths[i];
+            }
+        });
+    }
+
+    /**
+     * 解码{@link #write(UpdateEncoder)}编码的删除集合
+     *
+     * @param in 解码器
+     * @return 删除集合
+     * @throws IOException 数据不完整或格式错误
+     */
+    public static DeleteSet read(UpdateDecoder in) throws IOException {
+        DeleteSet deleteSet = new DeleteSet();
+        int clients = in.readLength();
+        for (int c = 0; c < clients; c++) {
+            int client = in.readClient();
+            int count = in.readLength();
+            long end = 0;
+            for (int i = 0; i < count; i++) {
+                long clock = end + in.readVarUint();
+                long length = in.readVarUint();
+                deleteSet.add(client, clock, length);
+                end = clock + length;
+            }
+        }
+        return deleteSet;
+    }
+
+    /**
+     * 清空删除集合
+     */
+    public void clear() {
+        clients.clear();
+    }
+
+    // 单个客户端的有序删除范围，使用两个并列的基本类型数组存储
+    private static class Ranges implements Serializable {
+        long[] clocks = new long[4];
+        long[] lengths = new long[4];
+        int size;
+
+        void add(long clock, long length) {
+            long end = clock + length;
+            // 常见情况：按时钟顺序追加或与最后一个范围相接
+            if (size > 0 && clock >= clocks[size - 1]) {
+                long lastEnd = clocks[size - 1] + lengths[size - 1];
+                if (clock <= lastEnd) {
+                    lengths[size - 1] = Math.max(lastEnd, end) - clocks[size - 1];
+                    return;
+                }
+            }
+
+            int i = upperBound(clock);
+            if (i > 0 && clocks[i - 1] + lengths[i - 1] >= clock) {
+                // 与左侧范围重叠或相邻，合并到左侧范围
+                i--;
+                end = Math.max(end, clocks[i] + lengths[i]);
+                clock = clocks[i];
+            } else {
+                ensureCapacity(size + 1);
+                System.arraycopy(clocks, i, clocks, i + 1, size - i);
+                System.arraycopy(lengths, i, lengths, i + 1, size - i);
+                size++;
+            }
+
+            // 吞并右侧被覆盖或相邻的范围
+            int j = i + 1;
+            while (j < size && clocks[j] <= end) {
+                end = Math.max(end, clocks[j] + lengths[j]);
+                j++;
+            }
+            clocks[i] = clock;
+            lengths[i] = end - clock;
+
+            int removed = j - i - 1;
+            if (removed > 0) {
+                System.arraycopy(clocks, j, clocks, i + 1, size - j);
+                System.arraycopy(lengths, j, lengths, i + 1, size - j);
+                size -= removed;
+            }
+        }
+
+        boolean contains(long clock, long length) {
+            int i = upperBound(clock) - 1;
+            return i >= 0 && clocks[i] + lengths[i] >= clock + length;
+        }
+
+        /**
+         * 返回第一个起始时钟大于指定时钟的范围下标
+         */
+        private int upperBound(long clock) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (clocks[mid] <= clock) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > clocks.length) {
+                int newCapacity = Math.max(capacity, clocks.length * 2);
+                clocks = Arrays.copyOf(clocks, newCapacity);
+                lengths = Arrays.copyOf(lengths, newCapacity);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.cdfeih.yjs.java.crdt;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 由客户端ID和逻辑时钟组成的紧凑标识符
+ * <p>
+ * 每个副本（YDoc）拥有一个随机的数值客户端ID，本地生成的每个结构依次占用一个递增的时钟值，
+ * 因此 (clientId, clock) 在全局范围内唯一，且生成时不需要访问随机数熵源。
+ */
+@Getter
+@EqualsAndHashCode
+public final class ID implements Serializable {
+
+    private final int client;
+    private final long clock;
+
+    @JsonCreator
+    public ID(@JsonProperty("client") int client, @JsonProperty("clock") long clock) {
+        this.client = client;
+        this.clock = clock;
+    }
+
+    /**
+     * 生成随机的客户端ID
+     *
+     * @return 非负的客户端ID
+     */
+    public static int generateClientId() {
+        return ThreadLocalRandom.current().nextInt() & Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return client + ":" + clock;
+    }
+
+}
@@ -0,0 +1,238 @@
+package com.cdfeih.yjs.java.crdt.delta;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.EqualsAndHashCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Quill风格的文本变更描述，由insert、retain、delete操作依次组成
+ * <p>
+ * 操作按文档顺序排列：retain跳过旧文本中的字符，delete删除旧文本中的字符，insert插入新文本。
+ * 相邻的同类操作会被合并，同一位置的insert总是排在delete之前，末尾的retain会被省略，
+ * 因此相同的变更总是得到相同的表示。
+ */
+@EqualsAndHashCode
+public class Delta {
+
+    private final List<DeltaOp> ops;
+
+    public Delta() {
+        this.ops = new ArrayList<>();
+    }
+
+    /**
+     * 追加插入操作
+     *
+     * @param text 插入的文本
+     * @return 当前Delta
+     */
+    public Delta insert(String text) {
+        if (text != null && !text.isEmpty()) {
+            push(DeltaOp.insert(text));
+        }
+        return this;
+    }
+
+    /**
+     * 追加保留操作
+     *
+     * @param length 跳过的字符数
+     * @return 当前Delta
+     */
+    public Delta retain(int length) {
+        if (length > 0) {
+            push(DeltaOp.retain(length));
+        }
+        return this;
+    }
+
+    /**
+     * 追加删除操作
+     *
+     * @param length 删除的字符数
+     * @return 当前Delta
+     */
+    public Delta delete(int length) {
+        if (length > 0) {
+            push(DeltaOp.delete(length));
+        }
+        return this;
+    }
+
+    /**
+     * 检查Delta是否不包含任何变更
+     *
+     * @return 是否为空
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return ops.isEmpty();
+    }
+
+    /**
+     * 把另一个Delta组合到当前Delta之后，得到与依次应用二者等价的新Delta
+     *
+     * @param other 在当前Delta之后发生的变更
+     * @return 组合后的新Delta
+     */
+    public Delta compose(Delta other) {
+        OpIterator first = new OpIterator(ops);
+        OpIterator second = new OpIterator(other.ops);
+        Delta result = new Delta();
+
+        while (first.hasNext() || second.hasNext()) {
+            if (second.peekType() == OpType.INSERT) {
+                result.push(second.next(Integer.MAX_VALUE));
+            } else if (first.peekType() == OpType.DELETE) {
+                result.push(first.next(Integer.MAX_VALUE));
+            } else {
+                int length = Math.min(first.peekLength(), second.peekLength());
+                DeltaOp firstOp = first.next(length);
+                DeltaOp secondOp = second.next(length);
+                if (secondOp.isRetain()) {
+                    result.push(firstOp);
+                } else if (firstOp.isRetain()) {
+                    // 删除旧文本中原本保留的字符
+                    result.push(DeltaOp.delete(length));
+                }
+                // 删除刚插入的文本时二者相互抵消
+            }
+        }
+        result.chop();
+        return result;
+    }
+
+    /**
+     * 把Delta应用到文本上
+     *
+     * @param text 旧文本
+     * @return 新文本
+     */
+    public String apply(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        int index = 0;
+        for (DeltaOp op : ops) {
+            if (op.isInsert()) {
+                sb.append(op.getInsert());
+            } else if (op.isRetain()) {
+                sb.append(text, index, index + op.getRetain());
+                index += op.getRetain();
+            } else {
+                index += op.getDelete();
+            }
+        }
+        sb.append(text, index, text.length());
+        return sb.toString();
+    }
+
+    /**
+     * 获取只读的操作列表
+     *
+     * @return 操作列表
+     */
+    public List<DeltaOp> getOps() {
+        return Collections.unmodifiableList(ops);
+    }
+
+    @Override
+    public String toString() {
+        return ops.toString();
+    }
+
+    /**
+     * 追加一个操作，与末尾的同类操作合并，并把紧跟在delete之后的insert移到delete之前
+     */
+    private void push(DeltaOp op) {
+        int index = ops.size();
+        DeltaOp last = index > 0 ? ops.get(index - 1) : null;
+        if (last != null && last.isDelete()) {
+            if (op.isDelete()) {
+                ops.set(index - 1, DeltaOp.delete(last.getDelete() + op.getDelete()));
+                return;
+            }
+            if (op.isInsert()) {
+                index--;
+                last = index > 0 ? ops.get(index - 1) : null;
+            }
+        }
+
+        if (last != null) {
+            if (last.isInsert() && op.isInsert()) {
+                ops.set(index - 1, DeltaOp.insert(last.getInsert() + op.getInsert()));
+                return;
+            }
+            if (last.isRetain() && op.isRetain()) {
+                ops.set(index - 1, DeltaOp.retain(last.getRetain() + op.getRetain()));
+                return;
+            }
+        }
+        ops.add(index, op);
+    }
+
+    /**
+     * 去掉末尾的retain操作
+     */
+    private void chop() {
+        if (!ops.isEmpty() && ops.get(ops.size() - 1).isRetain()) {
+            ops.remove(ops.size() - 1);
+        }
+    }
+
+    private enum OpType {
+        INSERT, RETAIN, DELETE
+    }
+
+    // 按长度逐段消费操作列表的迭代器，列表耗尽后视为无限长的retain
+    private static class OpIterator {
+        private final List<DeltaOp> ops;
+        private int index;
+        private int offset;
+
+        OpIterator(List<DeltaOp> ops) {
+            this.ops = ops;
+        }
+
+        boolean hasNext() {
+            return index < ops.size();
+        }
+
+        OpType peekType() {
+            if (!hasNext()) {
+                return OpType.RETAIN;
+            }
+            DeltaOp op = ops.get(index);
+            return op.isInsert() ? OpType.INSERT : op.isRetain() ? OpType.RETAIN : OpType.DELETE;
+        }
+
+        int peekLength() {
+            return hasNext() ? ops.get(index).length() - offset : Integer.MAX_VALUE;
+        }
+
+        DeltaOp next(int length) {
+            if (!hasNext()) {
+                return DeltaOp.retain(length);
+            }
+            DeltaOp op = ops.get(index);
+            int start = offset;
+            int remaining = op.length() - offset;
+            int taken = Math.min(length, remaining);
+            if (taken == remaining) {
+                index++;
+                offset = 0;
+            } else {
+                offset += taken;
+            }
+            if (start == 0 && taken == op.length()) {
+                return op;
+            }
+            if (op.isInsert()) {
+                return DeltaOp.insert(op.getInsert().substring(start, start + taken));
+            }
+            return op.isRetain() ? DeltaOp.retain(taken) : DeltaOp.delete(taken);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.cdfeih.yjs.java.crdt.delta;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Delta中的单个操作，insert、retain、delete三者中恰好有一个非空
+ * <p>
+ * 序列化为Quill格式：{"insert": "abc"}、{"retain": 3}或{"delete": 3}
+ */
+@Getter
+@EqualsAndHashCode
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class DeltaOp {
+
+    private final String insert;
+    private final Integer retain;
+    private final Integer delete;
+
+    private DeltaOp(String insert, Integer retain, Integer delete) {
+        this.insert = insert;
+        this.retain = retain;
+        this.delete = delete;
+    }
+
+    public static DeltaOp insert(String text) {
+        return new DeltaOp(text, null, null);
+    }
+
+    public static DeltaOp retain(int length) {
+        return new DeltaOp(null, length, null);
+    }
+
+    public static DeltaOp delete(int length) {
+        return new DeltaOp(null, null, length);
+    }
+
+    @JsonIgnore
+    public boolean isInsert() {
+        return insert != null;
+    }
+
+    @JsonIgnore
+    public boolean isRetain() {
+        return retain != null;
+    }
+
+    @JsonIgnore
+    public boolean isDelete() {
+        return delete != null;
+    }
+
+    /**
+     * 获取操作覆盖的字符数
+     *
+     * @return 字符数
+     */
+    @JsonIgnore
+    public int length() {
+        if (insert != null) {
+            return insert.length();
+        }
+        return retain != null ? retain : delete;
+    }
+
+    @Override
+    public String toString() {
+        if (insert != null) {
+            return "{insert=" + insert + "}";
+        }
+        return retain != null ? "{retain=" + retain + "}" : "{delete=" + delete + "}";
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.cdfeih.yjs.java.crdt.delta;
+
+import java.util.Arrays;
+
+/**
+ * 文本差异计算工具，基于Myers差分算法生成把旧文本变为新文本的最短编辑脚本
+ * <p>
+ * 先去掉公共前缀和公共后缀，再对剩余部分用线性空间的“中间蛇形”二分法递归求解。
+ * 单次二分的编辑距离超过{@link #MAX_EDIT_COST}时不再细分，直接把该段整体替换，
+ * 以免在两段完全不同的长文本上耗费O(N·D)的时间。
+ */
+public final class TextDiff {
+
+    // 单次二分搜索的最大编辑距离
+    private static final int MAX_EDIT_COST = 2048;
+
+    private TextDiff() {
+    }
+
+    /**
+     * 计算两段文本之间的差异
+     *
+     * @param oldText 旧文本
+     * @param newText 新文本
+     * @return 作用在旧文本上即可得到新文本的Delta，末尾不包含retain
+     */
+    public static Delta diff(String oldText, String newText) {
+        Delta delta = new Delta();
+        char[] a = oldText.toCharArray();
+        char[] b = newText.toCharArray();
+
+        // 公共后缀不需要输出retain
+        int suffix = commonSuffix(a, 0, a.length, b, 0, b.length);
+        diff(a, 0, a.length - suffix, b, 0, b.length - suffix, delta);
+        return delta;
+    }
+
+    private static void diff(char[] a, int aStart, int aEnd, char[] b, int bStart, int bEnd, Delta delta) {
+        int prefix = commonPrefix(a, aStart, aEnd, b, bStart, bEnd);
+        delta.retain(prefix);
+        aStart += prefix;
+        bStart += prefix;
+
+        int suffix = commonSuffix(a, aStart, aEnd, b, bStart, bEnd);
+        aEnd -= suffix;
+        bEnd -= suffix;
+
+        if (aStart == aEnd || bStart == bEnd) {
+            delta.delete(aEnd - aStart);
+            delta.insert(new String(b, bStart, bEnd - bStart));
+        } else {
+            int[] snake = bisect(a, aStart, aEnd, b, bStart, bEnd);
+            if (snake == null) {
+                delta.delete(aEnd - aStart);
+                delta.insert(new String(b, bStart, bEnd - bStart));
+            } else {
+                diff(a, aStart, aStart + snake[0], b, bStart, bStart + snake[1], delta);
+                diff(a, aStart + snake[0], aEnd, b, bStart + snake[1], bEnd, delta);
+            }
+        }
+        delta.retain(suffix);
+    }
+
+    /**
+     * 同时从两端搜索，找到最短编辑路径的中间蛇形，返回其在两段文本中的偏移
+     *
+     * @return {x, y}，编辑距离超过上限时返回null
+     */
+    private static int[] bisect(char[] a, int aStart, int aEnd, char[] b, int bStart, int bEnd) {
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int maxD = Math.min((n + m + 1) / 2, MAX_EDIT_COST);
+        int vOffset = maxD + 1;
+        int vLength = 2 * maxD + 3;
+        int[] v1 = new int[vLength];
+        int[] v2 = new int[vLength];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[vOffset + 1] = 0;
+        v2[vOffset + 1] = 0;
+
+        int delta = n - m;
+        // 长度差为奇数时前向路径先与后向路径重叠
+        boolean front = (delta & 1) != 0;
+        int k1Start = 0;
+        int k1End = 0;
+        int k2Start = 0;
+        int k2End = 0;
+
+        for (int d = 0; d <= maxD; d++) {
+            // 前向搜索
+            for (int k1 = -d + k1Start; k1 <= d - k1End; k1 += 2) {
+                int k1Offset = vOffset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1])) {
+                    x1 = v1[k1Offset + 1];
+                } else {
+                    x1 = v1[k1Offset - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aStart + x1] == b[bStart + y1]) {
+                    x1++;
+                    y1++;
+                }
+                v1[k1Offset] = x1;
+                if (x1 > n) {
+                    k1End += 2;
+                } else if (y1 > m) {
+                    k1Start += 2;
+                } else if (front) {
+                    int k2Offset = vOffset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < vLength && v2[k2Offset] != -1) {
+                        int x2 = n - v2[k2Offset];
+                        if (x1 >= x2) {
+                            return new int[]{x1, y1};
+                        }
+                    }
+                }
+            }
+
+            // 后向搜索
+            for (int k2 = -d + k2Start; k2 <= d - k2End; k2 += 2) {
+                int k2Offset = vOffset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1])) {
+                    x2 = v2[k2Offset + 1];
+                } else {
+                    x2 = v2[k2Offset - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && a[aEnd - x2 - 1] == b[bEnd - y2 - 1]) {
+                    x2++;
+                    y2++;
+                }
+                v2[k2Offset] = x2;
+                if (x2 > n) {
+                    k2End += 2;
+                } else if (y2 > m) {
+                    k2Start += 2;
+                } else if (!front) {
+                    int k1Offset = vOffset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < vLength && v1[k1Offset] != -1) {
+                        int x1 = v1[k1Offset];
+                        int y1 = vOffset + x1 - k1Offset;
+                        if (x1 >= n - x2) {
+                            return new int[]{x1, y1};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int commonPrefix(char[] a, int aStart, int aEnd, char[] b, int bStart, int bEnd) {
+        int length = Math.min(aEnd - aStart, bEnd - bStart);
+        int i = 0;
+        while (i < length && a[aStart + i] == b[bStart + i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int commonSuffix(char[] a, int aStart, int aEnd, char[] b, int bStart, int bEnd) {
+        int length = Math.min(aEnd - aStart, bEnd - bStart);
+        int i = 0;
+        while (i < length && a[aEnd - i - 1] == b[bEnd - i - 1]) {
+            i++;
+        }
+        return i;
+    }
+
+}
@@ -0,0 +1,213 @@
+package com.cdfeih.yjs.java.crdt.encoding;
+
+import com.cdfeih.yjs.java.crdt.BaseCRDT;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * 以编码形式保存的嵌套共享类型，首次读取时才构建
+ * <p>
+ * 从其他副本复制或从编码中读取的嵌套类型先保存为状态的字节，打开一个大文档时不会构建未被访问的子树。
+ * 调用{@link #get()}时解码并挂到所属的父类型下，之后一直返回同一个实例；再次编码时，尚未构建的
+ * 子树直接写出原来的字节。状态的字节不可变，可以在多个副本的拷贝之间共享。
+ */
+public final class LazyType implements Serializable {
+
+    private final int kind;
+    // 尚未构建时的状态，构建后置为null
+    private byte[] state;
+    private volatile BaseCRDT type;
+    private BaseCRDT parent;
+    private Object key;
+
+    LazyType(int kind, byte[] state) {
+        this.kind = kind;
+        this.state = state;
+    }
+
+    /**
+     * 复制一个嵌套值，得到不与原实例共享任何可变状态的拷贝
+     *
+     * @param nested 共享类型或{@link LazyType}
+     * @return 尚未构建的拷贝
+     */
+    public static LazyType copyOf(Object nested) {
+        if (nested instanceof LazyType) {
+            LazyType lazy = (LazyType) nested;
+            synchronized (lazy) {
+                if (lazy.state != null) {
+                    return new LazyType(lazy.kind, lazy.state);
+                }
+            }
+            nested = lazy.type;
+        }
+        BaseCRDT type = (BaseCRDT) nested;
+        return new LazyType(ValueCodec.kindOf(type), ValueCodec.encodeState(type));
+    }
+
+    /**
+     * 检查值是否为嵌套的共享类型
+     *
+     * @param value 值
+     * @return 是否为共享类型或{@link LazyType}
+     */
+    public static boolean isNested(Object value) {
+        return value instanceof BaseCRDT || value instanceof LazyType;
+    }
+
+    /**
+     * 读取值，{@link LazyType}被构建为共享类型，其他值原样返回
+     *
+     * @param value 值
+     * @return 读取到的值
+     */
+    public static Object resolve(Object value) {
+        return value instanceof LazyType ? ((LazyType) value).get() : value;
+    }
+
+    /**
+     * 把另一个副本中同一个嵌套类型的状态合并到本地的嵌套类型
+     * <p>
+     * 对方尚未构建时直接应用其状态的字节，不在对方构建实例；双方是同一份字节的拷贝时跳过
+     *
+     * @param local  本地的嵌套值
+     * @param remote 对方的嵌套值
+     */
+    public static void merge(Object local, Object remote) {
+        if (remote instanceof LazyType) {
+            LazyType lazy = (LazyType) remote;
+            byte[] remoteState;
+            synchronized (lazy) {
+                remoteState = lazy.state;
+            }
+            if (remoteState != null) {
+                if (local instanceof LazyType && ((LazyType) local).hasState(remoteState)) {
+                    return;
+                }
+                ValueCodec.applyState((BaseCRDT) resolve(local), remoteState);
+                return;
+            }
+            remote = lazy.type;
+        }
+        ((BaseCRDT) resolve(local)).merge((BaseCRDT) remote);
+    }
+
+    /**
+     * 把已构建的嵌套类型的状态向量合入父类型的状态向量
+     * <p>
+     * 尚未构建的嵌套类型不计入，不为此构建实例；对方因此会收到其完整状态，合并之后双方的实例都已构建
+     *
+     * @param stateVector 父类型的状态向量
+     * @param nested      共享类型或{@link LazyType}
+     */
+    public static void mergeStateVector(Map<Integer, Long> stateVector, Object nested) {
+        BaseCRDT type = nested instanceof LazyType ? ((LazyType) nested).type : (BaseCRDT) nested;
+        if (type != null) {
+            type.getStateVector().forEach((client, clock) -> stateVector.merge(client, clock, Math::max));
+        }
+    }
+
+    /**
+     * 检查嵌套类型是否可能有对方尚未见过的内部变化
+     * <p>
+     * 已构建的嵌套类型在状态向量超出对方、或有删除（见{@link BaseCRDT#hasDeletions()}）时需要发送；
+     * 尚未构建的嵌套类型不解码就无法得知其状态向量，照旧发送
+     *
+     * @param nested      共享类型或{@link LazyType}
+     * @param stateVector 对方的状态向量
+     * @return 是否需要发送
+     */
+    public static boolean changedSince(Object nested, Map<Integer, Long> stateVector) {
+        BaseCRDT type = nested instanceof LazyType ? ((LazyType) nested).type : (BaseCRDT) nested;
+        if (type == null || type.hasDeletions()) {
+            return true;
+        }
+        for (Map.Entry<Integer, Long> clock : type.getStateVector().entrySet()) {
+            if (clock.getValue() > stateVector.getOrDefault(clock.getKey(), 0L)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 检查已构建的嵌套类型中是否有删除，尚未构建的不计入
+     *
+     * @param nested 共享类型或{@link LazyType}
+     * @return 是否有删除
+     */
+    public static boolean hasDeletions(Object nested) {
+        BaseCRDT type = nested instanceof LazyType ? ((LazyType) nested).type : (BaseCRDT) nested;
+        return type != null && type.hasDeletions();
+    }
+
+    /**
+     * 获取共享类型，首次调用时解码并挂到父类型下
+     *
+     * @return 共享类型
+     */
+    public BaseCRDT get() {
+        BaseCRDT result = type;
+        if (result == null) {
+            synchronized (this) {
+                result = type;
+                if (result == null) {
+                    result = ValueCodec.newType(kind);
+                    ValueCodec.applyState(result, state);
+                    if (parent != null) {
+                        result.setParent(parent, key);
+                    }
+                    state = null;
+                    type = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 检查是否已经构建
+     *
+     * @return 是否已经构建
+     */
+    public boolean isMaterialized() {
+        return type != null;
+    }
+
+    /**
+     * 挂到父类型下，已构建的实例一并挂上
+     *
+     * @param parent 父类型
+     * @param key    在父类型中的位置：映射的键或数组元素的ID
+     */
+    public synchronized void attach(BaseCRDT parent, Object key) {
+        this.parent = parent;
+        this.key = key;
+        if (type != null) {
+            type.setParent(parent, key);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return isMaterialized() ? String.valueOf(type.getState()) : "LazyType{kind=" + kind + "}";
+    }
+
+    /**
+     * 写出种类和状态的字节，尚未构建时直接写出原来的字节
+     */
+    void writeTo(UpdateEncoder out) {
+        byte[] bytes;
+        synchronized (this) {
+            bytes = state;
+        }
+        out.writeByte(kind);
+        out.writeBytes(bytes != null ? bytes : ValueCodec.encodeState(type));
+    }
+
+    private synchronized boolean hasState(byte[] bytes) {
+        return state == bytes;
+    }
+
+}
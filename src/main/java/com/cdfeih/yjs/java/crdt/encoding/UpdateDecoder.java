@@ -0,0 +1,157 @@
+package com.cdfeih.yjs.java.crdt.encoding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 更新的二进制解码器，读取{@link UpdateEncoder}写入的数据
+ * <p>
+ * 直接在{@link ByteBuffer}上读取，不复制输入；字符串在缓冲区有底层数组时直接从数组解码。
+ * 数据不完整或格式错误时抛出{@link IOException}。该类不是线程安全的。
+ */
+public final class UpdateDecoder {
+
+    private final ByteBuffer buffer;
+    // 已读取的客户端ID，按下标排列
+    private final List<Integer> clients;
+
+    public UpdateDecoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.clients = new ArrayList<>();
+    }
+
+    public UpdateDecoder(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * 读取一个无符号字节
+     */
+    public int readByte() throws IOException {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    /**
+     * 读取变长无符号整数
+     */
+    public long readVarUint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varuint");
+    }
+
+    /**
+     * 读取不超过int范围的变长无符号整数，用于长度和数量
+     */
+    public int readLength() throws IOException {
+        long value = readVarUint();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Length out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * 读取变长有符号整数
+     */
+    public long readVarInt() throws IOException {
+        int b = readByte();
+        long value = b & 0x3F;
+        boolean negative = (b & 0x40) != 0;
+        int shift = 6;
+        while ((b & 0x80) != 0) {
+            if (shift >= 64) {
+                throw new IOException("Malformed varint");
+            }
+            b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 读取8字节大端序的双精度浮点数
+     */
+    public double readDouble() throws IOException {
+        require(8);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (buffer.get() & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * 读取{@link UpdateEncoder#writeString(String)}写入的字符串
+     */
+    public String readString() throws IOException {
+        int length = readLength();
+        require(length);
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * 读取{@link UpdateEncoder#writeBytes(byte[])}写入的字节数组
+     */
+    public byte[] readBytes() throws IOException {
+        int length = readLength();
+        require(length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 读取{@link UpdateEncoder#writeClient(int)}写入的客户端ID
+     */
+    public int readClient() throws IOException {
+        int index = readLength();
+        if (index < clients.size()) {
+            return clients.get(index);
+        }
+        if (index != clients.size()) {
+            throw new IOException("Unknown client index: " + index);
+        }
+        int client = (int) readVarInt();
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * 检查是否还有未读取的数据
+     */
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    private void require(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            throw new IOException("Unexpected end of update");
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.cdfeih.yjs.java.crdt.encoding;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 更新的二进制编码器
+ * <p>
+ * 整数使用lib0风格的变长编码：无符号整数每字节7位，最高位表示后面还有字节；有符号整数的第一个字节
+ * 另有一位符号位，只携带6位数值。字符串为UTF-8字节长度加内容。客户端ID在同一个编码器中只完整写出一次，
+ * 之后写出其在表中的下标（{@link #writeClient(int)}），因此一次更新中反复出现的客户端ID通常只占一个字节。
+ * <p>
+ * 编码器直接写入可增长的字节数组，编码完成后通过{@link #toByteBuffer()}取得结果，不复制内容。
+ * 该类不是线程安全的。
+ */
+public final class UpdateEncoder {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] buffer;
+    private int position;
+    // 已写出的客户端ID -> 表中的下标
+    private final Map<Integer, Integer> clients;
+
+    public UpdateEncoder() {
+        this.buffer = new byte[INITIAL_CAPACITY];
+        this.clients = new HashMap<>();
+    }
+
+    /**
+     * 写入一个字节
+     *
+     * @param value 字节，只使用低8位
+     */
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * 写入变长无符号整数，value按无符号数处理
+     */
+    public void writeVarUint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) (0x80 | (value & 0x7F));
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * 写入变长有符号整数：第一个字节为继续位、符号位和6位数值，之后每字节7位
+     */
+    public void writeVarInt(long value) {
+        ensureCapacity(10);
+        boolean negative = value < 0;
+        // Long.MIN_VALUE取反后仍为自身，按无符号数处理时恰好是其绝对值
+        long magnitude = negative ? -value : value;
+        boolean more = (magnitude & ~0x3FL) != 0;
+        buffer[position++] = (byte) ((more ? 0x80 : 0) | (negative ? 0x40 : 0) | (magnitude & 0x3F));
+        magnitude >>>= 6;
+        while (more) {
+            more = (magnitude & ~0x7FL) != 0;
+            buffer[position++] = (byte) ((more ? 0x80 : 0) | (magnitude & 0x7F));
+            magnitude >>>= 7;
+        }
+    }
+
+    /**
+     * 写入8字节大端序的双精度浮点数
+     */
+    public void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (bits >>> shift);
+        }
+    }
+
+    /**
+     * 写入字符串：UTF-8字节长度加内容
+     */
+    public void writeString(String value) {
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 写入字节数组：长度加内容
+     */
+    public void writeBytes(byte[] bytes) {
+        writeVarUint(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * 写入客户端ID：已写出过的写出其下标，否则写出下一个下标和完整的ID
+     */
+    public void writeClient(int client) {
+        Integer index = clients.get(client);
+        if (index != null) {
+            writeVarUint(index);
+            return;
+        }
+        writeVarUint(clients.size());
+        writeVarInt(client);
+        clients.put(client, clients.size());
+    }
+
+    /**
+     * 获取已写入的字节数
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * 获取编码结果，返回的缓冲区与编码器共享内容，之后不应再写入
+     *
+     * @return 包含已写入字节的只读缓冲区
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buffer, 0, position).asReadOnlyBuffer();
+    }
+
+    /**
+     * 获取编码结果的副本
+     *
+     * @return 已写入的字节
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+}
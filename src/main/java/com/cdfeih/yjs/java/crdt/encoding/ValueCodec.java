@@ -0,0 +1,277 @@
+package com.cdfeih.yjs.java.crdt.encoding;
+
+import com.cdfeih.yjs.java.crdt.BaseCRDT;
+import com.cdfeih.yjs.java.crdt.types.YArray;
+import com.cdfeih.yjs.java.crdt.types.YDoubleArray;
+import com.cdfeih.yjs.java.crdt.types.YLongArray;
+import com.cdfeih.yjs.java.crdt.types.YMap;
+import com.cdfeih.yjs.java.crdt.types.YText;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 共享类型中的值的二进制编码
+ * <p>
+ * 每个值以一个标记字节开头：基本类型、字符串、字节数组、列表和映射直接编码，整数使用变长编码
+ * （见{@link UpdateEncoder}）；嵌套的共享类型编码为类型标记加上其完整状态的字节，解码时不创建共享类型，而是包装为{@link LazyType}，首次读取时才构建。
+ * 其他实现了{@link Serializable}的值使用Java序列化兜底。
+ */
+public final class ValueCodec {
+
+    // 值的标记
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int INTEGER = 3;
+    private static final int LONG = 4;
+    private static final int DOUBLE = 5;
+    private static final int STRING = 6;
+    private static final int BYTES = 7;
+    private static final int LIST = 8;
+    private static final int MAP = 9;
+    private static final int TYPE = 10;
+    private static final int SERIALIZED = 11;
+
+    // 嵌套共享类型的种类
+    static final int KIND_MAP = 0;
+    static final int KIND_ARRAY = 1;
+    static final int KIND_TEXT = 2;
+    static final int KIND_LONG_ARRAY = 3;
+    static final int KIND_DOUBLE_ARRAY = 4;
+
+    private ValueCodec() {
+    }
+
+    /**
+     * 写入一个值
+     *
+     * @param out   编码器
+     * @param value 值，可以为null
+     * @throws IllegalArgumentException 值的类型不支持编码
+     */
+    public static void writeValue(UpdateEncoder out, Object value) {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeVarInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeVarInt((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            out.writeBytes((byte[]) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeVarUint(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeVarUint(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof LazyType) {
+            out.writeByte(TYPE);
+            ((LazyType) value).writeTo(out);
+        } else if (value instanceof BaseCRDT) {
+            BaseCRDT type = (BaseCRDT) value;
+            out.writeByte(TYPE);
+            out.writeByte(kindOf(type));
+            out.writeBytes(encodeState(type));
+        } else if (value instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            out.writeBytes(serialize(value));
+        } else {
+            throw new IllegalArgumentException("Unsupported value type: " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * 读取一个值，嵌套的共享类型读取为尚未构建的{@link LazyType}
+     *
+     * @param in 解码器
+     * @return 值
+     * @throws IOException 数据不完整或格式错误
+     */
+    public static Object readValue(UpdateDecoder in) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INTEGER:
+                return (int) in.readVarInt();
+            case LONG:
+                return in.readVarInt();
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return in.readString();
+            case BYTES:
+                return in.readBytes();
+            case LIST: {
+                int size = in.readLength();
+                List<Object> list = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case MAP: {
+                int size = in.readLength();
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(in), readValue(in));
+                }
+                return map;
+            }
+            case TYPE: {
+                int kind = in.readByte();
+                return new LazyType(kind, in.readBytes());
+            }
+            case SERIALIZED:
+                return deserialize(in.readBytes());
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    /**
+     * 写出嵌套共享类型中对方尚未见过的状态，格式与{@link #writeValue}写出的嵌套类型相同
+     * <p>
+     * 对方已有同一个嵌套类型时使用，读取到的{@link LazyType}只能通过{@link LazyType#merge}合并到对方的实例，
+     * 不能单独构建；尚未构建的嵌套类型在这里构建
+     *
+     * @param out         编码器
+     * @param nested      共享类型或{@link LazyType}
+     * @param stateVector 对方父类型的状态向量，包含对方嵌套类型的状态向量
+     */
+    public static void writeDelta(UpdateEncoder out, Object nested, Map<Integer, Long> stateVector) {
+        BaseCRDT type = (BaseCRDT) LazyType.resolve(nested);
+        UpdateEncoder state = new UpdateEncoder();
+        type.encodeState(state, stateVector);
+        out.writeByte(TYPE);
+        out.writeByte(kindOf(type));
+        out.writeBytes(state.toByteArray());
+    }
+
+    /**
+     * 编码共享类型的完整状态
+     *
+     * @param type 共享类型
+     * @return 状态的字节
+     */
+    public static byte[] encodeState(BaseCRDT type) {
+        UpdateEncoder out = new UpdateEncoder();
+        type.encodeState(out, Collections.emptyMap());
+        return out.toByteArray();
+    }
+
+    /**
+     * 把编码的状态应用到共享类型
+     *
+     * @param type  共享类型
+     * @param state 状态的字节
+     * @throws UncheckedIOException 数据不完整或格式错误
+     */
+    public static void applyState(BaseCRDT type, byte[] state) {
+        try {
+            type.applyState(new UpdateDecoder(state));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 获取共享类型的种类
+     *
+     * @param type 共享类型
+     * @return 种类
+     * @throws IllegalArgumentException 类型不支持编码
+     */
+    public static int kindOf(BaseCRDT type) {
+        if (type instanceof YMap) {
+            return KIND_MAP;
+        } else if (type instanceof YArray) {
+            return KIND_ARRAY;
+        } else if (type instanceof YText) {
+            return KIND_TEXT;
+        } else if (type instanceof YLongArray) {
+            return KIND_LONG_ARRAY;
+        } else if (type instanceof YDoubleArray) {
+            return KIND_DOUBLE_ARRAY;
+        }
+        throw new IllegalArgumentException("Unsupported shared type: " + type.getClass().getName());
+    }
+
+    /**
+     * 创建指定种类的空共享类型
+     *
+     * @param kind 种类
+     * @return 空的共享类型
+     * @throws IllegalArgumentException 未知的种类
+     */
+    public static BaseCRDT newType(int kind) {
+        switch (kind) {
+            case KIND_MAP:
+                return new YMap();
+            case KIND_ARRAY:
+                return new YArray();
+            case KIND_TEXT:
+                return new YText();
+            case KIND_LONG_ARRAY:
+                return new YLongArray();
+            case KIND_DOUBLE_ARRAY:
+                return new YDoubleArray();
+            default:
+                throw new IllegalArgumentException("Unknown shared type kind: " + kind);
+        }
+    }
+
+    private static byte[] serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
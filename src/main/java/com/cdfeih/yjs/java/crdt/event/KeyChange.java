@@ -0,0 +1,44 @@
+package com.cdfeih.yjs.java.crdt.event;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * 映射中一个键的变化：变化类型以及变化前的值
+ */
+@Getter
+@EqualsAndHashCode
+public final class KeyChange {
+
+    public enum Action {
+        ADD, UPDATE, DELETE
+    }
+
+    private final Action action;
+    // 变化前的值，ADD时为null
+    private final Object oldValue;
+
+    public KeyChange(Action action, Object oldValue) {
+        this.action = action;
+        this.oldValue = oldValue;
+    }
+
+    /**
+     * 把同一个键之后的变化合并到当前变化中，保留最早的旧值
+     *
+     * @param next 之后发生的变化
+     * @return 合并后的变化，先添加后删除时没有净变化，返回null
+     */
+    public KeyChange then(KeyChange next) {
+        if (action == Action.ADD) {
+            return next.action == Action.DELETE ? null : this;
+        }
+        return new KeyChange(next.action == Action.DELETE ? Action.DELETE : Action.UPDATE, oldValue);
+    }
+
+    @Override
+    public String toString() {
+        return "{action=" + action + ", oldValue=" + oldValue + "}";
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.cdfeih.yjs.java.crdt.event;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 数组中的一个变化：在index处插入一组元素，或从index处开始删除若干个元素
+ */
+@Getter
+@EqualsAndHashCode
+public final class SequenceChange {
+
+    private final int index;
+    // 插入的元素，删除时为null
+    private final List<Object> inserted;
+    private final int deleted;
+
+    private SequenceChange(int index, List<Object> inserted, int deleted) {
+        this.index = index;
+        this.inserted = inserted;
+        this.deleted = deleted;
+    }
+
+    public static SequenceChange insert(int index, List<Object> values) {
+        return new SequenceChange(index, Collections.unmodifiableList(values), 0);
+    }
+
+    public static SequenceChange delete(int index, int count) {
+        return new SequenceChange(index, null, count);
+    }
+
+    public boolean isInsert() {
+        return inserted != null;
+    }
+
+    /**
+     * 尝试把紧随其后的变化合并到当前变化中：在插入末尾继续插入，或在同一位置、紧邻的前一个位置继续删除
+     *
+     * @param next 之后发生的变化
+     * @return 合并后的变化，不能合并时返回null
+     */
+    public SequenceChange then(SequenceChange next) {
+        if (isInsert() && next.isInsert() && next.index == index + inserted.size()) {
+            List<Object> values = new ArrayList<>(inserted.size() + next.inserted.size());
+            values.addAll(inserted);
+            values.addAll(next.inserted);
+            return insert(index, values);
+        }
+        if (!isInsert() && !next.isInsert()) {
+            if (next.index == index) {
+                return delete(index, deleted + next.deleted);
+            }
+            if (next.index + next.deleted == index) {
+                return delete(next.index, deleted + next.deleted);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return isInsert() ? "{index=" + index + ", insert=" + inserted + "}" : "{index=" + index + ", delete=" + deleted + "}";
+    }
+
+}
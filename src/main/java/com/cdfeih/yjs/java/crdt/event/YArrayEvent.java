@@ -0,0 +1,34 @@
+package com.cdfeih.yjs.java.crdt.event;
+
+import com.cdfeih.yjs.java.crdt.BaseCRDT;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 数组（YArray、YLongArray、YDoubleArray）的变更事件
+ * <p>
+ * 变化按发生顺序排列，每个变化的位置都是在应用之前的所有变化之后的位置，依次重放即可从旧数组得到新数组；
+ * 相邻的连续插入或连续删除已合并为一个变化。
+ */
+@Getter
+public class YArrayEvent extends YEvent {
+
+    private final List<SequenceChange> changes;
+
+    public YArrayEvent(BaseCRDT target, List<Object> path, Object origin, List<SequenceChange> changes) {
+        super(target, path, origin);
+        this.changes = changes;
+    }
+
+    @Override
+    public YArrayEvent withPath(List<Object> path) {
+        return new YArrayEvent(getTarget(), path, getOrigin(), changes);
+    }
+
+    @Override
+    public String toString() {
+        return "YArrayEvent{target=" + getTarget().getId() + ", path=" + getPath() + ", changes=" + changes + "}";
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.cdfeih.yjs.java.crdt.event;
+
+import com.cdfeih.yjs.java.crdt.BaseCRDT;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 共享类型的变更事件
+ * <p>
+ * 深度观察者收到的事件中，target是发生变化的类型，path是从被观察的类型到target的路径：
+ * 映射中为键，数组中为元素的ID（{@link com.cdfeih.yjs.java.crdt.ID}）。target就是被观察的类型时path为空。
+ * origin是产生变化的事务的来源（见{@link com.cdfeih.yjs.java.ydoc.YDoc#transact(java.util.function.Consumer, Object)}），
+ * 不在事务中或事务未指定来源时为null。各类型的事件子类另外描述具体的变化。
+ * <p>
+ * 事件创建后不再改变，可以交给其他线程处理。
+ */
+@Getter
+public class YEvent {
+
+    private final BaseCRDT target;
+    private final List<Object> path;
+    private final Object origin;
+
+    public YEvent(BaseCRDT target, List<Object> path, Object origin) {
+        this.target = target;
+        this.path = path;
+        this.origin = origin;
+    }
+
+    public YEvent(BaseCRDT target, List<Object> path) {
+        this(target, path, null);
+    }
+
+    /**
+     * 创建路径不同、其余内容相同的事件，用于通知各级父类型上的深度观察者
+     *
+     * @param path 从观察者所在类型到target的路径
+     * @return 新的事件
+     */
+    public YEvent withPath(List<Object> path) {
+        return new YEvent(target, path, origin);
+    }
+
+    @Override
+    public String toString() {
+        return "YEvent{target=" + target.getId() + ", path=" + path + "}";
+    }
+
+}
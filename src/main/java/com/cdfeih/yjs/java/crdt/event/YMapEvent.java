@@ -0,0 +1,44 @@
+package com.cdfeih.yjs.java.crdt.event;
+
+import com.cdfeih.yjs.java.crdt.BaseCRDT;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 映射的变更事件，记录每个发生变化的键的变化类型和变化前的值
+ * <p>
+ * 事务中同一个键的多次修改合并为一个变化，先添加后删除的键不会出现在事件中
+ */
+@Getter
+public class YMapEvent extends YEvent {
+
+    private final Map<String, KeyChange> keys;
+
+    public YMapEvent(BaseCRDT target, List<Object> path, Object origin, Map<String, KeyChange> keys) {
+        super(target, path, origin);
+        this.keys = keys;
+    }
+
+    /**
+     * 获取发生变化的键
+     *
+     * @return 键的只读集合
+     */
+    public Set<String> getKeysChanged() {
+        return keys.keySet();
+    }
+
+    @Override
+    public YMapEvent withPath(List<Object> path) {
+        return new YMapEvent(getTarget(), path, getOrigin(), keys);
+    }
+
+    @Override
+    public String toString() {
+        return "YMapEvent{target=" + getTarget().getId() + ", path=" + getPath() + ", keys=" + keys + "}";
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.cdfeih.yjs.java.crdt.event;
+
+import com.cdfeih.yjs.java.crdt.BaseCRDT;
+import com.cdfeih.yjs.java.crdt.delta.Delta;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 文本的变更事件，以{@link Delta}描述从上一个版本到当前版本的变化，事务中的多次修改合并为一个Delta
+ */
+@Getter
+public class YTextEvent extends YEvent {
+
+    private final Delta delta;
+
+    public YTextEvent(BaseCRDT target, List<Object> path, Object origin, Delta delta) {
+        super(target, path, origin);
+        this.delta = delta;
+    }
+
+    @Override
+    public YTextEvent withPath(List<Object> path) {
+        return new YTextEvent(getTarget(), path, getOrigin(), delta);
+    }
+
+    @Override
+    public String toString() {
+        return "YTextEvent{target=" + getTarget().getId() + ", path=" + getPath() + ", delta=" + delta + "}";
+    }
+
+}
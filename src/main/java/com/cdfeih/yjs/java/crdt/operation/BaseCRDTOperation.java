@@ -1,5 +1,6 @@
 package com.cdfeih.yjs.java.crdt.operation;
 
+import com.cdfeih.yjs.java.crdt.ID;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -16,12 +17,17 @@ public class BaseCRDTOperation implements CRDTOperation {
     private String operationId;
     private OperationType operationType;
     private String targetId;
+    private int clientId;
+    private long clock;
+    // 依赖的操作，为null时没有依赖
+    private ID dependency;
     private long timestamp;
     private Object data;
     private Map<String, Object> metadata;
 
     public BaseCRDTOperation() {
-        this.operationId = CRDTOperation.generateOperationId();
+        this.clientId = OperationClock.clientId();
+        this.clock = OperationClock.nextClock();
         this.timestamp = System.currentTimeMillis();
         this.metadata = new HashMap<>();
     }
@@ -33,10 +39,23 @@ public class BaseCRDTOperation implements CRDTOperation {
         this.data = data;
     }
 
+    /**
+     * 获取操作ID，未显式指定时由客户端ID和逻辑时钟组成
+     *
+     * @return 操作ID
+     */
+    @Override
+    public String getOperationId() {
+        if (operationId == null) {
+            operationId = clientId + ":" + clock;
+        }
+        return operationId;
+    }
+
     @Override
     public String toString() {
         return "BaseCRDTOperation{" +
-                "operationId='" + operationId + '\'' +
+                "operationId='" + getOperationId() + '\'' +
                 ", operationType=" + operationType +
                 ", targetId='" + targetId + '\'' +
                 ", timestamp=" + timestamp +
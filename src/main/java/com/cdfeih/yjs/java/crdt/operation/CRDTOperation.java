@@ -1,7 +1,8 @@
 package com.cdfeih.yjs.java.crdt.operation;
 
+import com.cdfeih.yjs.java.crdt.ID;
+
 import java.io.Serializable;
-import java.util.UUID;
 
 /**
  * CRDT操作的基础接口
@@ -29,6 +30,32 @@ public interface CRDTOperation extends Serializable {
      */
     String getTargetId();
 
+    /**
+     * 获取生成操作的客户端ID
+     *
+     * @return 客户端ID
+     */
+    int getClientId();
+
+    /**
+     * 获取操作在生成客户端上的逻辑时钟
+     *
+     * @return 逻辑时钟
+     */
+    long getClock();
+
+    /**
+     * 获取操作依赖的另一个操作，依赖应用之前该操作不会被应用
+     * <p>
+     * 依赖由生成客户端ID和逻辑时钟标识。操作可能乱序到达，文档为每个客户端记录已应用操作的时钟范围，
+     * 依赖的时钟落在某个已应用范围内才视为已满足；更晚的时钟先被应用不会满足更早的依赖
+     *
+     * @return 依赖的操作，没有依赖时为null
+     */
+    default ID getDependency() {
+        return null;
+    }
+
     /**
      * 获取操作的时间戳
      *
@@ -51,12 +78,12 @@ public interface CRDTOperation extends Serializable {
     }
 
     /**
-     * 生成操作ID的静态方法
+     * 生成操作ID的静态方法，格式为 "客户端ID:逻辑时钟"
      *
      * @return 唯一操作ID
      */
     static String generateOperationId() {
-        return UUID.randomUUID().toString();
+        return OperationClock.clientId() + ":" + OperationClock.nextClock();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.cdfeih.yjs.java.crdt.operation;
+
+import com.cdfeih.yjs.java.crdt.ID;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 当前进程内生成操作ID使用的客户端ID和逻辑时钟
+ */
+final class OperationClock {
+
+    private static final int CLIENT_ID = ID.generateClientId();
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    private OperationClock() {
+    }
+
+    static int clientId() {
+        return CLIENT_ID;
+    }
+
+    static long nextClock() {
+        return CLOCK.getAndIncrement();
+    }
+
+}
@@ -0,0 +1,1376 @@
+package com.cdfeih.yjs.java.crdt.struct;
+
+import com.cdfeih.yjs.java.crdt.BaseCRDT;
+import com.cdfeih.yjs.java.crdt.DeleteSet;
+import com.cdfeih.yjs.java.crdt.ID;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateDecoder;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateEncoder;
+import com.cdfeih.yjs.java.crdt.encoding.ValueCodec;
+import com.cdfeih.yjs.java.crdt.event.SequenceChange;
+import com.cdfeih.yjs.java.crdt.event.YArrayEvent;
+import com.cdfeih.yjs.java.crdt.event.YEvent;
+import com.cdfeih.yjs.java.crdt.util.CountedTree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 序列类型CRDT的基础类
+ * <p>
+ * 元素按条目（{@link Item}）存储在双向链表中，一个条目承载一段时钟连续的内容，只有编辑落在条目内部时才拆分。
+ * 条目同时挂在以可见元素数为权重的顺序统计树上，按位置查找、插入和删除的复杂度为O(log n)；
+ * 按客户端分组、按时钟排序的条目列表用于根据ID定位条目，ID到位置的换算同样是O(log n)，不需要重建索引。
+ * 合并时按YATA算法只集成本地未见过的条目，删除以按客户端的ID范围（{@link DeleteSet}）同步。
+ * 同一客户端更早的时钟、origin或rightOrigin尚未到达的条目，以及指向尚未到达的条目的删除，
+ * 暂存在缓冲区中，每次应用更新后重试，因此每个客户端已集成的条目总是时钟连续的，状态向量不会越过缺口。
+ * <p>
+ * 以protected修饰的辅助方法都假定调用方已持有{@link #lock}。
+ * <p>
+ * 切片视图、游标和Spliterator直接在条目链表上读取，不复制元素。它们在创建时记录版本号，
+ * 之后每次读取都在读锁下检查版本，序列被修改后抛出{@link ConcurrentModificationException}，
+ * 因此读到的元素总是来自同一个版本。
+ * <p>
+ * 编码格式按客户端写出条目，条目的时钟写为与前一个条目末尾的差值，origin紧邻前一个元素时只占一个标志位，
+ * 客户端ID通过编码器的客户端表写出（见{@link UpdateEncoder}），然后写出删除集合；已删除条目的内容只写出长度。
+ * <p>
+ * 插入和删除通过{@link #onInsert(int, Content)}和{@link #onDelete(int, int)}通知子类，
+ * 默认在有观察者时记录为{@link SequenceChange}，子类可以覆盖以记录其他形式的变化。
+ *
+ * @param <E> 元素类型
+ */
+public abstract class AbstractSequence<E> extends BaseCRDT {
+
+    // 表示不存在的客户端ID，用于空的origin以及哨兵节点
+    protected static final int NONE = -1;
+    // 本地连续追加时单个条目默认允许增长到的最大长度，续写通常需要复制内容，因此上限较小
+    private static final int MAX_EXTEND_LENGTH = 64;
+    // 编码中条目信息字节的标志位，高4位为内容的标记
+    private static final int INFO_DELETED = 1;
+    private static final int INFO_ADJACENT_ORIGIN = 1 << 1;
+    private static final int INFO_ORIGIN = 1 << 2;
+    private static final int INFO_RIGHT_ORIGIN = 1 << 3;
+    // 编码中内容的标记
+    private static final int CONTENT_DELETED = 0;
+    private static final int CONTENT_ANY = 1;
+    private static final int CONTENT_LONG = 2;
+    private static final int CONTENT_DOUBLE = 3;
+    private static final int CONTENT_STRING = 4;
+
+    private final Item head;
+    private final Item tail;
+    private int length;
+    private final CountedTree<Item> itemIndex;
+    private final Map<Integer, List<Item>> structs;
+    private final DeleteSet deleteSet;
+    // 依赖尚未到达而暂存的远程条目（客户端ID -> 时钟 -> 条目）和删除范围
+    private final Map<Integer, NavigableMap<Long, Item>> pendingStructs;
+    private final DeleteSet pendingDeletes;
+    protected final ReadWriteLock lock;
+    // 修改次数，每次修改都递增，用于视图和游标检测并发修改；批量修改期间版本号不变，因此不能用版本号检测
+    private volatile long modifications;
+    // 尚未通知观察者的变化，只在有观察者时记录
+    private List<SequenceChange> pendingChanges;
+
+    protected AbstractSequence() {
+        super();
+        this.head = new Item(NONE, 0, NONE, 0, NONE, 0, new DeletedContent(0));
+        this.tail = new Item(NONE, 0, NONE, 0, NONE, 0, new DeletedContent(0));
+        this.head.next = this.tail;
+        this.tail.prev = this.head;
+        this.itemIndex = new CountedTree<>();
+        this.structs = new HashMap<>();
+        this.deleteSet = new DeleteSet();
+        this.pendingStructs = new HashMap<>();
+        this.pendingDeletes = new DeleteSet();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * 获取已删除元素的ID范围
+     *
+     * @return 删除集合
+     */
+    public DeleteSet getDeleteSet() {
+        return deleteSet;
+    }
+
+    @Override
+    public boolean hasDeletions() {
+        lock.readLock().lock();
+        try {
+            return !deleteSet.isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 垃圾回收：释放墓碑中的内容，并把同一客户端时钟连续、由同一次插入拆分出的相邻墓碑合并为一个
+     */
+    @Override
+    public void gc() {
+        lock.writeLock().lock();
+        try {
+            boolean merged = false;
+            Item current = head.next;
+            while (current != tail) {
+                Item next = current.next;
+                if (!current.deleted) {
+                    current = next;
+                    continue;
+                }
+                if (!(current.content instanceof DeletedContent)) {
+                    current.content = new DeletedContent(current.length());
+                }
+                if (canMergeTombstones(current, next)) {
+                    current.content = current.content.concat(new DeletedContent(next.length()));
+                    current.next = next.next;
+                    next.next.prev = current;
+                    itemIndex.remove(next);
+                    next.prev = null;
+                    merged = true;
+                } else {
+                    current = next;
+                }
+            }
+
+            if (merged) {
+                // 被合并的墓碑已从链表中摘除（prev为null），从ID索引中一并移除
+                for (List<Item> items : structs.values()) {
+                    items.removeIf(item -> item.prev == null);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 本地连续追加时单个条目允许增长到的最大长度，内容支持原地续写的子类可以放宽
+     */
+    protected int maxExtendLength() {
+        return MAX_EXTEND_LENGTH;
+    }
+
+    /**
+     * 获取可见元素的数量
+     */
+    protected int sequenceLength() {
+        return length;
+    }
+
+    /**
+     * 获取指定位置的元素
+     */
+    protected E valueAt(int index) {
+        checkElementIndex(index);
+        Item item = itemIndex.find(index);
+        return elementOf(item, index - itemIndex.indexOf(item));
+    }
+
+    /**
+     * 获取修改次数，子类提供的视图用它检测创建之后的修改
+     */
+    protected long modificationCount() {
+        return modifications;
+    }
+
+    /**
+     * 获取覆盖指定位置的条目，配合{@link #startOf(Item)}读取内容而无需装箱
+     */
+    protected Item itemAt(int index) {
+        checkElementIndex(index);
+        return itemIndex.find(index);
+    }
+
+    /**
+     * 获取条目第一个元素当前所在的位置
+     */
+    protected int startOf(Item item) {
+        return itemIndex.indexOf(item);
+    }
+
+    /**
+     * 获取指定位置元素的ID
+     */
+    protected ID idAt(int index) {
+        checkElementIndex(index);
+        Item item = itemIndex.find(index);
+        return new ID(item.client, item.clock + index - itemIndex.indexOf(item));
+    }
+
+    /**
+     * 获取指定ID的元素当前所在的位置
+     *
+     * @return 元素位置，元素未知或已删除时返回-1
+     */
+    protected int indexOfId(int client, long clock) {
+        List<Item> items = structs.get(client);
+        if (items == null) {
+            return -1;
+        }
+        int i = findIndex(items, clock);
+        if (i < 0 || items.get(i).deleted) {
+            return -1;
+        }
+        Item item = items.get(i);
+        return itemIndex.indexOf(item) + (int) (clock - item.clock);
+    }
+
+    /**
+     * 在指定位置插入一段本地内容，内容中的元素使用一段连续的时钟
+     */
+    protected void insertContent(int index, Content content) {
+        if (index < 0 || index > length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+        }
+        if (content.length() == 0) {
+            return;
+        }
+        insertBefore(itemStartingAt(index), content);
+    }
+
+    /**
+     * 把 [start, end) 范围内的元素标记为删除
+     *
+     * @param removed 依次接收被删除的内容，不需要时为null
+     */
+    protected void deleteRange(int start, int end, Consumer<Content> removed) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Invalid range: [" + start + ", " + end + ")");
+        }
+        Item current = itemStartingAt(start);
+        Item stop = itemStartingAt(end);
+        while (current != stop) {
+            if (!current.deleted) {
+                if (removed != null) {
+                    removed.accept(current.content);
+                }
+                markDeleted(current);
+            }
+            current = current.next;
+        }
+    }
+
+    /**
+     * 按顺序遍历所有可见的内容
+     */
+    protected void forEachContent(Consumer<Content> consumer) {
+        for (Item current = head.next; current != tail; current = current.next) {
+            if (!current.deleted) {
+                consumer.accept(current.content);
+            }
+        }
+    }
+
+    /**
+     * 按顺序收集所有可见的元素
+     */
+    @SuppressWarnings("unchecked")
+    protected List<E> toList() {
+        List<E> values = new ArrayList<>(length);
+        forEachContent(content -> {
+            for (int i = 0; i < content.length(); i++) {
+                values.add((E) content.get(i));
+            }
+        });
+        return values;
+    }
+
+    /**
+     * 创建 [from, to) 范围内元素的只读视图
+     */
+    protected List<E> sliceView(int from, int to) {
+        checkRange(from, to);
+        return new SequenceSlice(from, to, modifications);
+    }
+
+    /**
+     * 创建从指定位置开始、可以在整个序列上前后移动的只读游标
+     */
+    protected ListIterator<E> cursorAt(int index) {
+        checkRange(index, length);
+        return new SequenceCursor(0, length, index, modifications);
+    }
+
+    /**
+     * 创建 [from, to) 范围内元素的Spliterator
+     */
+    protected Spliterator<E> spliteratorOf(int from, int to) {
+        checkRange(from, to);
+        return new SequenceSpliterator(from, to, modifications);
+    }
+
+    /**
+     * 合并另一个副本的序列
+     * <p>
+     * 只集成本地尚未见过的条目，按YATA算法根据origin和rightOrigin确定位置，然后应用对方删除集合中
+     * 本地尚未删除的范围。耗时与差量成正比，且所有副本无论以何种顺序合并都会得到相同的元素顺序。
+     * <p>
+     * 对方的结构只在对方的读锁内通过{@link #encodeState}读取，再在本地的写锁内应用，
+     * 调用方不能持有本地的锁，避免两个副本互相合并时死锁。
+     */
+    protected void mergeSequence(AbstractSequence<?> other) {
+        UpdateEncoder out = new UpdateEncoder();
+        other.encodeState(out, getStateVector());
+        lock.writeLock().lock();
+        try {
+            advanceVersion(other.getVersion());
+            this.timestamp = Math.max(this.timestamp, other.getTimestamp());
+            applyState(new UpdateDecoder(out.toByteBuffer()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 合并按客户端分组、按时钟排序的条目以及删除集合，条目可以来自另一个副本或解码结果
+     * <p>
+     * 条目先并入缓冲区，再连同之前暂存的条目一起集成依赖已满足的部分；删除只应用到本地已集成的范围，
+     * 其余部分留在缓冲区中，等对应的条目到达后再应用
+     */
+    protected void mergeStructs(Map<Integer, List<Item>> otherStructs, DeleteSet otherDeleteSet) {
+        otherStructs.forEach((client, items) -> {
+            NavigableMap<Long, Item> pending = pendingStructs.computeIfAbsent(client, k -> new TreeMap<>());
+            for (Item item : items) {
+                pending.merge(item.clock, item, (a, b) -> a.length() >= b.length() ? a : b);
+            }
+        });
+        integratePending();
+
+        DeleteSet deletes = new DeleteSet();
+        pendingDeletes.forEach(deletes::add);
+        otherDeleteSet.forEach(deletes::add);
+        pendingDeletes.clear();
+        deletes.forEach((client, clock, len) -> {
+            long end = clock + len;
+            long known = Math.min(end, getState(client));
+            if (clock < known && !deleteSet.contains(client, clock, known - clock)) {
+                deleteById(client, clock, known - clock);
+            }
+            long unknown = Math.max(clock, known);
+            if (unknown < end) {
+                pendingDeletes.add(client, unknown, end - unknown);
+            }
+        });
+        // 可能见到过本副本以前生成的结构，推进本地时钟以免重复使用
+        long own = getState(getClientId());
+        if (own > 0) {
+            observeClock(own - 1);
+        }
+    }
+
+    /**
+     * 应用解码得到的条目和删除集合，调用方已持有写锁；子类可以覆盖以处理内容中的嵌套值
+     */
+    protected void applyStructs(Map<Integer, List<Item>> otherStructs, DeleteSet otherDeleteSet) {
+        mergeStructs(otherStructs, otherDeleteSet);
+    }
+
+    /**
+     * 复制远程条目中本地尚未见过的可见内容时调用，子类可以覆盖以复制内容中的嵌套值
+     *
+     * @param client  内容的客户端ID
+     * @param clock   内容第一个元素的时钟
+     * @param content 远程内容
+     * @return 本地使用的内容
+     */
+    protected Content importContent(int client, long clock, Content content) {
+        return content;
+    }
+
+    @Override
+    protected ReadWriteLock getLock() {
+        return lock;
+    }
+
+    @Override
+    protected void incrementVersion() {
+        modifications++;
+        super.incrementVersion();
+    }
+
+    @Override
+    protected YEvent createEvent(Object origin) {
+        List<SequenceChange> changes = pendingChanges;
+        pendingChanges = null;
+        if (!isObserved()) {
+            return null;
+        }
+        return new YArrayEvent(this, List.of(), origin,
+                changes == null ? List.of() : Collections.unmodifiableList(changes));
+    }
+
+    @Override
+    public Map<Integer, Long> getStateVector() {
+        lock.readLock().lock();
+        try {
+            Map<Integer, Long> stateVector = new HashMap<>();
+            for (Integer client : structs.keySet()) {
+                long state = getState(client);
+                if (state > 0) {
+                    stateVector.put(client, state);
+                }
+            }
+            return stateVector;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void encodeState(UpdateEncoder out, Map<Integer, Long> stateVector) {
+        lock.readLock().lock();
+        try {
+            List<Integer> clients = new ArrayList<>();
+            for (Map.Entry<Integer, List<Item>> entry : structs.entrySet()) {
+                if (getState(entry.getKey()) > stateVector.getOrDefault(entry.getKey(), 0L)) {
+                    clients.add(entry.getKey());
+                }
+            }
+            out.writeVarUint(clients.size());
+            for (int client : clients) {
+                List<Item> items = structs.get(client);
+                long seen = stateVector.getOrDefault(client, 0L);
+                int first = firstAfter(items, seen);
+                long clock = Math.max(seen, items.get(first).clock);
+                out.writeClient(client);
+                out.writeVarUint(items.size() - first);
+                out.writeVarUint(clock);
+                for (int i = first; i < items.size(); i++) {
+                    Item item = items.get(i);
+                    int offset = (int) Math.max(0, seen - item.clock);
+                    out.writeVarUint(item.clock + offset - clock);
+                    if (offset == 0) {
+                        writeItem(out, item.clock, item.originClient, item.originClock, item, 0);
+                    } else {
+                        writeItem(out, item.clock + offset, item.client, item.clock + offset - 1, item, offset);
+                    }
+                    clock = item.clock + item.length();
+                }
+            }
+            deleteSet.write(out);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void applyState(UpdateDecoder in) throws IOException {
+        Map<Integer, List<Item>> otherStructs = new HashMap<>();
+        int clients = in.readLength();
+        for (int c = 0; c < clients; c++) {
+            int client = in.readClient();
+            int count = in.readLength();
+            long clock = in.readVarUint();
+            List<Item> items = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                clock += in.readVarUint();
+                Item item = readItem(in, client, clock);
+                items.add(item);
+                clock += item.length();
+            }
+            otherStructs.put(client, items);
+        }
+        DeleteSet otherDeleteSet = DeleteSet.read(in);
+
+        lock.writeLock().lock();
+        try {
+            applyStructs(otherStructs, otherDeleteSet);
+            incrementVersion();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 私有辅助方法
+
+    private void checkElementIndex(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+        }
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range: [" + from + ", " + to + ")");
+        }
+    }
+
+    /**
+     * 获取从指定位置开始的条目，位置落在条目内部时先拆分；位置等于序列长度时返回尾节点
+     */
+    private Item itemStartingAt(int index) {
+        if (index == length) {
+            return tail;
+        }
+        Item item = itemIndex.find(index);
+        int start = itemIndex.indexOf(item);
+        return start == index ? item : split(item, index - start);
+    }
+
+    /**
+     * 在条目内指定偏移处拆分，原条目保留左半部分
+     *
+     * @return 拆分出的右半部分
+     */
+    private Item split(Item item, int offset) {
+        Item right = new Item(item.client, item.clock + offset, item.client, item.clock + offset - 1,
+                item.rightOriginClient, item.rightOriginClock, item.content.slice(offset, item.length()));
+        right.deleted = item.deleted;
+        item.content = item.content.slice(0, offset);
+        itemIndex.setWeight(item, item.deleted ? 0 : offset);
+
+        right.prev = item;
+        right.next = item.next;
+        item.next.prev = right;
+        item.next = right;
+        itemIndex.insertAfter(item, right, right.deleted ? 0 : right.length());
+
+        List<Item> items = structs.get(item.client);
+        items.add(findIndex(items, item.clock) + 1, right);
+        return right;
+    }
+
+    /**
+     * 在目标条目之前插入一段本地内容，能续写到左侧本地条目时直接续写
+     */
+    private void insertBefore(Item right, Content content) {
+        Item left = right.prev;
+        int client = getClientId();
+        long clock = nextClock(content.length());
+        if (left.client == client && left.clock + left.length() == clock && !left.deleted
+                && left.length() + content.length() <= maxExtendLength() && left.content.canConcat(content)
+                && isRightOrigin(left, right)) {
+            onInsert(itemIndex.indexOf(left) + left.length(), content);
+            left.content = left.content.concat(content);
+            itemIndex.setWeight(left, left.length());
+            length += content.length();
+            return;
+        }
+
+        Item item = new Item(client, clock,
+                left == head ? NONE : left.client, left == head ? 0 : left.lastClock(),
+                right == tail ? NONE : right.client, right == tail ? 0 : right.clock,
+                content);
+        link(left, item);
+    }
+
+    /**
+     * 检查right是否正是left插入时右侧相邻的元素
+     */
+    private boolean isRightOrigin(Item left, Item right) {
+        if (right == tail) {
+            return left.rightOriginClient == NONE;
+        }
+        return left.rightOriginClient == right.client && left.rightOriginClock == right.clock;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementOf(Item item, int offset) {
+        return (E) item.content.get(offset);
+    }
+
+    private static boolean canMergeTombstones(Item left, Item right) {
+        return right.deleted && right.client == left.client && right.clock == left.clock + left.length()
+                && right.originClient == left.client && right.originClock == left.lastClock()
+                && right.rightOriginClient == left.rightOriginClient
+                && right.rightOriginClock == left.rightOriginClock;
+    }
+
+    /**
+     * 把条目链接到left之后，并登记到位置索引和ID索引中
+     */
+    private void link(Item left, Item item) {
+        item.prev = left;
+        item.next = left.next;
+        left.next.prev = item;
+        left.next = item;
+        itemIndex.insertAfter(left == head ? null : left, item, item.deleted ? 0 : item.length());
+
+        List<Item> items = structs.computeIfAbsent(item.client, k -> new ArrayList<>());
+        if (items.isEmpty() || items.get(items.size() - 1).clock < item.clock) {
+            items.add(item);
+        } else {
+            items.add(-findIndex(items, item.clock) - 1, item);
+        }
+
+        if (!item.deleted) {
+            length += item.length();
+            onInsert(itemIndex.indexOf(item), item.content);
+        } else {
+            deleteSet.add(item.client, item.clock, item.length());
+        }
+    }
+
+    /**
+     * 一段内容变为可见后调用，调用方已持有写锁
+     *
+     * @param index   内容第一个元素的位置，以变化发生后的序列为准
+     * @param content 插入的内容
+     */
+    protected void onInsert(int index, Content content) {
+        if (isObserved()) {
+            recordChange(SequenceChange.insert(index, valuesOf(content)));
+        }
+    }
+
+    /**
+     * 一段内容被删除前调用，调用方已持有写锁
+     *
+     * @param index  被删除的第一个元素的位置，以变化发生前的序列为准
+     * @param length 被删除的元素数量
+     */
+    protected void onDelete(int index, int length) {
+        if (isObserved()) {
+            recordChange(SequenceChange.delete(index, length));
+        }
+    }
+
+    /**
+     * 记录一个变化，与上一个变化相邻时合并
+     */
+    private void recordChange(SequenceChange change) {
+        if (pendingChanges == null) {
+            pendingChanges = new ArrayList<>();
+        }
+        int last = pendingChanges.size() - 1;
+        SequenceChange merged = last >= 0 ? pendingChanges.get(last).then(change) : null;
+        if (merged != null) {
+            pendingChanges.set(last, merged);
+        } else {
+            pendingChanges.add(change);
+        }
+    }
+
+    private static List<Object> valuesOf(Content content) {
+        List<Object> values = new ArrayList<>(content.length());
+        for (int i = 0; i < content.length(); i++) {
+            values.add(content.get(i));
+        }
+        return values;
+    }
+
+    private void markDeleted(Item item) {
+        onDelete(itemIndex.indexOf(item), item.length());
+        item.deleted = true;
+        itemIndex.setWeight(item, 0);
+        length -= item.length();
+        deleteSet.add(item.client, item.clock, item.length());
+    }
+
+    /**
+     * 获取本地已见过的指定客户端的时钟，即该客户端下一个未知结构的时钟
+     * <p>
+     * 每个客户端的条目只按时钟顺序集成，因此最后一个条目之前没有缺口
+     */
+    private long getState(int client) {
+        List<Item> items = structs.get(client);
+        if (items == null || items.isEmpty()) {
+            return 0;
+        }
+        Item last = items.get(items.size() - 1);
+        return last.clock + last.length();
+    }
+
+    private Item findItem(int client, long clock) {
+        List<Item> items = structs.get(client);
+        int i = items == null ? -1 : findIndex(items, clock);
+        if (i < 0) {
+            throw new IllegalStateException("Unknown struct: " + client + ":" + clock);
+        }
+        return items.get(i);
+    }
+
+    /**
+     * 获取以指定ID开始的条目，必要时拆分
+     */
+    private Item getItemCleanStart(int client, long clock) {
+        Item item = findItem(client, clock);
+        if (item.clock == clock) {
+            return item;
+        }
+        return split(item, (int) (clock - item.clock));
+    }
+
+    /**
+     * 获取以指定ID结束的条目，必要时拆分
+     */
+    private Item getItemCleanEnd(int client, long clock) {
+        Item item = findItem(client, clock);
+        if (item.lastClock() != clock) {
+            split(item, (int) (clock - item.clock + 1));
+        }
+        return item;
+    }
+
+    /**
+     * 获取缓冲区中指定客户端下一个可以按时钟顺序集成的条目，先丢弃已经完全见过的条目
+     *
+     * @return 包含本地状态之后第一个时钟的条目；与本地状态之间有缺口或缓冲区为空时返回null
+     */
+    private Item nextPending(int client) {
+        NavigableMap<Long, Item> items = pendingStructs.get(client);
+        if (items == null) {
+            return null;
+        }
+        long state = getState(client);
+        while (!items.isEmpty()) {
+            Item first = items.firstEntry().getValue();
+            if (first.clock + first.length() > state) {
+                return first.clock <= state ? first : null;
+            }
+            items.pollFirstEntry();
+        }
+        pendingStructs.remove(client);
+        return null;
+    }
+
+    /**
+     * 获取第一个包含不小于指定时钟的元素的条目下标
+     */
+    private static int firstAfter(List<Item> items, long state) {
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Item item = items.get(mid);
+            if (item.clock + item.length() <= state) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 写出条目从offset开始的部分：信息字节（标志位和内容标记）、origin、rightOrigin、长度和内容
+     * <p>
+     * origin紧邻在同一客户端的前一个元素之后（连续输入的常见情况）时只写出标志位
+     */
+    private static void writeItem(UpdateEncoder out, long clock, int originClient, long originClock,
+                                  Item item, int offset) {
+        int length = item.length() - offset;
+        Content content = item.content;
+        int tag;
+        if (item.deleted || content instanceof DeletedContent) {
+            tag = CONTENT_DELETED;
+        } else if (content instanceof AnyContent) {
+            tag = CONTENT_ANY;
+        } else if (content instanceof LongContent) {
+            tag = CONTENT_LONG;
+        } else if (content instanceof DoubleContent) {
+            tag = CONTENT_DOUBLE;
+        } else if (content instanceof StringContent) {
+            tag = CONTENT_STRING;
+        } else {
+            throw new IllegalArgumentException("Unsupported content type: " + content.getClass().getName());
+        }
+        boolean adjacent = originClient == item.client && originClock == clock - 1;
+        int info = tag << 4;
+        if (item.deleted) {
+            info |= INFO_DELETED;
+        }
+        if (adjacent) {
+            info |= INFO_ADJACENT_ORIGIN;
+        } else if (originClient != NONE) {
+            info |= INFO_ORIGIN;
+        }
+        if (item.rightOriginClient != NONE) {
+            info |= INFO_RIGHT_ORIGIN;
+        }
+        out.writeByte(info);
+        if ((info & INFO_ORIGIN) != 0) {
+            out.writeClient(originClient);
+            out.writeVarUint(originClock);
+        }
+        if ((info & INFO_RIGHT_ORIGIN) != 0) {
+            out.writeClient(item.rightOriginClient);
+            out.writeVarUint(item.rightOriginClock);
+        }
+        if (tag == CONTENT_STRING) {
+            // 字符串自带长度
+            out.writeString(content.toString().substring(offset));
+            return;
+        }
+        out.writeVarUint(length);
+        for (int i = offset; i < item.length(); i++) {
+            switch (tag) {
+                case CONTENT_ANY:
+                    ValueCodec.writeValue(out, ((AnyContent) content).getRaw(i));
+                    break;
+                case CONTENT_LONG:
+                    out.writeVarInt(((LongContent) content).getLong(i));
+                    break;
+                case CONTENT_DOUBLE:
+                    out.writeDouble(((DoubleContent) content).getDouble(i));
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    private static Item readItem(UpdateDecoder in, int client, long clock) throws IOException {
+        int info = in.readByte();
+        int originClient = NONE;
+        long originClock = 0;
+        if ((info & INFO_ADJACENT_ORIGIN) != 0) {
+            originClient = client;
+            originClock = clock - 1;
+        } else if ((info & INFO_ORIGIN) != 0) {
+            originClient = in.readClient();
+            originClock = in.readVarUint();
+        }
+        int rightOriginClient = NONE;
+        long rightOriginClock = 0;
+        if ((info & INFO_RIGHT_ORIGIN) != 0) {
+            rightOriginClient = in.readClient();
+            rightOriginClock = in.readVarUint();
+        }
+        if (info >>> 4 == CONTENT_STRING) {
+            Item item = new Item(client, clock, originClient, originClock, rightOriginClient, rightOriginClock,
+                    new StringContent(in.readString()));
+            item.deleted = (info & INFO_DELETED) != 0;
+            return item;
+        }
+        int length = in.readLength();
+        Content content;
+        switch (info >>> 4) {
+            case CONTENT_DELETED:
+                content = new DeletedContent(length);
+                break;
+            case CONTENT_ANY: {
+                Object[] values = new Object[length];
+                for (int i = 0; i < length; i++) {
+                    values[i] = ValueCodec.readValue(in);
+                }
+                content = new AnyContent(values);
+                break;
+            }
+            case CONTENT_LONG: {
+                long[] values = new long[length];
+                for (int i = 0; i < length; i++) {
+                    values[i] = in.readVarInt();
+                }
+                content = new LongContent(values);
+                break;
+            }
+            case CONTENT_DOUBLE: {
+                double[] values = new double[length];
+                for (int i = 0; i < length; i++) {
+                    values[i] = in.readDouble();
+                }
+                content = new DoubleContent(values);
+                break;
+            }
+            default:
+                throw new IOException("Unknown content tag: " + (info >>> 4));
+        }
+        Item item = new Item(client, clock, originClient, originClock, rightOriginClient, rightOriginClock, content);
+        item.deleted = (info & INFO_DELETED) != 0;
+        return item;
+    }
+
+    /**
+     * 按因果顺序集成缓冲区中依赖已满足的条目
+     * <p>
+     * 每个客户端的条目按时钟顺序处理，只集成时钟紧接本地状态的条目；若某个条目依赖的origin或rightOrigin
+     * 属于其他客户端且尚未集成，则先压栈，转而处理那个客户端的条目。依赖的条目尚未到达时，
+     * 整条依赖链留在缓冲区中等待之后的更新。整个过程只访问缓冲区中的条目。
+     */
+    private void integratePending() {
+        Deque<Item> stack = new ArrayDeque<>();
+        for (Integer client : new ArrayList<>(pendingStructs.keySet())) {
+            Item remote = nextPending(client);
+            while (remote != null) {
+                int missing = missingDependency(remote);
+                if (missing == NONE) {
+                    integrateRemote(remote);
+                    remote = stack.isEmpty() ? nextPending(client) : stack.pop();
+                    continue;
+                }
+
+                // 合法的更新中依赖链不会重复经过同一个客户端，超过客户端数时视为依赖缺失
+                Item dependency = stack.size() < pendingStructs.size() ? nextPending(missing) : null;
+                if (dependency == null || dependency == remote) {
+                    stack.clear();
+                    break;
+                }
+                stack.push(remote);
+                remote = dependency;
+            }
+        }
+    }
+
+    /**
+     * 返回远程条目依赖但本地尚未集成的客户端，没有缺失依赖时返回NONE
+     */
+    private int missingDependency(Item remote) {
+        // 与本地已有部分重叠时，origin就是同一客户端的前一个元素，必然已经集成
+        boolean overlaps = getState(remote.client) > remote.clock;
+        if (!overlaps && remote.originClient != NONE && remote.originClock >= getState(remote.originClient)) {
+            return remote.originClient;
+        }
+        if (remote.rightOriginClient != NONE && remote.rightOriginClock >= getState(remote.rightOriginClient)) {
+            return remote.rightOriginClient;
+        }
+        return NONE;
+    }
+
+    /**
+     * 复制远程条目中本地未见过的部分并集成到本地，已删除条目只复制长度
+     */
+    private void integrateRemote(Item remote) {
+        int offset = (int) Math.max(0, getState(remote.client) - remote.clock);
+        if (offset >= remote.length()) {
+            return;
+        }
+
+        Content content = remote.deleted
+                ? new DeletedContent(remote.length() - offset)
+                : importContent(remote.client, remote.clock + offset, remote.content.slice(offset, remote.length()));
+        Item item = offset == 0
+                ? new Item(remote.client, remote.clock, remote.originClient, remote.originClock,
+                remote.rightOriginClient, remote.rightOriginClock, content)
+                : new Item(remote.client, remote.clock + offset, remote.client, remote.clock + offset - 1,
+                remote.rightOriginClient, remote.rightOriginClock, content);
+        item.deleted = remote.deleted;
+        integrate(item);
+    }
+
+    /**
+     * YATA集成：在origin与rightOrigin之间为新条目确定位置
+     * <p>
+     * 若两者之间已有并发插入的条目，则按以下规则确定顺序：origin相同的并发条目按客户端ID排序；
+     * 若某个条目的origin位于扫描过的区域内，则它与新条目不冲突，新条目应排在它之后。
+     */
+    private void integrate(Item item) {
+        Item left = item.originClient == NONE ? head : getItemCleanEnd(item.originClient, item.originClock);
+        Item right = item.rightOriginClient == NONE
+                ? tail : getItemCleanStart(item.rightOriginClient, item.rightOriginClock);
+
+        if (left.next != right) {
+            Set<Item> conflictingItems = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<Item> itemsBeforeOrigin = Collections.newSetFromMap(new IdentityHashMap<>());
+            Item o = left.next;
+            while (o != right) {
+                itemsBeforeOrigin.add(o);
+                conflictingItems.add(o);
+                if (o.originClient == item.originClient && o.originClock == item.originClock) {
+                    // origin相同，客户端ID较小的排在前面
+                    if (o.client < item.client) {
+                        left = o;
+                        conflictingItems.clear();
+                    } else if (o.rightOriginClient == item.rightOriginClient
+                            && o.rightOriginClock == item.rightOriginClock) {
+                        break;
+                    }
+                } else if (o.originClient != NONE
+                        && itemsBeforeOrigin.contains(findItem(o.originClient, o.originClock))) {
+                    // o的origin位于扫描区域内
+                    if (!conflictingItems.contains(findItem(o.originClient, o.originClock))) {
+                        left = o;
+                        conflictingItems.clear();
+                    }
+                } else {
+                    break;
+                }
+                o = o.next;
+            }
+        }
+
+        link(left, item);
+    }
+
+    /**
+     * 在按时钟排序的条目列表中二分查找包含指定时钟的条目
+     *
+     * @return 条目下标；不存在时返回 -(插入位置) - 1
+     */
+    private static int findIndex(List<Item> items, long clock) {
+        int low = 0;
+        int high = items.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Item item = items.get(mid);
+            if (clock < item.clock) {
+                high = mid - 1;
+            } else if (clock >= item.clock + item.length()) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -low - 1;
+    }
+
+    /**
+     * 删除由ID范围指定的元素，已删除或本地未知的部分被忽略
+     */
+    private void deleteById(int client, long clock, long len) {
+        List<Item> items = structs.get(client);
+        if (items == null) {
+            return;
+        }
+        long end = clock + len;
+        int i = findIndex(items, clock);
+        if (i < 0) {
+            i = -i - 1;
+        } else if (items.get(i).clock < clock) {
+            split(items.get(i), (int) (clock - items.get(i).clock));
+            i++;
+        }
+        for (; i < items.size(); i++) {
+            Item item = items.get(i);
+            if (item.clock >= end) {
+                break;
+            }
+            if (item.clock + item.length() > end) {
+                split(item, (int) (end - item.clock));
+            }
+            if (!item.deleted) {
+                markDeleted(item);
+            }
+        }
+    }
+
+    /**
+     * 在条目链表上移动的只读游标，限定在 [from, to) 范围内
+     * <p>
+     * 游标指向下一个元素所在的条目及条目内偏移，到达序列末尾时指向尾节点。
+     * 游标只停在可见条目上，垃圾回收不会摘除可见条目，因此不会使游标失效。
+     */
+    private class SequenceCursor implements ListIterator<E> {
+        private final int from;
+        private final int to;
+        private final long expectedVersion;
+        private Item item;
+        private int offset;
+        private int index;
+
+        // 调用方已持有读锁
+        SequenceCursor(int from, int to, int index, long expectedVersion) {
+            this.from = from;
+            this.to = to;
+            this.expectedVersion = expectedVersion;
+            checkForComodification();
+            this.index = index;
+            if (index == length) {
+                this.item = tail;
+            } else {
+                this.item = itemIndex.find(index);
+                this.offset = index - itemIndex.indexOf(item);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < to;
+        }
+
+        @Override
+        public E next() {
+            lock.readLock().lock();
+            try {
+                checkForComodification();
+                if (index >= to) {
+                    throw new NoSuchElementException();
+                }
+                return advance();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return index > from;
+        }
+
+        @Override
+        public E previous() {
+            lock.readLock().lock();
+            try {
+                checkForComodification();
+                if (index <= from) {
+                    throw new NoSuchElementException();
+                }
+                if (offset > 0) {
+                    offset--;
+                } else {
+                    do {
+                        item = item.prev;
+                    } while (item.deleted);
+                    offset = item.length() - 1;
+                }
+                index--;
+                return elementOf(item, offset);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public int nextIndex() {
+            return index - from;
+        }
+
+        @Override
+        public int previousIndex() {
+            return index - from - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void set(E e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(E e) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * 读取下一个元素并前移，调用方已持有读锁并检查过范围
+         */
+        E advance() {
+            E value = elementOf(item, offset);
+            index++;
+            if (++offset == item.length()) {
+                do {
+                    item = item.next;
+                } while (item != tail && item.deleted);
+                offset = 0;
+            }
+            return value;
+        }
+
+        private void checkForComodification() {
+            if (modifications != expectedVersion) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * 序列中一段范围的只读视图，按位置读取为O(log n)，顺序遍历每个元素为O(1)
+     */
+    private class SequenceSlice extends AbstractList<E> {
+        private final int from;
+        private final int to;
+        private final long expectedVersion;
+
+        SequenceSlice(int from, int to, long expectedVersion) {
+            this.from = from;
+            this.to = to;
+            this.expectedVersion = expectedVersion;
+        }
+
+        @Override
+        public E get(int index) {
+            Objects.checkIndex(index, size());
+            lock.readLock().lock();
+            try {
+                checkForComodification();
+                return valueAt(from + index);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return listIterator(0);
+        }
+
+        @Override
+        public ListIterator<E> listIterator(int index) {
+            if (index < 0 || index > size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            lock.readLock().lock();
+            try {
+                return new SequenceCursor(from, to, from + index, expectedVersion);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public List<E> subList(int fromIndex, int toIndex) {
+            if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException("Invalid range: [" + fromIndex + ", " + toIndex + ")");
+            }
+            return new SequenceSlice(from + fromIndex, from + toIndex, expectedVersion);
+        }
+
+        @Override
+        public Spliterator<E> spliterator() {
+            return new SequenceSpliterator(from, to, expectedVersion);
+        }
+
+        /**
+         * 在一次读锁内复制整个视图，得到同一版本的元素
+         */
+        @Override
+        public Object[] toArray() {
+            lock.readLock().lock();
+            try {
+                Object[] values = new Object[size()];
+                SequenceCursor cursor = new SequenceCursor(from, to, from, expectedVersion);
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = cursor.advance();
+                }
+                return values;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void checkForComodification() {
+            if (modifications != expectedVersion) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * 序列中一段范围的Spliterator，按位置对半拆分以支持并行流
+     * <p>
+     * 批量遍历时每次在读锁内取出一批元素，在锁外交给action处理，避免action修改序列时与读锁死锁。
+     */
+    private class SequenceSpliterator implements Spliterator<E> {
+        private static final int BATCH_SIZE = 256;
+
+        private final int to;
+        private final long expectedVersion;
+        private int index;
+        // 首次读取时才定位，拆分后重新定位
+        private SequenceCursor cursor;
+
+        SequenceSpliterator(int from, int to, long expectedVersion) {
+            this.index = from;
+            this.to = to;
+            this.expectedVersion = expectedVersion;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            E value;
+            lock.readLock().lock();
+            try {
+                if (!positioned()) {
+                    return false;
+                }
+                value = cursor.advance();
+                index++;
+            } finally {
+                lock.readLock().unlock();
+            }
+            action.accept(value);
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            Object[] batch = new Object[Math.min(BATCH_SIZE, Math.max(0, to - index))];
+            while (true) {
+                int count = 0;
+                lock.readLock().lock();
+                try {
+                    if (!positioned()) {
+                        return;
+                    }
+                    while (count < batch.length && index < to) {
+                        batch[count++] = cursor.advance();
+                        index++;
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+                for (int i = 0; i < count; i++) {
+                    action.accept((E) batch[i]);
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int mid = (index + to) >>> 1;
+            if (mid <= index) {
+                return null;
+            }
+            Spliterator<E> prefix = new SequenceSpliterator(index, mid, expectedVersion);
+            index = mid;
+            cursor = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+
+        /**
+         * 检查版本并在需要时定位游标，调用方已持有读锁
+         *
+         * @return 是否还有剩余元素
+         */
+        private boolean positioned() {
+            if (modifications != expectedVersion) {
+                throw new ConcurrentModificationException();
+            }
+            if (index >= to) {
+                return false;
+            }
+            if (cursor == null) {
+                cursor = new SequenceCursor(index, to, index, expectedVersion);
+            }
+            return true;
+        }
+    }
+
+}
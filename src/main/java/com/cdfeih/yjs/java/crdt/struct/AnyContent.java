@@ -0,0 +1,66 @@
+package com.cdfeih.yjs.java.crdt.struct;
+
+import com.cdfeih.yjs.java.crdt.encoding.LazyType;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 任意对象元素的内容，用于YArray
+ * <p>
+ * 元素可以是嵌套的共享类型，以编码形式保存的嵌套类型（{@link LazyType}）在读取时才构建。
+ */
+public final class AnyContent implements Content {
+
+    private final Object[] values;
+
+    public AnyContent(Object[] values) {
+        this.values = values;
+    }
+
+    public AnyContent(Collection<?> values) {
+        this.values = values.toArray();
+    }
+
+    @Override
+    public int length() {
+        return values.length;
+    }
+
+    @Override
+    public Object get(int offset) {
+        return LazyType.resolve(values[offset]);
+    }
+
+    /**
+     * 获取指定偏移处保存的原始值，{@link LazyType}不会被构建
+     *
+     * @param offset 偏移
+     * @return 原始值
+     */
+    public Object getRaw(int offset) {
+        return values[offset];
+    }
+
+    @Override
+    public Content slice(int start, int end) {
+        if (start == 0 && end == values.length) {
+            return this;
+        }
+        return new AnyContent(Arrays.copyOfRange(values, start, end));
+    }
+
+    @Override
+    public boolean canConcat(Content other) {
+        return other instanceof AnyContent;
+    }
+
+    @Override
+    public Content concat(Content other) {
+        Object[] otherValues = ((AnyContent) other).values;
+        Object[] merged = Arrays.copyOf(values, values.length + otherValues.length);
+        System.arraycopy(otherValues, 0, merged, values.length, otherValues.length);
+        return new AnyContent(merged);
+    }
+
+}
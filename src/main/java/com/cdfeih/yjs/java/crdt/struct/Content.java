@@ -0,0 +1,50 @@
+package com.cdfeih.yjs.java.crdt.struct;
+
+/**
+ * 序列结构中一个条目所承载的内容
+ * <p>
+ * 内容是不可变的：拆分和续写都返回新的内容对象，因此可以在副本之间直接共享。
+ */
+public interface Content {
+
+    /**
+     * 获取内容包含的元素数量
+     *
+     * @return 元素数量
+     */
+    int length();
+
+    /**
+     * 获取指定偏移处的元素
+     *
+     * @param offset 偏移
+     * @return 元素值
+     */
+    Object get(int offset);
+
+    /**
+     * 截取 [start, end) 范围的内容
+     *
+     * @param start 起始偏移（包含）
+     * @param end   结束偏移（不包含）
+     * @return 截取的内容
+     */
+    Content slice(int start, int end);
+
+    /**
+     * 检查另一个内容能否续写到当前内容之后
+     *
+     * @param other 另一个内容
+     * @return 是否可以续写
+     */
+    boolean canConcat(Content other);
+
+    /**
+     * 把同类型的内容续写到当前内容之后
+     *
+     * @param other 另一个内容
+     * @return 续写后的新内容
+     */
+    Content concat(Content other);
+
+}
@@ -0,0 +1,39 @@
+package com.cdfeih.yjs.java.crdt.struct;
+
+/**
+ * 已被垃圾回收的内容，只保留元素数量
+ */
+public final class DeletedContent implements Content {
+
+    private final int length;
+
+    public DeletedContent(int length) {
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public Object get(int offset) {
+        throw new IllegalStateException("Content has been garbage collected");
+    }
+
+    @Override
+    public Content slice(int start, int end) {
+        return new DeletedContent(end - start);
+    }
+
+    @Override
+    public boolean canConcat(Content other) {
+        return other instanceof DeletedContent;
+    }
+
+    @Override
+    public Content concat(Content other) {
+        return new DeletedContent(length + other.length());
+    }
+
+}
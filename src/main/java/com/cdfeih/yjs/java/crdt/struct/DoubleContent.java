@@ -0,0 +1,41 @@
+package com.cdfeih.yjs.java.crdt.struct;
+
+/**
+ * double元素的内容，数组块的共享和续写见{@link PrimitiveContent}
+ */
+public final class DoubleContent extends PrimitiveContent<double[]> {
+
+    public DoubleContent(double[] values) {
+        super(values, values.length);
+    }
+
+    private DoubleContent(Chunk<double[]> chunk, int offset, int length) {
+        super(chunk, offset, length);
+    }
+
+    @Override
+    public Object get(int offset) {
+        return getDouble(offset);
+    }
+
+    /**
+     * 获取指定偏移处的数值
+     *
+     * @param offset 偏移
+     * @return 数值
+     */
+    public double getDouble(int offset) {
+        return chunk.values[this.offset + offset];
+    }
+
+    @Override
+    PrimitiveContent<double[]> view(Chunk<double[]> chunk, int offset, int length) {
+        return new DoubleContent(chunk, offset, length);
+    }
+
+    @Override
+    double[] newArray(int capacity) {
+        return new double[capacity];
+    }
+
+}
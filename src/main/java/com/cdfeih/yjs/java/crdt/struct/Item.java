@@ -0,0 +1,61 @@
+package com.cdfeih.yjs.java.crdt.struct;
+
+import com.cdfeih.yjs.java.crdt.util.CountedTree;
+
+/**
+ * 序列中的一个条目，承载一段时钟连续的内容
+ * <p>
+ * 第i个元素的标识为 (client, clock + i)。条目记录插入时左右两侧相邻元素的ID（origin / rightOrigin），
+ * 删除后保留为墓碑（权重为0），以便后续以其为锚点的插入仍能正确定位。
+ */
+public final class Item extends CountedTree.Node<Item> {
+
+    final int client;
+    final long clock;
+    // 插入时左侧相邻元素的ID
+    final int originClient;
+    final long originClock;
+    // 插入时右侧相邻元素的ID
+    final int rightOriginClient;
+    final long rightOriginClock;
+    Content content;
+    boolean deleted;
+    Item prev;
+    Item next;
+
+    Item(int client, long clock, int originClient, long originClock,
+         int rightOriginClient, long rightOriginClock, Content content) {
+        this.client = client;
+        this.clock = clock;
+        this.originClient = originClient;
+        this.originClock = originClock;
+        this.rightOriginClient = rightOriginClient;
+        this.rightOriginClock = rightOriginClock;
+        this.content = content;
+    }
+
+    public int getClient() {
+        return client;
+    }
+
+    public long getClock() {
+        return clock;
+    }
+
+    public Content getContent() {
+        return content;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    int length() {
+        return content.length();
+    }
+
+    long lastClock() {
+        return clock + content.length() - 1;
+    }
+
+}
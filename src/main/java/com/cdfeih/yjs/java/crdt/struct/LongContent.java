@@ -0,0 +1,41 @@
+package com.cdfeih.yjs.java.crdt.struct;
+
+/**
+ * long元素的内容，数组块的共享和续写见{@link PrimitiveContent}
+ */
+public final class LongContent extends PrimitiveContent<long[]> {
+
+    public LongContent(long[] values) {
+        super(values, values.length);
+    }
+
+    private LongContent(Chunk<long[]> chunk, int offset, int length) {
+        super(chunk, offset, length);
+    }
+
+    @Override
+    public Object get(int offset) {
+        return getLong(offset);
+    }
+
+    /**
+     * 获取指定偏移处的数值
+     *
+     * @param offset 偏移
+     * @return 数值
+     */
+    public long getLong(int offset) {
+        return chunk.values[this.offset + offset];
+    }
+
+    @Override
+    PrimitiveContent<long[]> view(Chunk<long[]> chunk, int offset, int length) {
+        return new LongContent(chunk, offset, length);
+    }
+
+    @Override
+    long[] newArray(int capacity) {
+        return new long[capacity];
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.cdfeih.yjs.java.crdt.struct;
+
+import com.cdfeih.yjs.java.crdt.ID;
+import com.cdfeih.yjs.java.crdt.encoding.LazyType;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/**
+ * 映射中一个键的值及其写入标记
+ * <p>
+ * 标记 (client, clock) 由写入的副本生成，clock是Lamport时钟：副本本地写入时使用的时钟大于它已见过的所有时钟。
+ * 同一个键的并发写入按 (clock, client) 的字典序决定胜负，与副本的物理时钟无关。条目不可变，更新时整体替换。
+ * 值可以是嵌套的共享类型，以编码形式保存的嵌套类型（{@link LazyType}）在读取时才构建。
+ * <p>
+ * 删除键时写入一个不带值的墓碑条目（{@link #tombstone(int, long)}），墓碑与普通写入一样按标记决定胜负，
+ * 因此标记更小的旧值不会在合并时复活被删除的键。
+ */
+@Getter
+@EqualsAndHashCode
+public final class MapEntry implements Serializable {
+
+    @Getter(AccessLevel.NONE)
+    private final Object value;
+    private final int client;
+    private final long clock;
+    private final boolean deleted;
+
+    public MapEntry(Object value, int client, long clock) {
+        this(value, client, clock, false);
+    }
+
+    private MapEntry(Object value, int client, long clock, boolean deleted) {
+        this.value = value;
+        this.client = client;
+        this.clock = clock;
+        this.deleted = deleted;
+    }
+
+    /**
+     * 创建删除键的墓碑条目
+     *
+     * @param client 删除的客户端ID
+     * @param clock  删除的时钟
+     * @return 墓碑条目
+     */
+    public static MapEntry tombstone(int client, long clock) {
+        return new MapEntry(null, client, clock, true);
+    }
+
+    /**
+     * 获取值，{@link LazyType}在首次读取时构建
+     *
+     * @return 值
+     */
+    public Object getValue() {
+        return LazyType.resolve(value);
+    }
+
+    /**
+     * 获取保存的原始值，{@link LazyType}不会被构建
+     *
+     * @return 原始值
+     */
+    public Object getRawValue() {
+        return value;
+    }
+
+    /**
+     * 获取写入标记
+     *
+     * @return 写入标记
+     */
+    public ID getId() {
+        return new ID(client, clock);
+    }
+
+    /**
+     * 检查当前条目是否应覆盖另一个条目
+     *
+     * @param other 另一个条目，可以为null
+     * @return 当前条目的标记是否更大
+     */
+    public boolean isNewerThan(MapEntry other) {
+        if (other == null) {
+            return true;
+        }
+        return clock != other.clock ? clock > other.clock : client > other.client;
+    }
+
+    @Override
+    public String toString() {
+        return deleted
+                ? "{deleted, id=" + client + ":" + clock + "}"
+                : "{value=" + value + ", id=" + client + ":" + clock + "}";
+    }
+
+}
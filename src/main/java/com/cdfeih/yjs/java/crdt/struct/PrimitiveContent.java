@@ -0,0 +1,96 @@
+package com.cdfeih.yjs.java.crdt.struct;
+
+/**
+ * 基本类型元素内容的基础类，数值存放在基本类型数组中，不为每个元素分配包装对象
+ * <p>
+ * 内容是共享数组块上的一段视图：截取不复制数据；当视图恰好位于块的已用部分末尾且块中仍有空间时，
+ * 续写直接写入块中，已有的视图不受影响。子类只提供按类型读取数值的方法。
+ *
+ * @param <A> 基本类型数组的类型，如long[]
+ */
+public abstract class PrimitiveContent<A> implements Content {
+
+    // 续写时新分配的数组块的最大容量
+    private static final int MAX_CHUNK_CAPACITY = 4096;
+
+    final Chunk<A> chunk;
+    final int offset;
+    private final int length;
+
+    // 数组块及其容量和已用长度，只在持有所属序列写锁时修改
+    static final class Chunk<A> {
+        final A values;
+        final int capacity;
+        int size;
+
+        Chunk(A values, int capacity, int size) {
+            this.values = values;
+            this.capacity = capacity;
+            this.size = size;
+        }
+    }
+
+    PrimitiveContent(A values, int length) {
+        this(new Chunk<>(values, length, length), 0, length);
+    }
+
+    PrimitiveContent(Chunk<A> chunk, int offset, int length) {
+        this.chunk = chunk;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * 创建同一类型、位于指定数组块上的视图
+     */
+    abstract PrimitiveContent<A> view(Chunk<A> chunk, int offset, int length);
+
+    /**
+     * 分配指定容量的数组
+     */
+    abstract A newArray(int capacity);
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 把全部数值复制到目标数组
+     *
+     * @param dest     目标数组
+     * @param position 目标数组中的起始位置
+     */
+    public void copyTo(A dest, int position) {
+        System.arraycopy(chunk.values, offset, dest, position, length);
+    }
+
+    @Override
+    public Content slice(int start, int end) {
+        return view(chunk, offset + start, end - start);
+    }
+
+    @Override
+    public boolean canConcat(Content other) {
+        return other.getClass() == getClass();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Content concat(Content other) {
+        PrimitiveContent<A> tail = (PrimitiveContent<A>) other;
+        int total = length + tail.length;
+        if (offset + length == chunk.size && chunk.size + tail.length <= chunk.capacity) {
+            tail.copyTo(chunk.values, chunk.size);
+            chunk.size += tail.length;
+            return view(chunk, offset, total);
+        }
+
+        int capacity = Math.max(total, Math.min(total * 2, MAX_CHUNK_CAPACITY));
+        A values = newArray(capacity);
+        copyTo(values, 0);
+        tail.copyTo(values, length);
+        return view(new Chunk<>(values, capacity, total), 0, total);
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.cdfeih.yjs.java.crdt.struct;
+
+/**
+ * 文本内容，用于YText
+ * <p>
+ * 每个元素是一个字符，按元素读取时返回只包含该字符的字符串；需要逐字符读取时使用{@link #charAt(int)}避免装箱。
+ */
+public final class StringContent implements Content {
+
+    private final String text;
+
+    public StringContent(String text) {
+        this.text = text;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public Object get(int offset) {
+        return String.valueOf(text.charAt(offset));
+    }
+
+    /**
+     * 获取指定偏移处的字符
+     *
+     * @param offset 偏移
+     * @return 字符
+     */
+    public char charAt(int offset) {
+        return text.charAt(offset);
+    }
+
+    @Override
+    public Content slice(int start, int end) {
+        if (start == 0 && end == text.length()) {
+            return this;
+        }
+        return new StringContent(text.substring(start, end));
+    }
+
+    @Override
+    public boolean canConcat(Content other) {
+        return other instanceof StringContent;
+    }
+
+    @Override
+    public Content concat(Content other) {
+        return new StringContent(text.concat(((StringContent) other).text));
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.cdfeih.yjs.java.crdt.types;
+
+import com.cdfeih.yjs.java.crdt.CRDT;
+import com.cdfeih.yjs.java.crdt.ID;
+import com.cdfeih.yjs.java.crdt.operation.CRDTOperation;
+import com.cdfeih.yjs.java.crdt.struct.AbstractSequence;
+import com.cdfeih.yjs.java.crdt.struct.PrimitiveContent;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 元素为基本类型数值的分布式数组CRDT的基础类，适合存放大量数值序列
+ * <p>
+ * 与{@link YArray}的合并语义相同，但数值以基本类型数组块存储（见{@link PrimitiveContent}），
+ * 每段连续插入的数值共用一段ID范围，不为单个元素分配包装对象或ID对象。
+ * 按数组整体读写的操作都在这里实现，子类只提供按单个数值读写的方法。
+ *
+ * @param <E> 元素的包装类型
+ * @param <A> 基本类型数组的类型，如long[]
+ */
+public abstract class PrimitiveArray<E, A> extends AbstractSequence<E> {
+
+    // 连续追加时数值直接写入数组块，条目可以增长到较大的长度
+    private static final int MAX_EXTEND_LENGTH = 4096;
+
+    protected PrimitiveArray() {
+        super();
+    }
+
+    /**
+     * 把数组包装为内容，数组归内容所有
+     */
+    protected abstract PrimitiveContent<A> contentOf(A values);
+
+    /**
+     * 分配指定长度的数组
+     */
+    protected abstract A newArray(int length);
+
+    /**
+     * 把操作中的一组数值转换为数组
+     */
+    protected abstract A fromNumbers(Collection<?> elements);
+
+    /**
+     * 把一组数值依次添加到数组末尾
+     *
+     * @param values 要添加的数值
+     * @return 添加后的数组大小
+     */
+    public int addAll(A values) {
+        lock.writeLock().lock();
+        try {
+            if (Array.getLength(values) > 0) {
+                insertContent(sequenceLength(), contentOf(copyOf(values)));
+                incrementVersion();
+            }
+            return sequenceLength();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 在指定索引位置依次插入一组数值
+     *
+     * @param index  插入位置索引
+     * @param values 要插入的数值
+     */
+    public void insertAll(int index, A values) {
+        lock.writeLock().lock();
+        try {
+            if (index < 0 || index > sequenceLength()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + sequenceLength());
+            }
+            if (Array.getLength(values) > 0) {
+                insertContent(index, contentOf(copyOf(values)));
+                incrementVersion();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除 [fromIndex, toIndex) 范围内的数值，只递增一次版本号
+     *
+     * @param fromIndex 起始索引（包含）
+     * @param toIndex   结束索引（不包含）
+     * @return 被移除的数值
+     */
+    public A removeRange(int fromIndex, int toIndex) {
+        lock.writeLock().lock();
+        try {
+            A removed = newArray(Math.max(0, toIndex - fromIndex));
+            int[] position = {0};
+            deleteRange(fromIndex, toIndex, content -> {
+                contentType(content).copyTo(removed, position[0]);
+                position[0] += content.length();
+            });
+            if (position[0] > 0) {
+                incrementVersion();
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获取指定索引位置数值的ID
+     *
+     * @param index 索引位置
+     * @return 数值ID
+     */
+    public ID getElementId(int index) {
+        lock.readLock().lock();
+        try {
+            return idAt(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取数组大小
+     *
+     * @return 数组大小
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return sequenceLength();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 检查数组是否为空
+     *
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 复制全部数值
+     *
+     * @return 数值数组
+     */
+    public A toArray() {
+        lock.readLock().lock();
+        try {
+            A values = newArray(sequenceLength());
+            int[] position = {0};
+            forEachContent(content -> {
+                contentType(content).copyTo(values, position[0]);
+                position[0] += content.length();
+            });
+            return values;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 清除数组所有数值
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            deleteRange(0, sequenceLength(), null);
+            incrementVersion();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void merge(CRDT other) {
+        if (other == null || other == this || other.getClass() != getClass()) {
+            return;
+        }
+
+        mergeSequence((PrimitiveArray<?, ?>) other);
+    }
+
+    @Override
+    public Object getState() {
+        return toArray();
+    }
+
+    @Override
+    public void applyOperation(Object operation) {
+        if (!(operation instanceof CRDTOperation)) {
+            return;
+        }
+
+        CRDTOperation op = (CRDTOperation) operation;
+        switch (op.getOperationType()) {
+            case INSERT:
+                if (op.getData() instanceof Map) {
+                    Map<String, Object> data = (Map<String, Object>) op.getData();
+                    Integer index = (Integer) data.get("index");
+                    Object element = data.get("element");
+                    Object elements = data.get("elements");
+                    if (elements instanceof Collection) {
+                        A values = fromNumbers((Collection<?>) elements);
+                        if (index != null) {
+                            insertAll(index, values);
+                        } else {
+                            addAll(values);
+                        }
+                    } else if (index != null && element instanceof Number) {
+                        insertAll(index, fromNumbers(Collections.singletonList(element)));
+                    }
+                }
+                break;
+            case UPDATE:
+                if (op.getData() instanceof Map) {
+                    Map<String, Object> data = (Map<String, Object>) op.getData();
+                    Integer index = (Integer) data.get("index");
+                    Object element = data.get("element");
+                    if (index != null && element instanceof Number) {
+                        replace(index, fromNumbers(Collections.singletonList(element)));
+                    }
+                }
+                break;
+            case DELETE:
+                if (op.getData() instanceof Integer) {
+                    int index = (Integer) op.getData();
+                    removeRange(index, index + 1);
+                } else if (op.getData() instanceof Map) {
+                    Map<String, Object> data = (Map<String, Object>) op.getData();
+                    Integer start = (Integer) data.get("start");
+                    Integer end = (Integer) data.get("end");
+                    if (start != null && end != null) {
+                        removeRange(start, end);
+                    }
+                }
+                break;
+            case CLEAR:
+                clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    protected int maxExtendLength() {
+        return MAX_EXTEND_LENGTH;
+    }
+
+    /**
+     * 把指定索引位置的一个数值替换为新的数值
+     * <p>
+     * 原数值被删除，新数值以新的ID插入到同一位置
+     *
+     * @param index  索引位置
+     * @param values 只包含新数值的数组，归内容所有
+     * @return 只包含旧数值的数组
+     */
+    protected A replace(int index, A values) {
+        lock.writeLock().lock();
+        try {
+            A removed = newArray(1);
+            deleteRange(index, index + 1, content -> contentType(content).copyTo(removed, 0));
+            insertContent(index, contentOf(values));
+            incrementVersion();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private A copyOf(A values) {
+        int length = Array.getLength(values);
+        A copy = newArray(length);
+        System.arraycopy(values, 0, copy, 0, length);
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private PrimitiveContent<A> contentType(Object content) {
+        return (PrimitiveContent<A>) content;
+    }
+
+}
@@ -2,36 +2,51 @@ package com.cdfeih.yjs.java.crdt.types;
 
 import com.cdfeih.yjs.java.crdt.BaseCRDT;
 import com.cdfeih.yjs.java.crdt.CRDT;
+import com.cdfeih.yjs.java.crdt.DeleteSet;
+import com.cdfeih.yjs.java.crdt.ID;
+import com.cdfeih.yjs.java.crdt.encoding.LazyType;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateDecoder;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateEncoder;
+import com.cdfeih.yjs.java.crdt.encoding.ValueCodec;
 import com.cdfeih.yjs.java.crdt.operation.CRDTOperation;
-import lombok.Getter;
-import lombok.Setter;
+import com.cdfeih.yjs.java.crdt.struct.AbstractSequence;
+import com.cdfeih.yjs.java.crdt.struct.AnyContent;
+import com.cdfeih.yjs.java.crdt.struct.Content;
+import com.cdfeih.yjs.java.crdt.struct.Item;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * YArray是一个分布式数组CRDT实现，支持并发读写
+ * <p>
+ * 元素存储在带计数的条目序列中（见{@link AbstractSequence}），按位置读取、插入和删除的复杂度均为O(log n)，
+ * 每个元素的ID为 (clientId, clock)，可以在O(log n)时间内换算为当前位置。
+ * <p>
+ * 元素可以是YMap、YArray、YText等共享类型，嵌套的类型以元素ID为其在数组中的位置。
+ * 合并时对方新插入的嵌套类型以编码形式复制，首次读取时才构建；双方都有的嵌套类型递归合并。
  */
-@Getter
-@Setter
-public class YArray extends BaseCRDT {
+public class YArray extends AbstractSequence<Object> {
 
-    private List<Object> elements;
-    private Map<String, Integer> elementIds;
-    private Map<Integer, String> indexToId;
-    private final ReadWriteLock lock;
+    // 嵌套类型元素（元素ID -> 共享类型或LazyType），包括已删除的元素，垃圾回收时清理
+    private final Map<ID, Object> children;
+    // 本次合并中从对方复制的嵌套类型，已包含对方的完整状态，无需再递归合并
+    private final Set<ID> imported;
 
     public YArray() {
         super();
-        this.elements = new CopyOnWriteArrayList<>();
-        this.elementIds = new HashMap<>();
-        this.indexToId = new HashMap<>();
-        this.lock = new ReentrantReadWriteLock();
+        this.children = new HashMap<>();
+        this.imported = new HashSet<>();
     }
 
     /**
@@ -41,13 +56,14 @@ public class YArray extends BaseCRDT {
      * @return 添加后的数组大小
      */
     public int add(Object element) {
-        String elementId = generateElementId();
-        elements.add(element);
-        int index = elements.size() - 1;
-        elementIds.put(elementId, index);
-        indexToId.put(index, elementId);
-        incrementVersion();
-        return elements.size();
+        lock.writeLock().lock();
+        try {
+            insertValues(sequenceLength(), new Object[]{element});
+            incrementVersion();
+            return sequenceLength();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -57,18 +73,57 @@ public class YArray extends BaseCRDT {
      * @param element 要插入的元素
      */
     public void insert(int index, Object element) {
-        if (index < 0 || index > elements.size()) {
-            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.size());
+        lock.writeLock().lock();
+        try {
+            insertValues(index, new Object[]{element});
+            incrementVersion();
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        String elementId = generateElementId();
-        elements.add(index, element);
+    /**
+     * 把一组元素依次添加到数组末尾
+     * <p>
+     * 整组元素作为一个条目存储，只分配一段连续的时钟并递增一次版本号
+     *
+     * @param elements 要添加的元素
+     * @return 添加后的数组大小
+     */
+    public int addAll(Collection<?> elements) {
+        lock.writeLock().lock();
+        try {
+            if (!elements.isEmpty()) {
+                insertValues(sequenceLength(), elements.toArray());
+                incrementVersion();
+            }
+            return sequenceLength();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-        // 更新索引映射
-        updateElementIdsAfterInsert(index);
-        elementIds.put(elementId, index);
-        indexToId.put(index, elementId);
-        incrementVersion();
+    /**
+     * 在指定索引位置依次插入一组元素
+     * <p>
+     * 整组元素作为一个条目存储，只分配一段连续的时钟并递增一次版本号
+     *
+     * @param index    插入位置索引
+     * @param elements 要插入的元素
+     */
+    public void insertAll(int index, Collection<?> elements) {
+        lock.writeLock().lock();
+        try {
+            if (index < 0 || index > sequenceLength()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + sequenceLength());
+            }
+            if (!elements.isEmpty()) {
+                insertValues(index, elements.toArray());
+                incrementVersion();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -78,10 +133,12 @@ public class YArray extends BaseCRDT {
      * @return 元素值
      */
     public Object get(int index) {
-        if (index < 0 || index >= elements.size()) {
-            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.size());
+        lock.readLock().lock();
+        try {
+            return valueAt(index);
+        } finally {
+            lock.readLock().unlock();
         }
-        return elements.get(index);
     }
 
     /**
@@ -91,41 +148,92 @@ public class YArray extends BaseCRDT {
      * @return 被移除的元素
      */
     public Object remove(int index) {
-        if (index < 0 || index >= elements.size()) {
-            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.size());
+        lock.writeLock().lock();
+        try {
+            Object removed = valueAt(index);
+            deleteRange(index, index + 1, null);
+            incrementVersion();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        Object removed = elements.remove(index);
-
-        // 移除对应的元素ID
-        String elementIdToRemove = indexToId.get(index);
-        if (elementIdToRemove != null) {
-            elementIds.remove(elementIdToRemove);
-            indexToId.remove(index);
+    /**
+     * 移除 [fromIndex, toIndex) 范围内的元素，只递增一次版本号
+     *
+     * @param fromIndex 起始索引（包含）
+     * @param toIndex   结束索引（不包含）
+     * @return 被移除的元素
+     */
+    public List<Object> removeRange(int fromIndex, int toIndex) {
+        lock.writeLock().lock();
+        try {
+            List<Object> removed = new ArrayList<>(Math.max(0, toIndex - fromIndex));
+            deleteRange(fromIndex, toIndex, content -> {
+                for (int i = 0; i < content.length(); i++) {
+                    removed.add(content.get(i));
+                }
+            });
+            if (!removed.isEmpty()) {
+                incrementVersion();
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
         }
-
-        // 更新索引映射
-        updateElementIdsAfterRemove(index);
-        incrementVersion();
-
-        return removed;
     }
 
     /**
      * 更新指定索引位置的元素
+     * <p>
+     * 原元素被删除，新元素以新的ID插入到同一位置
      *
      * @param index   索引位置
      * @param element 新元素
      * @return 旧元素
      */
     public Object set(int index, Object element) {
-        if (index < 0 || index >= elements.size()) {
-            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.size());
+        lock.writeLock().lock();
+        try {
+            Object oldElement = valueAt(index);
+            deleteRange(index, index + 1, null);
+            insertValues(index, new Object[]{element});
+            incrementVersion();
+            return oldElement;
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        Object oldElement = elements.set(index, element);
-        incrementVersion();
-        return oldElement;
+    /**
+     * 获取指定索引位置元素的ID
+     *
+     * @param index 索引位置
+     * @return 元素ID
+     */
+    public ID getElementId(int index) {
+        lock.readLock().lock();
+        try {
+            return idAt(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取指定ID的元素当前所在的索引位置
+     *
+     * @param elementId 元素ID
+     * @return 索引位置，元素不存在或已删除时返回-1
+     */
+    public int indexOf(ID elementId) {
+        lock.readLock().lock();
+        try {
+            return indexOfId(elementId.getClient(), elementId.getClock());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -134,7 +242,12 @@ public class YArray extends BaseCRDT {
      * @return 数组大小
      */
     public int size() {
-        return elements.size();
+        lock.readLock().lock();
+        try {
+            return sequenceLength();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -143,17 +256,91 @@ public class YArray extends BaseCRDT {
      * @return 是否为空
      */
     public boolean isEmpty() {
-        return elements.isEmpty();
+        return size() == 0;
+    }
+
+    /**
+     * 获取 [fromIndex, toIndex) 范围内元素的只读视图
+     * <p>
+     * 视图不复制元素，直接读取数组当前的结构；数组在此之后被修改时，访问视图会抛出
+     * {@link java.util.ConcurrentModificationException}
+     *
+     * @param fromIndex 起始索引（包含）
+     * @param toIndex   结束索引（不包含）
+     * @return 只读视图
+     */
+    public List<Object> slice(int fromIndex, int toIndex) {
+        lock.readLock().lock();
+        try {
+            return sliceView(fromIndex, toIndex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取从指定索引位置开始的只读游标，可以向前或向后移动，每步为O(1)
+     *
+     * @param index 游标初始位置，即第一次调用next()返回的元素索引
+     * @return 只读游标
+     */
+    public ListIterator<Object> cursor(int index) {
+        lock.readLock().lock();
+        try {
+            return cursorAt(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取遍历全部元素的Spliterator，支持拆分以并行处理
+     *
+     * @return Spliterator
+     */
+    public Spliterator<Object> spliterator() {
+        lock.readLock().lock();
+        try {
+            return spliteratorOf(0, sequenceLength());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取全部元素的顺序流
+     *
+     * @return 元素流
+     */
+    public Stream<Object> stream() {
+        return StreamSupport.stream(spliterator(), false);
     }
 
     /**
      * 清除数组所有元素
+     * <p>
+     * 所有元素都被标记为删除，以免后续合并时被其他副本重新带回
      */
     public void clear() {
-        elements.clear();
-        elementIds.clear();
-        indexToId.clear();
-        incrementVersion();
+        lock.writeLock().lock();
+        try {
+            deleteRange(0, sequenceLength(), null);
+            incrementVersion();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void gc() {
+        super.gc();
+        lock.writeLock().lock();
+        try {
+            // 已删除元素中的嵌套类型不会再被读取或合并
+            children.keySet().removeIf(id -> indexOfId(id.getClient(), id.getClock()) < 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -162,75 +349,148 @@ public class YArray extends BaseCRDT {
             return;
         }
 
-        YArray otherArray = (YArray) other;
-        if (shouldMerge(other)) {
-            lock.writeLock().lock();
-            try {
-                // 创建一个映射来跟踪元素的唯一标识符
-                Map<String, Object> allElements = new HashMap<>();
-                
-                // 添加本地元素
-                for (Map.Entry<String, Integer> entry : this.elementIds.entrySet()) {
-                    allElements.put(entry.getKey(), this.elements.get(entry.getValue()));
-                }
-                
-                // 添加远程元素
-                for (Map.Entry<String, Integer> entry : otherArray.elementIds.entrySet()) {
-                    allElements.put(entry.getKey(), otherArray.elements.get(entry.getValue()));
+        // 只集成本地尚未见过的元素，并按origin确定位置，所有副本得到相同的顺序；
+        // 双方都有的嵌套类型随编码结果一起递归合并
+        mergeSequence((YArray) other);
+    }
+
+    /**
+     * 包含已构建的嵌套类型元素的状态向量，包括已删除的元素
+     */
+    @Override
+    public Map<Integer, Long> getStateVector() {
+        lock.readLock().lock();
+        try {
+            Map<Integer, Long> stateVector = super.getStateVector();
+            for (Object child : children.values()) {
+                LazyType.mergeStateVector(stateVector, child);
+            }
+            return stateVector;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean hasDeletions() {
+        lock.readLock().lock();
+        try {
+            if (super.hasDeletions()) {
+                return true;
+            }
+            for (Object child : children.values()) {
+                if (LazyType.hasDeletions(child)) {
+                    return true;
                 }
-                
-                // 重建数组
-                List<Object> mergedElements = new ArrayList<>();
-                Map<String, Integer> mergedIds = new HashMap<>();
-                Map<Integer, String> mergedIndexToId = new HashMap<>();
-                
-                int index = 0;
-                for (Map.Entry<String, Object> entry : allElements.entrySet()) {
-                    mergedElements.add(entry.getValue());
-                    mergedIds.put(entry.getKey(), index);
-                    mergedIndexToId.put(index, entry.getKey());
-                    index++;
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 编码对方尚未见过的元素；对方已见过的嵌套类型中，状态向量超出对方或有删除的才用对方的状态向量编码后附在后面
+     */
+    @Override
+    public void encodeState(UpdateEncoder out, Map<Integer, Long> stateVector) {
+        lock.readLock().lock();
+        try {
+            super.encodeState(out, stateVector);
+            Map<ID, Object> seen = new HashMap<>();
+            children.forEach((id, child) -> {
+                if (id.getClock() < stateVector.getOrDefault(id.getClient(), 0L)
+                        && indexOfId(id.getClient(), id.getClock()) >= 0
+                        && LazyType.changedSince(child, stateVector)) {
+                    seen.put(id, child);
                 }
-                
-                this.elements = new CopyOnWriteArrayList<>(mergedElements);
-                this.elementIds = mergedIds;
-                this.indexToId = mergedIndexToId;
-                this.version = Math.max(this.version, otherArray.getVersion());
-                this.timestamp = Math.max(this.timestamp, otherArray.getTimestamp());
-
-                // 增加版本号表示合并操作
-                incrementVersion();
+            });
+            out.writeVarUint(seen.size());
+            for (Map.Entry<ID, Object> entry : seen.entrySet()) {
+                out.writeClient(entry.getKey().getClient());
+                out.writeVarUint(entry.getKey().getClock());
+                ValueCodec.writeDelta(out, entry.getValue(), stateVector);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void applyState(UpdateDecoder in) throws IOException {
+        super.applyState(in);
+        int count = in.readLength();
+        Map<ID, Object> seen = new HashMap<>(Math.min(count, 1024) * 2);
+        for (int i = 0; i < count; i++) {
+            ID id = new ID(in.readClient(), in.readVarUint());
+            seen.put(id, ValueCodec.readValue(in));
+        }
+        if (count > 0) {
+            lock.writeLock().lock();
+            try {
+                seen.forEach(this::mergeChild);
             } finally {
                 lock.writeLock().unlock();
             }
         }
     }
 
-    /**
-     * 内部方法：检查是否应该合并另一个CRDT实例
-     *
-     * @param other 要合并的CRDT实例
-     * @return 是否应该合并
-     */
     @Override
-    protected boolean shouldMerge(CRDT other) {
-        if (!(other instanceof YArray)) {
-            return false;
+    protected void applyStructs(Map<Integer, List<Item>> otherStructs, DeleteSet otherDeleteSet) {
+        super.applyStructs(otherStructs, otherDeleteSet);
+        for (List<Item> items : otherStructs.values()) {
+            for (Item item : items) {
+                if (!(item.getContent() instanceof AnyContent)) {
+                    continue;
+                }
+                AnyContent content = (AnyContent) item.getContent();
+                for (int i = 0; i < content.length(); i++) {
+                    if (content.getRaw(i) instanceof LazyType) {
+                        mergeChild(new ID(item.getClient(), item.getClock() + i), content.getRaw(i));
+                    }
+                }
+            }
         }
-        YArray otherArray = (YArray) other;
-        return otherArray.getVersion() > this.version ||
-                (otherArray.getVersion() == this.version && otherArray.getTimestamp() > this.timestamp);
+        imported.clear();
     }
 
     @Override
-    protected void incrementVersion() {
-        this.version++;
-        this.timestamp = System.currentTimeMillis();
+    protected Content importContent(int client, long clock, Content content) {
+        if (!(content instanceof AnyContent)) {
+            return content;
+        }
+        AnyContent any = (AnyContent) content;
+        Object[] values = null;
+        for (int i = 0; i < any.length(); i++) {
+            Object raw = any.getRaw(i);
+            if (!LazyType.isNested(raw)) {
+                continue;
+            }
+            if (values == null) {
+                values = new Object[any.length()];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = any.getRaw(j);
+                }
+            }
+            // 复制对方的嵌套类型，不与对方共享实例
+            ID id = new ID(client, clock + i);
+            LazyType copy = LazyType.copyOf(raw);
+            copy.attach(this, id);
+            children.put(id, copy);
+            imported.add(id);
+            values[i] = copy;
+        }
+        return values == null ? content : new AnyContent(values);
     }
 
     @Override
     public Object getState() {
-        return new ArrayList<>(elements);
+        lock.readLock().lock();
+        try {
+            return toList();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     @Override
@@ -246,7 +506,15 @@ public class YArray extends BaseCRDT {
                     Map<String, Object> data = (Map<String, Object>) op.getData();
                     Integer index = (Integer) data.get("index");
                     Object element = data.get("element");
-                    if (index != null && element != null) {
+                    Object elements = data.get("elements");
+                    if (elements instanceof Collection) {
+                        // 批量插入，未指定位置时追加到末尾
+                        if (index != null) {
+                            insertAll(index, (Collection<?>) elements);
+                        } else {
+                            addAll((Collection<?>) elements);
+                        }
+                    } else if (index != null && element != null) {
                         insert(index, element);
                     }
                 }
@@ -264,6 +532,14 @@ public class YArray extends BaseCRDT {
             case DELETE:
                 if (op.getData() instanceof Integer) {
                     remove((Integer) op.getData());
+                } else if (op.getData() instanceof Map) {
+                    // 批量删除 [start, end) 范围内的元素
+                    Map<String, Object> data = (Map<String, Object>) op.getData();
+                    Integer start = (Integer) data.get("start");
+                    Integer end = (Integer) data.get("end");
+                    if (start != null && end != null) {
+                        removeRange(start, end);
+                    }
                 }
                 break;
             case CLEAR:
@@ -274,51 +550,39 @@ public class YArray extends BaseCRDT {
         }
     }
 
-    /**
-     * 生成元素唯一ID
-     *
-     * @return 元素ID
-     */
-    private String generateElementId() {
-        return getClass().getSimpleName() + ":" + generateId();
-    }
+    // 以下辅助方法都假定调用方已持有写锁
 
     /**
-     * 在插入元素后更新元素ID索引映射
-     *
-     * @param startIndex 起始索引
+     * 在指定位置插入一组本地元素，并把其中的共享类型挂到当前数组下
      */
-    private void updateElementIdsAfterInsert(int startIndex) {
-        Map<Integer, String> newIndexToId = new HashMap<>();
-        for (Map.Entry<String, Integer> entry : elementIds.entrySet()) {
-            if (entry.getValue() >= startIndex) {
-                int newIndex = entry.getValue() + 1;
-                entry.setValue(newIndex);
-                newIndexToId.put(newIndex, entry.getKey());
-            } else {
-                newIndexToId.put(entry.getValue(), entry.getKey());
+    private void insertValues(int index, Object[] values) {
+        for (Object value : values) {
+            if (value instanceof BaseCRDT) {
+                checkNestable((BaseCRDT) value);
+            }
+        }
+        insertContent(index, new AnyContent(values));
+        ID first = null;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof BaseCRDT) {
+                if (first == null) {
+                    first = idAt(index);
+                }
+                ID id = new ID(first.getClient(), first.getClock() + i);
+                ((BaseCRDT) values[i]).setParent(this, id);
+                children.put(id, values[i]);
             }
         }
-        this.indexToId = newIndexToId;
     }
 
     /**
-     * 在删除元素后更新元素ID索引映射
-     *
-     * @param startIndex 起始索引
+     * 把对方的嵌套类型合并到本地同一ID的嵌套类型，本次刚复制的和本地没有的跳过
      */
-    private void updateElementIdsAfterRemove(int startIndex) {
-        Map<Integer, String> newIndexToId = new HashMap<>();
-        for (Map.Entry<String, Integer> entry : elementIds.entrySet()) {
-            if (entry.getValue() > startIndex) {
-                int newIndex = entry.getValue() - 1;
-                entry.setValue(newIndex);
-                newIndexToId.put(newIndex, entry.getKey());
-            } else {
-                newIndexToId.put(entry.getValue(), entry.getKey());
-            }
+    private void mergeChild(ID id, Object remote) {
+        Object local = children.get(id);
+        if (local != null && !imported.contains(id)) {
+            LazyType.merge(local, remote);
         }
-        this.indexToId = newIndexToId;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+package com.cdfeih.yjs.java.crdt.types;
+
+import com.cdfeih.yjs.java.crdt.struct.Item;
+import com.cdfeih.yjs.java.crdt.struct.DoubleContent;
+import com.cdfeih.yjs.java.crdt.struct.PrimitiveContent;
+
+import java.util.Collection;
+
+/**
+ * YDoubleArray是元素为double的分布式数组CRDT实现，适合存放大量数值序列
+ * <p>
+ * 数值以double数组块存储，存储方式和数组整体的读写见{@link PrimitiveArray}。
+ */
+public class YDoubleArray extends PrimitiveArray<Double, double[]> {
+
+    public YDoubleArray() {
+        super();
+    }
+
+    /**
+     * 添加数值到数组末尾
+     *
+     * @param value 要添加的数值
+     * @return 添加后的数组大小
+     */
+    public int add(double value) {
+        return addAll(new double[]{value});
+    }
+
+    /**
+     * 在指定索引位置插入数值
+     *
+     * @param index 插入位置索引
+     * @param value 要插入的数值
+     */
+    public void insert(int index, double value) {
+        insertAll(index, new double[]{value});
+    }
+
+    /**
+     * 获取指定索引位置的数值
+     *
+     * @param index 索引位置
+     * @return 数值
+     */
+    public double get(int index) {
+        lock.readLock().lock();
+        try {
+            Item item = itemAt(index);
+            return ((DoubleContent) item.getContent()).getDouble(index - startOf(item));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 移除指定索引位置的数值
+     *
+     * @param index 索引位置
+     * @return 被移除的数值
+     */
+    public double remove(int index) {
+        return removeRange(index, index + 1)[0];
+    }
+
+    /**
+     * 更新指定索引位置的数值
+     * <p>
+     * 原数值被删除，新数值以新的ID插入到同一位置
+     *
+     * @param index 索引位置
+     * @param value 新数值
+     * @return 旧数值
+     */
+    public double set(int index, double value) {
+        return replace(index, new double[]{value})[0];
+    }
+
+    @Override
+    protected PrimitiveContent<double[]> contentOf(double[] values) {
+        return new DoubleContent(values);
+    }
+
+    @Override
+    protected double[] newArray(int length) {
+        return new double[length];
+    }
+
+    @Override
+    protected double[] fromNumbers(Collection<?> elements) {
+        double[] values = new double[elements.size()];
+        int i = 0;
+        for (Object element : elements) {
+            values[i++] = ((Number) element).doubleValue();
+        }
+        return values;
+    }
+
+}
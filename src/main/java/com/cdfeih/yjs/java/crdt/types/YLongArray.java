@@ -0,0 +1,99 @@
+package com.cdfeih.yjs.java.crdt.types;
+
+import com.cdfeih.yjs.java.crdt.struct.Item;
+import com.cdfeih.yjs.java.crdt.struct.LongContent;
+import com.cdfeih.yjs.java.crdt.struct.PrimitiveContent;
+
+import java.util.Collection;
+
+/**
+ * YLongArray是元素为long的分布式数组CRDT实现，适合存放大量数值序列
+ * <p>
+ * 数值以long数组块存储，存储方式和数组整体的读写见{@link PrimitiveArray}。
+ */
+public class YLongArray extends PrimitiveArray<Long, long[]> {
+
+    public YLongArray() {
+        super();
+    }
+
+    /**
+     * 添加数值到数组末尾
+     *
+     * @param value 要添加的数值
+     * @return 添加后的数组大小
+     */
+    public int add(long value) {
+        return addAll(new long[]{value});
+    }
+
+    /**
+     * 在指定索引位置插入数值
+     *
+     * @param index 插入位置索引
+     * @param value 要插入的数值
+     */
+    public void insert(int index, long value) {
+        insertAll(index, new long[]{value});
+    }
+
+    /**
+     * 获取指定索引位置的数值
+     *
+     * @param index 索引位置
+     * @return 数值
+     */
+    public long get(int index) {
+        lock.readLock().lock();
+        try {
+            Item item = itemAt(index);
+            return ((LongContent) item.getContent()).getLong(index - startOf(item));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 移除指定索引位置的数值
+     *
+     * @param index 索引位置
+     * @return 被移除的数值
+     */
+    public long remove(int index) {
+        return removeRange(index, index + 1)[0];
+    }
+
+    /**
+     * 更新指定索引位置的数值
+     * <p>
+     * 原数值被删除，新数值以新的ID插入到同一位置
+     *
+     * @param index 索引位置
+     * @param value 新数值
+     * @return 旧数值
+     */
+    public long set(int index, long value) {
+        return replace(index, new long[]{value})[0];
+    }
+
+    @Override
+    protected PrimitiveContent<long[]> contentOf(long[] values) {
+        return new LongContent(values);
+    }
+
+    @Override
+    protected long[] newArray(int length) {
+        return new long[length];
+    }
+
+    @Override
+    protected long[] fromNumbers(Collection<?> elements) {
+        long[] values = new long[elements.size()];
+        int i = 0;
+        for (Object element : elements) {
+            values[i++] = ((Number) element).longValue();
+        }
+        return values;
+    }
+
+}
@@ -2,57 +2,162 @@ package com.cdfeih.yjs.java.crdt.types;
 
 import com.cdfeih.yjs.java.crdt.BaseCRDT;
 import com.cdfeih.yjs.java.crdt.CRDT;
+import com.cdfeih.yjs.java.crdt.encoding.LazyType;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateDecoder;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateEncoder;
+import com.cdfeih.yjs.java.crdt.encoding.ValueCodec;
+import com.cdfeih.yjs.java.crdt.event.KeyChange;
+import com.cdfeih.yjs.java.crdt.event.YMapEvent;
 import com.cdfeih.yjs.java.crdt.operation.CRDTOperation;
-import lombok.Getter;
-import lombok.Setter;
+import com.cdfeih.yjs.java.crdt.struct.MapEntry;
+import com.cdfeih.yjs.java.crdt.util.PersistentHashMap;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * YMap是一个分布式键值对CRDT实现，支持并发读写
+ * <p>
+ * 每个键的值带有写入标记 (clientId, clock)（见{@link MapEntry}），并发写入按标记决定胜负。
+ * 映射按客户端记录当前各值的标记，并维护状态向量（每个客户端已见过的下一个时钟），
+ * 因此可以只取出对方状态向量之后发生变化的键，同步和合并的耗时与变化的键数成正比。
+ * 被覆盖的写入不再传输，因此每次同步都附带它覆盖的时钟范围（接收方原有的状态到发送方的状态）；
+ * 状态向量只按连续的范围推进，先于更早的范围到达的范围暂存起来，缺口补齐之后再推进，
+ * 因此乱序到达的更新不会让之后的同步跳过缺失的写入。
+ * <p>
+ * 每个键对应一个不可变的寄存器（{@link MapEntry}），本地写入通过{@link ConcurrentHashMap#compute}
+ * 按键原子地替换寄存器，并在同一次替换中更新该键的索引，不同键上的写入不等待彼此的寄存器。写入只持有读写锁的共享模式，
+ * 需要一致视图的操作（状态向量、同步、合并、清空和垃圾回收）持有独占模式，因此不会看到写了一半的状态。
+ * 每次写入仍要经过读写锁的共享计数、逻辑时钟和版本号这几个原子变量，多线程写入的吞吐量受它们限制。
+ * 版本号在共享模式内递增；不在批量修改中的写入在释放锁之后只通知自己的变化，
+ * 批量修改和独占模式下的修改记录在待通知的变化中，提交时一并通知，因此事件的来源和批次不会混入其他线程的写入。
+ * 同一个键上的并发本地写入同样按标记决定胜负，时钟较大的写入胜出。
+ * <p>
+ * 可见条目另外保存在持久化哈希映射（{@link PersistentHashMap}）中作为快照，新旧快照共享未修改的部分。
+ * 写入只记录变化的键，读取快照时才把这些键并入一个新的不可变快照；{@link #getState()}以及
+ * {@link #keySet()}、{@link #values()}、{@link #entrySet()}返回快照本身或其视图，不复制条目，
+ * 并且在之后的写入发生时仍保持不变。{@link #get(String)}直接读取寄存器，不需要加锁。
+ * <p>
+ * 值可以是YMap、YArray、YText等共享类型，嵌套的类型以键为其在映射中的位置。合并时对方写入的嵌套类型
+ * 以编码形式复制，首次读取时才构建；双方标记相同的嵌套类型是同一个类型，递归合并其内部的变化，
+ * 同步时只编码对方尚未见过的内部变化。
+ * <p>
+ * 删除键时保留一个带标记的墓碑（{@link MapEntry#tombstone(int, long)}），与写入一样参与同步和比较，
+ * 因此过期副本中的旧值不会在合并时复活被删除的键。映射记录已知副本的状态向量：合并时以对方的ID记录对方，
+ * 应用二进制更新时以发送方的客户端ID记录更新中携带的发送方状态向量（只接收不发送的副本发送一次没有变化的更新即可登记），
+ * 也可以通过{@link #updateReplicaState(String, Map)}登记。{@link #gc()}只丢弃所有已知副本都已见过的墓碑，
+ * 键频繁增删时墓碑占用的内存不会无限增长；没有已知副本时无法确定谁见过删除，墓碑全部保留。
+ * 状态向量已经覆盖的条目在合并时被忽略，因此墓碑被回收之后，迟到的旧更新同样不会复活被删除的键。
  */
-@Getter
-@Setter
 public class YMap extends BaseCRDT {
 
-    private Map<String, Object> entries;
-    private Map<String, Long> entryTimestamps;
+    // 每个键的当前寄存器：值或墓碑及其标记
+    private final ConcurrentHashMap<String, MapEntry> registers;
+    // 最近一次发布的只读快照，以及之后寄存器发生变化、尚未并入快照的键
+    private volatile Snapshot snapshot;
+    private final Set<String> dirtyKeys;
+    // 按客户端、时钟索引各键当前寄存器的标记，用于按状态向量取出变化的键
+    private final Map<Integer, NavigableMap<Long, String>> keysByClock;
+    // 其他客户端已见过的下一个时钟，只在独占模式下修改；本地客户端的时钟由本地逻辑时钟给出
+    private final Map<Integer, Long> stateVector;
+    // 已见过但与状态向量之间有缺口的时钟范围（客户端ID -> 起始时钟 -> 结束时钟）
+    private final Map<Integer, NavigableMap<Long, Long>> pendingRanges;
+    // 当前值为嵌套类型的键，以及当前为墓碑的键
+    private final Set<String> nestedKeys;
+    private final Set<String> tombstones;
+    // 已知副本（副本ID -> 状态向量），决定哪些墓碑可以被回收
+    private final Map<String, Map<Integer, Long>> replicaStates;
+    // 批量修改和独占模式下尚未通知观察者的键变化，只在有观察者时记录
+    private final ConcurrentHashMap<String, KeyChange> pendingChanges;
+    // 共享模式用于单键写入，独占模式用于需要一致视图的操作
+    private final ReadWriteLock lock;
 
     public YMap() {
         super();
-        this.entries = new ConcurrentHashMap<>();
-        this.entryTimestamps = new ConcurrentHashMap<>();
+        this.registers = new ConcurrentHashMap<>();
+        this.snapshot = Snapshot.EMPTY;
+        this.dirtyKeys = ConcurrentHashMap.newKeySet();
+        this.keysByClock = new ConcurrentHashMap<>();
+        this.stateVector = new HashMap<>();
+        this.pendingRanges = new HashMap<>();
+        this.nestedKeys = ConcurrentHashMap.newKeySet();
+        this.tombstones = ConcurrentHashMap.newKeySet();
+        this.replicaStates = new HashMap<>();
+        this.pendingChanges = new ConcurrentHashMap<>();
+        this.lock = new ReentrantReadWriteLock();
     }
 
     /**
      * 存储键值对
      *
      * @param key   键
-     * @param value 值
+     * @param value 值，可以是尚未嵌套在其他位置的共享类型
      * @return 之前的值，如果不存在则返回null
+     * @throws IllegalArgumentException 共享类型已嵌套在其他位置，或是当前映射自身或其祖先
      */
     public Object set(String key, Object value) {
-        Object oldValue = entries.put(key, value);
-        entryTimestamps.put(key, System.currentTimeMillis());
-        incrementVersion();
-        return oldValue;
+        MapEntry oldEntry;
+        boolean batched = isBatched();
+        Map<String, KeyChange> changes = batched ? pendingChanges : new HashMap<>(2);
+        lock.readLock().lock();
+        try {
+            MapEntry entry = new MapEntry(value, getClientId(), nextClock(1));
+            if (value instanceof BaseCRDT) {
+                BaseCRDT type = (BaseCRDT) value;
+                synchronized (type) {
+                    checkNestable(type);
+                    oldEntry = write(key, entry, changes);
+                    // 同一个键上标记更大的并发写入胜出时，共享类型没有嵌套到映射中
+                    if (entry.isNewerThan(oldEntry)) {
+                        type.setParent(this, key);
+                    }
+                }
+            } else {
+                oldEntry = write(key, entry, changes);
+            }
+            commitWrite(batched);
+        } finally {
+            lock.readLock().unlock();
+        }
+        notifyWrite(batched, changes);
+        return valueOf(oldEntry);
     }
 
     /**
-     * 获取键对应的值
+     * 获取键对应的值，直接读取寄存器，不需要加锁
      *
      * @param key 键
      * @return 值，如果不存在则返回null
      */
     public Object get(String key) {
-        return entries.get(key);
+        return valueOf(registers.get(key));
+    }
+
+    /**
+     * 获取键对应的值及其写入标记
+     *
+     * @param key 键
+     * @return 条目，如果不存在或已删除则返回null
+     */
+    public MapEntry getEntry(String key) {
+        MapEntry entry = registers.get(key);
+        return entry != null && !entry.isDeleted() ? entry : null;
     }
 
     /**
@@ -62,20 +167,31 @@ public class YMap extends BaseCRDT {
      * @return 是否包含
      */
     public boolean containsKey(String key) {
-        return entries.containsKey(key);
+        return getEntry(key) != null;
     }
 
     /**
-     * 移除指定的键值对
+     * 移除指定的键值对，并留下墓碑
      *
      * @param key 键
-     * @return 被移除的值
+     * @return 被移除的值，如果不存在则返回null
      */
     public Object remove(String key) {
-        Object removedValue = entries.remove(key);
-        entryTimestamps.remove(key);
-        incrementVersion();
-        return removedValue;
+        MapEntry oldEntry;
+        boolean batched = isBatched();
+        Map<String, KeyChange> changes = batched ? pendingChanges : new HashMap<>(2);
+        lock.readLock().lock();
+        try {
+            if (getEntry(key) == null) {
+                return null;
+            }
+            oldEntry = write(key, MapEntry.tombstone(getClientId(), nextClock(1)), changes);
+            commitWrite(batched);
+        } finally {
+            lock.readLock().unlock();
+        }
+        notifyWrite(batched, changes);
+        return valueOf(oldEntry);
     }
 
     /**
@@ -84,7 +200,7 @@ public class YMap extends BaseCRDT {
      * @return 大小
      */
     public int size() {
-        return entries.size();
+        return snapshot().size();
     }
 
     /**
@@ -93,43 +209,213 @@ public class YMap extends BaseCRDT {
      * @return 是否为空
      */
     public boolean isEmpty() {
-        return entries.isEmpty();
+        return size() == 0;
     }
 
     /**
-     * 清除所有键值对
+     * 清除所有键值对，每个键都留下墓碑
      */
     public void clear() {
-        entries.clear();
-        entryTimestamps.clear();
-        incrementVersion();
+        lock.writeLock().lock();
+        try {
+            Set<String> keys = snapshot().keySet();
+            if (keys.isEmpty()) {
+                return;
+            }
+            long clock = nextClock(keys.size());
+            for (String key : keys) {
+                write(key, MapEntry.tombstone(getClientId(), clock++), pendingChanges);
+            }
+            incrementVersion();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
      * 获取所有键的集合
      *
-     * @return 键集合
+     * @return 当前快照的只读键集合
      */
     public Set<String> keySet() {
-        return new HashSet<>(entries.keySet());
+        return snapshot().keySet();
     }
 
     /**
      * 获取所有值的集合
      *
-     * @return 值集合
+     * @return 当前快照的只读值集合
      */
     public Collection<Object> values() {
-        return new ArrayList<>(entries.values());
+        return snapshot().values();
     }
 
     /**
      * 获取所有键值对的集合
      *
-     * @return 键值对集合
+     * @return 当前快照的只读键值对集合
      */
     public Set<Map.Entry<String, Object>> entrySet() {
-        return new HashSet<>(entries.entrySet());
+        return snapshot().entrySet();
+    }
+
+    @Override
+    protected ReadWriteLock getLock() {
+        return lock;
+    }
+
+    /**
+     * 获取状态向量，即每个客户端已见过的下一个时钟
+     * <p>
+     * 在独占模式下读取，正在进行的本地写入完成之后才返回，因此状态向量覆盖的写入都已对同步可见
+     *
+     * @return 客户端ID到时钟的映射
+     */
+    @Override
+    public Map<Integer, Long> getStateVector() {
+        lock.writeLock().lock();
+        try {
+            Map<Integer, Long> result = currentState();
+            for (String key : nestedKeys) {
+                LazyType.mergeStateVector(result, registers.get(key).getRawValue());
+            }
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除键留下带标记的墓碑，已体现在状态向量上，只检查已构建的嵌套类型
+     */
+    @Override
+    public boolean hasDeletions() {
+        for (String key : nestedKeys) {
+            MapEntry entry = registers.get(key);
+            if (entry != null && LazyType.hasDeletions(entry.getRawValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取对方尚未见过的变化
+     * <p>
+     * 只返回标记不被对方状态向量覆盖的当前值和墓碑，耗时与变化的键数成正比，与映射大小无关
+     *
+     * @param stateVector 对方的状态向量，为空时返回全部条目和尚未回收的墓碑
+     * @return 变化的键及其条目，被删除的键对应墓碑条目
+     */
+    public Map<String, MapEntry> getChangesSince(Map<Integer, Long> stateVector) {
+        return changesSince(stateVector, new HashMap<>());
+    }
+
+    /**
+     * 获取对方尚未见过的变化，以及这些变化覆盖到的本地状态向量
+     * <p>
+     * 变化与状态向量在同一次独占加锁中取得，变化覆盖了从对方状态到本地状态之间的全部写入，
+     * 两者一起交给{@link #applyChanges(Map, Map, Map)}
+     *
+     * @param stateVector 对方的状态向量
+     * @param state       接收本地的状态向量
+     * @return 变化的键及其条目，被删除的键对应墓碑条目
+     */
+    public Map<String, MapEntry> getChangesSince(Map<Integer, Long> stateVector, Map<Integer, Long> state) {
+        return changesSince(stateVector, state);
+    }
+
+    /**
+     * 应用其他副本的变化，每个键保留标记较大的条目或墓碑
+     * <p>
+     * 变化中不包含被覆盖的写入，因此状态向量按发送方覆盖的范围推进：每个客户端从取变化时使用的状态到发送方的状态，
+     * 与{@link #merge(CRDT)}和二进制更新相同；范围与已见过的时钟之间有缺口时暂存，缺口补齐后再推进
+     *
+     * @param changes 变化的键及其条目，由{@link #getChangesSince(Map, Map)}取得
+     * @param since   取变化时使用的状态向量
+     * @param state   发送方的状态向量
+     * @return 本地值被更新的键数
+     */
+    public int applyChanges(Map<String, MapEntry> changes, Map<Integer, Long> since, Map<Integer, Long> state) {
+        lock.writeLock().lock();
+        try {
+            int updated = integrate(changes);
+            state.forEach((client, clock) -> observeRange(client, since.getOrDefault(client, 0L), clock));
+            if (updated > 0) {
+                incrementVersion();
+            }
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 登记一个副本已见过的状态，墓碑只有在所有已知副本都见过之后才会被回收
+     *
+     * @param replicaId   副本ID
+     * @param stateVector 该副本的状态向量，与之前登记的取较大值
+     */
+    public void updateReplicaState(String replicaId, Map<Integer, Long> stateVector) {
+        lock.writeLock().lock();
+        try {
+            Map<Integer, Long> known = replicaStates.computeIfAbsent(replicaId, k -> new HashMap<>());
+            stateVector.forEach((client, clock) -> known.merge(client, clock, Math::max));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除已离开的副本，它不再阻止墓碑被回收
+     *
+     * @param replicaId 副本ID
+     */
+    public void removeReplica(String replicaId) {
+        lock.writeLock().lock();
+        try {
+            replicaStates.remove(replicaId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获取尚未回收的墓碑数量
+     *
+     * @return 墓碑数量
+     */
+    public int getTombstoneCount() {
+        return tombstones.size();
+    }
+
+    /**
+     * 垃圾回收：丢弃所有已知副本的状态向量都已覆盖的墓碑
+     * <p>
+     * 这些副本都已经见过删除，不会再发送标记更小的旧值，丢弃墓碑后被删除的键不会复活。
+     * 没有已知副本时不回收任何墓碑。耗时与墓碑数量成正比，不访问映射中的条目。
+     */
+    @Override
+    public void gc() {
+        lock.writeLock().lock();
+        try {
+            if (replicaStates.isEmpty()) {
+                return;
+            }
+            Iterator<String> iterator = tombstones.iterator();
+            while (iterator.hasNext()) {
+                String key = iterator.next();
+                MapEntry tombstone = registers.get(key);
+                if (seenByAllReplicas(tombstone)) {
+                    iterator.remove();
+                    registers.remove(key);
+                    unindex(tombstone);
+                }
+            }
+            keysByClock.values().removeIf(Map::isEmpty);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -139,29 +425,135 @@ public class YMap extends BaseCRDT {
         }
 
         YMap otherMap = (YMap) other;
+        // 只取出本地尚未见过的键，先在对方的锁内取出，避免同时持有两把锁；
+        // 对方的状态向量与变化在同一次加锁中取得，变化覆盖了从本地状态到对方状态之间的全部写入
+        Map<Integer, Long> localState = getStateVector();
+        Map<Integer, Long> otherState = new HashMap<>();
+        Map<String, MapEntry> changes = otherMap.changesSince(localState, otherState);
+        Map<String, MapEntry> nested = otherMap.getNestedEntries();
 
-        // 对于每个键，选择时间戳最新的值
-        for (String key : otherMap.keySet()) {
-            Long otherTimestamp = otherMap.entryTimestamps.get(key);
-            Long localTimestamp = this.entryTimestamps.get(key);
+        lock.writeLock().lock();
+        try {
+            // 对方见过的状态决定哪些墓碑可以回收
+            Map<Integer, Long> known = replicaStates.computeIfAbsent(otherMap.getId(), k -> new HashMap<>());
+            otherState.forEach((client, clock) -> known.merge(client, clock, Math::max));
+            integrate(changes);
+            otherState.forEach((client, clock) -> observeRange(client, localState.getOrDefault(client, 0L), clock));
+            // 本地已见过的嵌套类型可能在内部发生了变化，递归合并，耗时与嵌套类型的数量成正比
+            nested.forEach((key, entry) -> {
+                if (!changes.containsKey(key)) {
+                    mergeChild(key, entry);
+                }
+            });
 
-            // 如果本地没有该键，或者对方的时间戳更新，则更新本地值
-            if (!this.containsKey(key) || (otherTimestamp != null && localTimestamp != null && otherTimestamp > localTimestamp)) {
-                this.entries.put(key, otherMap.get(key));
-                this.entryTimestamps.put(key, otherTimestamp);
-            }
+            // 更新版本和时间戳
+            advanceVersion(otherMap.getVersion());
+            this.timestamp = Math.max(this.timestamp, otherMap.getTimestamp());
+            incrementVersion();
+        } finally {
+            lock.writeLock().unlock();
         }
-
-        // 更新版本和时间戳
-        this.version = Math.max(this.version, otherMap.getVersion());
-        this.timestamp = Math.max(this.timestamp, otherMap.getTimestamp());
-        incrementVersion();
     }
 
+    /**
+     * 获取当前状态的只读快照
+     * <p>
+     * 快照不复制条目，之后的写入不会影响已经取得的快照
+     *
+     * @return 键到值的只读映射
+     */
     @Override
     public Object getState() {
-        // 返回不可修改的映射副本
-        return Collections.unmodifiableMap(new HashMap<>(entries));
+        return snapshot();
+    }
+
+    /**
+     * 编码对方尚未见过的条目
+     * <p>
+     * 条目之前写出本地的客户端ID和本次更新覆盖的时钟范围：每个客户端从对方的状态到本地的状态，本地状态不超过对方的客户端
+     * 写出空范围，因此范围的终点就是本地完整的状态向量，接收方据此记录本地见过的状态。嵌套类型内部的变化不体现在映射的标记上，
+     * 对方已见过的嵌套类型中，状态向量超出对方或有删除的在条目之后用对方的状态向量编码，只包含对方尚未见过的部分
+     */
+    @Override
+    public void encodeState(UpdateEncoder out, Map<Integer, Long> stateVector) {
+        Map<Integer, Long> state = new HashMap<>();
+        Map<String, MapEntry> changes = changesSince(stateVector, state);
+        Map<String, MapEntry> nested = getNestedEntries();
+        nested.values().removeIf(entry -> entry.getClock() >= stateVector.getOrDefault(entry.getClient(), 0L)
+                || !LazyType.changedSince(entry.getRawValue(), stateVector));
+        out.writeClient(getClientId());
+        out.writeVarUint(state.size());
+        for (Map.Entry<Integer, Long> range : state.entrySet()) {
+            long from = Math.min(stateVector.getOrDefault(range.getKey(), 0L), range.getValue());
+            out.writeClient(range.getKey());
+            out.writeVarUint(from);
+            out.writeVarUint(range.getValue() - from);
+        }
+        out.writeVarUint(changes.size());
+        for (Map.Entry<String, MapEntry> change : changes.entrySet()) {
+            MapEntry entry = change.getValue();
+            out.writeString(change.getKey());
+            out.writeClient(entry.getClient());
+            out.writeVarUint(entry.getClock());
+            out.writeBoolean(entry.isDeleted());
+            if (!entry.isDeleted()) {
+                ValueCodec.writeValue(out, entry.getRawValue());
+            }
+        }
+        out.writeVarUint(nested.size());
+        for (Map.Entry<String, MapEntry> child : nested.entrySet()) {
+            MapEntry entry = child.getValue();
+            out.writeString(child.getKey());
+            out.writeClient(entry.getClient());
+            out.writeVarUint(entry.getClock());
+            ValueCodec.writeDelta(out, entry.getRawValue(), stateVector);
+        }
+    }
+
+    @Override
+    public void applyState(UpdateDecoder in) throws IOException {
+        int sender = in.readClient();
+        int clients = in.readLength();
+        Map<Integer, long[]> ranges = new HashMap<>(Math.min(clients, 1024) * 2);
+        for (int i = 0; i < clients; i++) {
+            int client = in.readClient();
+            long from = in.readVarUint();
+            ranges.put(client, new long[]{from, from + in.readVarUint()});
+        }
+        int size = in.readLength();
+        Map<String, MapEntry> changes = new HashMap<>(Math.min(size, 1024) * 2);
+        for (int i = 0; i < size; i++) {
+            String key = in.readString();
+            int client = in.readClient();
+            long clock = in.readVarUint();
+            changes.put(key, in.readBoolean()
+                    ? MapEntry.tombstone(client, clock)
+                    : new MapEntry(ValueCodec.readValue(in), client, clock));
+        }
+        int children = in.readLength();
+        Map<String, MapEntry> deltas = new HashMap<>(Math.min(children, 1024) * 2);
+        for (int i = 0; i < children; i++) {
+            String key = in.readString();
+            int client = in.readClient();
+            long clock = in.readVarUint();
+            deltas.put(key, new MapEntry(ValueCodec.readValue(in), client, clock));
+        }
+
+        lock.writeLock().lock();
+        try {
+            integrate(changes);
+            // 嵌套类型内部的变化只合并到本地标记相同的嵌套类型
+            deltas.forEach(this::mergeChild);
+            ranges.forEach((client, range) -> observeRange(client, range[0], range[1]));
+            // 范围的终点是发送方的状态向量，发送方见过的墓碑可以回收；本地编码的旧更新不代表其他副本
+            if (sender != getClientId()) {
+                Map<Integer, Long> known = replicaStates.computeIfAbsent(String.valueOf(sender), k -> new HashMap<>());
+                ranges.forEach((client, range) -> known.merge(client, range[1], Math::max));
+            }
+            incrementVersion();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -194,4 +586,426 @@ public class YMap extends BaseCRDT {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * 在一次独占加锁中取出对方尚未见过的变化以及本地的状态向量
+     *
+     * @param stateVector 对方的状态向量
+     * @param state       接收本地的状态向量，变化覆盖了从对方状态到该状态之间的全部写入
+     * @return 变化的键及其条目
+     */
+    private Map<String, MapEntry> changesSince(Map<Integer, Long> stateVector, Map<Integer, Long> state) {
+        lock.writeLock().lock();
+        try {
+            Map<String, MapEntry> changes = new HashMap<>();
+            keysByClock.forEach((client, keys) -> {
+                long seen = stateVector.getOrDefault(client, 0L);
+                for (String key : keys.tailMap(seen, true).values()) {
+                    changes.put(key, registers.get(key));
+                }
+            });
+            state.putAll(currentState());
+            return changes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Map<String, MapEntry> getNestedEntries() {
+        lock.writeLock().lock();
+        try {
+            Map<String, MapEntry> nested = new HashMap<>();
+            for (String key : nestedKeys) {
+                nested.put(key, registers.get(key));
+            }
+            return nested;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获取当前快照，先把寄存器发生变化的键并入快照
+     * <p>
+     * 并入时只需与其他读取快照的线程互斥：新快照发布之后才移除变化标记，移除之后寄存器已被替换的键重新标记，
+     * 而写入先替换寄存器再标记，因此没有变化标记时已发布的快照包含全部已经返回的写入，
+     * 已经返回的写入一定体现在之后取得的快照中
+     */
+    private Snapshot snapshot() {
+        if (dirtyKeys.isEmpty()) {
+            return snapshot;
+        }
+        synchronized (dirtyKeys) {
+            PersistentHashMap<String, SnapshotEntry> entries = snapshot.entries;
+            Map<String, MapEntry> merged = new HashMap<>();
+            for (String key : dirtyKeys) {
+                MapEntry entry = registers.get(key);
+                merged.put(key, entry);
+                entries = entry == null || entry.isDeleted()
+                        ? entries.minus(key)
+                        : entries.plus(key, new SnapshotEntry(key, entry));
+            }
+            if (entries != snapshot.entries) {
+                snapshot = new Snapshot(entries);
+            }
+            merged.forEach((key, entry) -> {
+                dirtyKeys.remove(key);
+                if (registers.get(key) != entry) {
+                    dirtyKeys.add(key);
+                }
+            });
+            return snapshot;
+        }
+    }
+
+    private static Object valueOf(MapEntry entry) {
+        return entry != null && !entry.isDeleted() ? entry.getValue() : null;
+    }
+
+    /**
+     * 按键原子地写入寄存器，标记不大于当前寄存器时保留当前寄存器；调用方至少持有共享模式
+     *
+     * @return 写入前的寄存器
+     */
+    private MapEntry write(String key, MapEntry entry, Map<String, KeyChange> changes) {
+        MapEntry[] previous = new MapEntry[1];
+        MapEntry written = registers.compute(key, (k, current) -> {
+            previous[0] = current;
+            if (!entry.isNewerThan(current)) {
+                return current;
+            }
+            // 同一个键的索引只在该键的compute中修改，与寄存器保持一致
+            if (current != null) {
+                unindex(current);
+            }
+            keysByClock.computeIfAbsent(entry.getClient(), c -> new ConcurrentSkipListMap<>())
+                    .put(entry.getClock(), k);
+            if (entry.isDeleted()) {
+                tombstones.add(k);
+            } else {
+                tombstones.remove(k);
+            }
+            if (LazyType.isNested(entry.getRawValue())) {
+                nestedKeys.add(k);
+            } else {
+                nestedKeys.remove(k);
+            }
+            return entry;
+        });
+        dirtyKeys.add(key);
+        if (written == entry && isObserved()) {
+            recordChange(changes, key, previous[0], entry);
+        }
+        return previous[0];
+    }
+
+    /**
+     * 在共享模式内完成一次单键写入：批量修改中只登记变化，否则直接递增版本号，观察者由{@link #notifyWrite}通知
+     */
+    private void commitWrite(boolean batched) {
+        if (batched) {
+            incrementVersion();
+        } else {
+            bumpVersion();
+        }
+    }
+
+    /**
+     * 释放锁之后通知单键写入自己的变化，观察者回调中可以读取映射的状态向量；批量修改中的变化在提交时通知
+     */
+    private void notifyWrite(boolean batched, Map<String, KeyChange> changes) {
+        if (!batched && !changes.isEmpty() && isObserved()) {
+            dispatch(new YMapEvent(this, List.of(), null, Collections.unmodifiableMap(changes)));
+        }
+    }
+
+    /**
+     * 记录键的变化，与该键尚未通知的变化合并
+     */
+    private void recordChange(Map<String, KeyChange> changes, String key, MapEntry previous, MapEntry entry) {
+        boolean existed = previous != null && !previous.isDeleted();
+        KeyChange change;
+        if (entry.isDeleted()) {
+            if (!existed) {
+                return;
+            }
+            change = new KeyChange(KeyChange.Action.DELETE, previous.getValue());
+        } else {
+            change = existed
+                    ? new KeyChange(KeyChange.Action.UPDATE, previous.getValue())
+                    : new KeyChange(KeyChange.Action.ADD, null);
+        }
+        changes.merge(key, change, KeyChange::then);
+    }
+
+    /**
+     * 取出批量修改和独占模式下尚未通知的键变化
+     */
+    @Override
+    protected YMapEvent createEvent(Object origin) {
+        if (pendingChanges.isEmpty()) {
+            return null;
+        }
+        Map<String, KeyChange> changes = new HashMap<>();
+        for (String key : pendingChanges.keySet()) {
+            KeyChange change = pendingChanges.remove(key);
+            if (change != null) {
+                changes.put(key, change);
+            }
+        }
+        if (changes.isEmpty() || !isObserved()) {
+            return null;
+        }
+        return new YMapEvent(this, List.of(), origin, Collections.unmodifiableMap(changes));
+    }
+
+    private void unindex(MapEntry entry) {
+        NavigableMap<Long, String> keys = keysByClock.get(entry.getClient());
+        if (keys != null) {
+            keys.remove(entry.getClock());
+        }
+    }
+
+    // 以下辅助方法都假定调用方已持有独占模式
+
+    private int integrate(Map<String, MapEntry> changes) {
+        int updated = 0;
+        for (Map.Entry<String, MapEntry> change : changes.entrySet()) {
+            String key = change.getKey();
+            MapEntry entry = change.getValue();
+            observeClock(entry.getClock());
+            // 状态向量已覆盖的条目已经见过，它或者仍是当前值，或者已被覆盖、删除或回收
+            if (!covered(entry) && entry.isNewerThan(registers.get(key))) {
+                if (LazyType.isNested(entry.getRawValue())) {
+                    // 复制对方的嵌套类型，不与对方共享实例
+                    LazyType copy = LazyType.copyOf(entry.getRawValue());
+                    copy.attach(this, key);
+                    entry = new MapEntry(copy, entry.getClient(), entry.getClock());
+                }
+                write(key, entry, pendingChanges);
+                updated++;
+            } else {
+                mergeChild(key, entry);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * 对方的条目与本地标记相同且是嵌套类型时，递归合并其内部的变化
+     */
+    private void mergeChild(String key, MapEntry remote) {
+        MapEntry local = registers.get(key);
+        if (local != null && local.getClient() == remote.getClient() && local.getClock() == remote.getClock()
+                && LazyType.isNested(local.getRawValue()) && LazyType.isNested(remote.getRawValue())) {
+            LazyType.merge(local.getRawValue(), remote.getRawValue());
+        }
+    }
+
+    /**
+     * 检查状态向量是否已覆盖条目的标记
+     */
+    private boolean covered(MapEntry entry) {
+        if (entry.getClient() == getClientId()) {
+            return entry.getClock() < getClock();
+        }
+        return entry.getClock() < stateVector.getOrDefault(entry.getClient(), 0L);
+    }
+
+    /**
+     * 检查所有已知副本是否都已见过墓碑
+     */
+    private boolean seenByAllReplicas(MapEntry tombstone) {
+        for (Map<Integer, Long> state : replicaStates.values()) {
+            if (state.getOrDefault(tombstone.getClient(), 0L) <= tombstone.getClock()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<Integer, Long> currentState() {
+        Map<Integer, Long> result = new HashMap<>(stateVector);
+        if (getClock() > 0) {
+            result.merge(getClientId(), getClock(), Math::max);
+        }
+        return result;
+    }
+
+    /**
+     * 登记见过的时钟范围 [from, to)：与状态向量连续时推进状态向量，并吸收之后变得连续的暂存范围；
+     * 与状态向量之间有缺口时暂存，不推进状态向量
+     */
+    private void observeRange(int client, long from, long to) {
+        if (from >= to) {
+            return;
+        }
+        observeClock(to - 1);
+        long state = stateVector.getOrDefault(client, 0L);
+        NavigableMap<Long, Long> pending = pendingRanges.get(client);
+        if (from > state) {
+            if (pending == null) {
+                pending = new TreeMap<>();
+                pendingRanges.put(client, pending);
+            }
+            pending.merge(from, to, Math::max);
+            return;
+        }
+        state = Math.max(state, to);
+        if (pending != null) {
+            while (!pending.isEmpty() && pending.firstKey() <= state) {
+                state = Math.max(state, pending.pollFirstEntry().getValue());
+            }
+            if (pending.isEmpty()) {
+                pendingRanges.remove(client);
+            }
+        }
+        stateVector.put(client, state);
+    }
+
+    /**
+     * 快照中的一个键值对，写入快照时创建一次，之后每次遍历{@link Snapshot#entrySet()}都直接返回它，
+     * 新旧快照共享未修改的键值对；值在读取时才从条目中取出，嵌套类型仍在首次读取时构建
+     */
+    private static final class SnapshotEntry implements Map.Entry<String, Object> {
+        final String key;
+        final MapEntry entry;
+
+        SnapshotEntry(String key, MapEntry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return entry.getValue();
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            return key.equals(other.getKey()) && Objects.equals(getValue(), other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    /**
+     * 某一时刻的只读映射，由不可变的条目映射支撑，视图在首次访问时创建并缓存
+     */
+    private static final class Snapshot extends AbstractMap<String, Object> {
+        static final Snapshot EMPTY = new Snapshot(PersistentHashMap.empty());
+
+        final PersistentHashMap<String, SnapshotEntry> entries;
+        private Set<Entry<String, Object>> entrySet;
+        private Collection<Object> values;
+
+        Snapshot(PersistentHashMap<String, SnapshotEntry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public Object get(Object key) {
+            SnapshotEntry entry = entries.get(key);
+            return entry != null ? entry.getValue() : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return entries.keySet();
+        }
+
+        @Override
+        public Collection<Object> values() {
+            Collection<Object> view = values;
+            if (view == null) {
+                view = new AbstractCollection<>() {
+                    @Override
+                    public Iterator<Object> iterator() {
+                        Iterator<SnapshotEntry> iterator = entries.values().iterator();
+                        return new Iterator<>() {
+                            @Override
+                            public boolean hasNext() {
+                                return iterator.hasNext();
+                            }
+
+                            @Override
+                            public Object next() {
+                                return iterator.next().getValue();
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return entries.size();
+                    }
+                };
+                values = view;
+            }
+            return view;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Set<Entry<String, Object>> view = entrySet;
+            if (view == null) {
+                view = new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, Object>> iterator() {
+                        Iterator<SnapshotEntry> iterator = entries.values().iterator();
+                        return new Iterator<>() {
+                            @Override
+                            public boolean hasNext() {
+                                return iterator.hasNext();
+                            }
+
+                            @Override
+                            public Entry<String, Object> next() {
+                                return iterator.next();
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return entries.size();
+                    }
+                };
+                entrySet = view;
+            }
+            return view;
+        }
+    }
+
+}
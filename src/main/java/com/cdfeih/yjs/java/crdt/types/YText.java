@@ -1,104 +1,190 @@
 package com.cdfeih.yjs.java.crdt.types;
 
-import com.cdfeih.yjs.java.crdt.BaseCRDT;
 import com.cdfeih.yjs.java.crdt.CRDT;
+import com.cdfeih.yjs.java.crdt.DeleteSet;
+import com.cdfeih.yjs.java.crdt.delta.Delta;
+import com.cdfeih.yjs.java.crdt.delta.DeltaOp;
+import com.cdfeih.yjs.java.crdt.delta.TextDiff;
+import com.cdfeih.yjs.java.crdt.event.YTextEvent;
 import com.cdfeih.yjs.java.crdt.operation.CRDTOperation;
-import lombok.Getter;
-import lombok.Setter;
-
-import java.util.Comparator;
-import java.util.HashMap;
+import com.cdfeih.yjs.java.crdt.struct.AbstractSequence;
+import com.cdfeih.yjs.java.crdt.struct.Content;
+import com.cdfeih.yjs.java.crdt.struct.Item;
+import com.cdfeih.yjs.java.crdt.struct.StringContent;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
 
 /**
  * YText是一个分布式文本CRDT实现，支持字符级别的协作编辑
+ * <p>
+ * 文本存储在{@link AbstractSequence}的条目序列中：一次插入的连续文本作为一个文本块（{@link StringContent}），
+ * 只有编辑或删除落在块内部时才会拆分，合并、编码和垃圾回收都与其他序列类型共用同一套YATA实现，
+ * 删除按客户端记录为ID范围（{@link DeleteSet}）。本类只在其上提供文本的读写接口、渲染缓存和变更历史：
+ * 每次修改（包括合并）都会根据变化的文本块生成一个{@link Delta}，通过{@link #getDelta(long)}可以
+ * 获取自某个版本以来的变更，而无需传输整个文本。
  */
-@Getter
-@Setter
-public class YText extends BaseCRDT {
-
-    // 内部字符存储，使用链表结构以支持高效的插入和删除操作
-    private Node head;
-    private Node tail;
-    private int length;
-    private final ReadWriteLock lock;
-    private final Map<String, Node> nodes;
+public class YText extends AbstractSequence<String> {
+
+    // 本地连续续写时单个文本块允许增长到的最大长度，超过后另起新块，避免续写时复制过长的字符串
+    private static final int MAX_EXTEND_LENGTH = 1024;
+    // 批量插入时单个文本块的最大长度，大段粘贴被切分为若干个时钟连续的文本块，使之后的拆分只需复制一个块
+    private static final int MAX_CHUNK_LENGTH = 8192;
+    // 保留的变更历史的最大版本数
+    private static final int MAX_DELTA_HISTORY = 1024;
+
+    // 最近一次渲染出的文本及其对应的版本号，内容未变化时直接复用
+    private volatile Rendering rendering;
+    // 变更历史（起始版本 -> 变更），以及本次修改中尚未提交的变更和最近一次提交的版本号
+    private final NavigableMap<Long, DeltaEntry> deltaHistory;
+    private Delta pendingDelta;
+    private long committedVersion;
+    // 正在通知观察者的变更，只在提交版本时设置
+    private Delta eventDelta;
+
+    // 渲染缓存，版本号与字符串一起发布，读线程看到的二者总是一致的
+    private static final class Rendering {
+        final long version;
+        final String text;
+
+        Rendering(long version, String text) {
+            this.version = version;
+            this.text = text;
+        }
+    }
 
-    // 用于表示文本节点的内部类
-    private static class Node {
-        char value;
-        String id;
-        long timestamp;
-        Node prev;
-        Node next;
+    // 一次修改产生的变更，从键所表示的版本变为toVersion；没有可见变化时delta为null
+    private static final class DeltaEntry {
+        final long toVersion;
+        final Delta delta;
 
-        Node(char value, String id, long timestamp) {
-            this.value = value;
-            this.id = id;
-            this.timestamp = timestamp;
+        DeltaEntry(long toVersion, Delta delta) {
+            this.toVersion = toVersion;
+            this.delta = delta;
         }
     }
 
     public YText() {
         super();
-        // 创建哨兵头节点和尾节点
-        this.head = new Node('\0', "HEAD", 0);
-        this.tail = new Node('\0', "TAIL", 0);
-        this.head.next = this.tail;
-        this.tail.prev = this.head;
-        this.length = 0;
-        this.lock = new ReentrantReadWriteLock();
-        this.nodes = new ConcurrentHashMap<>();
+        this.deltaHistory = new TreeMap<>();
+        this.committedVersion = getVersion();
     }
 
     /**
      * 追加文本到末尾
+     * <p>
+     * 整段文本只分配一次时钟范围、递增一次版本号，并按{@link #MAX_CHUNK_LENGTH}切分为少量文本块
      *
      * @param text 要追加的文本
      * @return 追加后的文本长度
      */
-    public int append(String text) {
-        if (text == null || text.isEmpty()) {
-            return length;
+    public int append(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return length();
         }
+        return appendChunks(toChunks(text), text.length());
+    }
 
-        lock.writeLock().lock();
-        try {
-            for (int i = 0; i < text.length(); i++) {
-                insertAtEnd(text.charAt(i));
-            }
-            incrementVersion();
-            return length;
-        } finally {
-            lock.writeLock().unlock();
+    /**
+     * 追加字符数组到末尾
+     *
+     * @param text 要追加的字符
+     * @return 追加后的文本长度
+     */
+    public int append(char[] text) {
+        return append(text == null ? null : CharBuffer.wrap(text));
+    }
+
+    /**
+     * 读取全部字符并追加到末尾，读取在加锁之前完成
+     *
+     * @param reader 文本来源
+     * @return 追加后的文本长度
+     * @throws IOException 读取失败时抛出
+     */
+    public int append(Reader reader) throws IOException {
+        if (reader == null) {
+            return length();
         }
+        List<String> chunks = readChunks(reader);
+        return appendChunks(chunks, totalLength(chunks));
     }
 
     /**
      * 在指定位置插入文本
+     * <p>
+     * 整段文本只分配一次时钟范围、递增一次版本号，并按{@link #MAX_CHUNK_LENGTH}切分为少量文本块
      *
      * @param index 插入位置
      * @param text  要插入的文本
      */
-    public void insert(int index, String text) {
-        if (text == null || text.isEmpty()) {
+    public void insert(int index, CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return;
+        }
+        insertChunks(index, toChunks(text));
+    }
+
+    /**
+     * 在指定位置插入字符数组
+     *
+     * @param index 插入位置
+     * @param text  要插入的字符
+     */
+    public void insert(int index, char[] text) {
+        insert(index, text == null ? null : CharBuffer.wrap(text));
+    }
+
+    /**
+     * 读取全部字符并插入到指定位置，读取在加锁之前完成
+     *
+     * @param index  插入位置
+     * @param reader 文本来源
+     * @throws IOException 读取失败时抛出
+     */
+    public void insert(int index, Reader reader) throws IOException {
+        if (reader == null) {
             return;
         }
 
+        int length = length();
         if (index < 0 || index > length) {
             throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
         }
+        List<String> chunks = readChunks(reader);
+        if (!chunks.isEmpty()) {
+            insertChunks(index, chunks);
+        }
+    }
+
+    private int appendChunks(List<String> chunks, int total) {
+        if (total == 0) {
+            return length();
+        }
 
         lock.writeLock().lock();
         try {
-            Node current = getNodeAt(index);
-            for (int i = 0; i < text.length(); i++) {
-                Node newNode = new Node(text.charAt(i), generateId(), System.currentTimeMillis());
-                insertBefore(current, newNode);
-            }
+            insertText(sequenceLength(), chunks);
+            incrementVersion();
+            return sequenceLength();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insertChunks(int index, List<String> chunks) {
+        lock.writeLock().lock();
+        try {
+            insertText(index, chunks);
             incrementVersion();
         } finally {
             lock.writeLock().unlock();
@@ -117,8 +203,8 @@ public class YText extends BaseCRDT {
             return false;
         }
         YText otherText = (YText) other;
-        return otherText.getVersion() > this.version ||
-                (otherText.getVersion() == this.version && otherText.getTimestamp() > this.timestamp);
+        return otherText.getVersion() > getVersion() ||
+                (otherText.getVersion() == getVersion() && otherText.getTimestamp() > this.timestamp);
     }
 
     /**
@@ -129,24 +215,80 @@ public class YText extends BaseCRDT {
      * @return 删除的文本
      */
     public String delete(int start, int end) {
-        if (start < 0 || end > length || start >= end) {
-            throw new IndexOutOfBoundsException("Invalid range: [" + start + ", " + end + ")");
+        lock.writeLock().lock();
+        try {
+            if (start < 0 || end > sequenceLength() || start >= end) {
+                throw new IndexOutOfBoundsException("Invalid range: [" + start + ", " + end + ")");
+            }
+            StringBuilder deletedText = new StringBuilder(end - start);
+            deleteRange(start, end, deletedText::append);
+            incrementVersion();
+            return deletedText.toString();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把文本替换为新内容
+     * <p>
+     * 用Myers差分算法计算当前内容与新内容之间的最短编辑脚本，只插入和删除发生变化的部分，
+     * 未变化的文本块及其ID保持不变，其他副本只需合并这些少量修改
+     *
+     * @param text 新的完整文本
+     * @return 实际应用的变更
+     */
+    public Delta setText(String text) {
+        if (text == null) {
+            text = "";
+        }
+
+        lock.writeLock().lock();
+        try {
+            Delta diff = TextDiff.diff(toString(), text);
+            applyDiff(diff);
+            return diff;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把一组Quill风格的变更作为一次修改应用到文本上，只递增一次版本号
+     *
+     * @param diff 作用在当前文本上的变更
+     */
+    public void applyDiff(Delta diff) {
+        if (diff == null || diff.isEmpty()) {
+            return;
         }
 
         lock.writeLock().lock();
         try {
-            StringBuilder deletedText = new StringBuilder();
-            Node startNode = getNodeAt(start);
-
-            for (int i = start; i < end; i++) {
-                deletedText.append(startNode.value);
-                Node next = startNode.next;
-                removeNode(startNode);
-                startNode = next;
+            int covered = 0;
+            for (DeltaOp op : diff.getOps()) {
+                if (!op.isInsert()) {
+                    covered += op.length();
+                }
+            }
+            if (covered > sequenceLength()) {
+                throw new IndexOutOfBoundsException("Delta covers " + covered + " characters, Length: "
+                        + sequenceLength());
             }
 
+            int index = 0;
+            for (DeltaOp op : diff.getOps()) {
+                if (op.isRetain()) {
+                    index += op.getRetain();
+                } else if (op.isDelete()) {
+                    deleteRange(index, index + op.getDelete(), null);
+                } else {
+                    String text = op.getInsert();
+                    insertText(index, toChunks(text));
+                    index += text.length();
+                }
+            }
             incrementVersion();
-            return deletedText.toString();
         } finally {
             lock.writeLock().unlock();
         }
@@ -154,8 +296,96 @@ public class YText extends BaseCRDT {
 
     @Override
     protected void incrementVersion() {
-        this.version++;
+        // 批量修改期间版本号不变，缓存的渲染结果需要在每次修改时失效
+        this.rendering = null;
+        super.incrementVersion();
+    }
+
+    /**
+     * 递增版本号，并把上一个版本以来累积的变更记为一个历史版本；批量修改中的多次修改合并为一个变更
+     */
+    @Override
+    protected void commitVersion(Object origin) {
+        long current = version.incrementAndGet();
         this.timestamp = System.currentTimeMillis();
+        this.rendering = null;
+
+        Delta change = pendingDelta;
+        deltaHistory.put(committedVersion, new DeltaEntry(current, change));
+        if (deltaHistory.size() > MAX_DELTA_HISTORY) {
+            deltaHistory.pollFirstEntry();
+        }
+        committedVersion = current;
+        pendingDelta = null;
+        eventDelta = change;
+        fireEvent(origin);
+        eventDelta = null;
+    }
+
+    @Override
+    protected YTextEvent createEvent(Object origin) {
+        if (!isObserved()) {
+            return null;
+        }
+        return new YTextEvent(this, List.of(), origin, eventDelta != null ? eventDelta : new Delta());
+    }
+
+    @Override
+    protected void onInsert(int index, Content content) {
+        recordChange(new Delta().retain(index).insert(content.toString()));
+    }
+
+    @Override
+    protected void onDelete(int index, int length) {
+        recordChange(new Delta().retain(index).delete(length));
+    }
+
+    @Override
+    protected int maxExtendLength() {
+        return MAX_EXTEND_LENGTH;
+    }
+
+    /**
+     * 获取自指定版本以来的变更
+     *
+     * @param sinceVersion 起始版本
+     * @return 从起始版本到当前版本的变更；起始版本的历史已被丢弃或不存在时返回null，调用方应改为获取完整状态
+     */
+    public Delta getDelta(long sinceVersion) {
+        lock.readLock().lock();
+        try {
+            return getDelta(sinceVersion, getVersion());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取两个版本之间的变更
+     *
+     * @param fromVersion 起始版本
+     * @param toVersion   结束版本
+     * @return 从起始版本到结束版本的变更；任一版本不在保留的历史中时返回null
+     */
+    public Delta getDelta(long fromVersion, long toVersion) {
+        lock.readLock().lock();
+        try {
+            Delta result = new Delta();
+            long current = fromVersion;
+            while (current != toVersion) {
+                DeltaEntry entry = deltaHistory.get(current);
+                if (entry == null || entry.toVersion > toVersion) {
+                    return null;
+                }
+                if (entry.delta != null) {
+                    result = result.compose(entry.delta);
+                }
+                current = entry.toVersion;
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -166,7 +396,7 @@ public class YText extends BaseCRDT {
     public int length() {
         lock.readLock().lock();
         try {
-            return length;
+            return sequenceLength();
         } finally {
             lock.readLock().unlock();
         }
@@ -178,16 +408,13 @@ public class YText extends BaseCRDT {
      * @return 是否为空
      */
     public boolean isEmpty() {
-        lock.readLock().lock();
-        try {
-            return length == 0;
-        } finally {
-            lock.readLock().unlock();
-        }
+        return length() == 0;
     }
 
     /**
      * 转换为字符串
+     * <p>
+     * 渲染结果按版本号缓存，文本未修改时重复调用不会再遍历文本块
      *
      * @return 文本内容
      */
@@ -195,13 +422,30 @@ public class YText extends BaseCRDT {
     public String toString() {
         lock.readLock().lock();
         try {
-            StringBuilder sb = new StringBuilder(length);
-            Node current = head.next;
-            while (current != tail) {
-                sb.append(current.value);
-                current = current.next;
+            Rendering current = rendering;
+            if (current == null || current.version != getVersion()) {
+                current = new Rendering(getVersion(), render());
+                rendering = current;
             }
-            return sb.toString();
+            return current.text;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取当前文本的只读视图
+     * <p>
+     * 视图不复制字符，{@link CharSequence#charAt(int)}在读锁下直接定位到文本块，复杂度为O(log n)；
+     * {@link CharSequence#subSequence(int, int)}返回同一文本上更小范围的视图。
+     * 文本被修改后再读取视图会抛出{@link ConcurrentModificationException}，因此读到的字符总是来自同一个版本。
+     *
+     * @return 文本内容的只读视图
+     */
+    public CharSequence asCharSequence() {
+        lock.readLock().lock();
+        try {
+            return new TextView(0, sequenceLength(), modificationCount());
         } finally {
             lock.readLock().unlock();
         }
@@ -209,14 +453,13 @@ public class YText extends BaseCRDT {
 
     /**
      * 清除所有文本内容
+     * <p>
+     * 所有文本块都被标记为删除，以免后续合并时被其他副本重新带回
      */
     public void clear() {
         lock.writeLock().lock();
         try {
-            head.next = tail;
-            tail.prev = head;
-            nodes.clear();
-            length = 0;
+            deleteRange(0, sequenceLength(), null);
             incrementVersion();
         } finally {
             lock.writeLock().unlock();
@@ -229,56 +472,7 @@ public class YText extends BaseCRDT {
             return;
         }
 
-        YText otherText = (YText) other;
-        lock.writeLock().lock();
-        try {
-            // 收集所有节点，使用ID作为键以避免重复
-            Map<String, Node> allNodes = new HashMap<>();
-            
-            // 添加本地节点
-            Node current = this.head.next;
-            while (current != this.tail) {
-                allNodes.put(current.id, current);
-                current = current.next;
-            }
-            
-            // 添加远程节点
-            current = otherText.head.next;
-            while (current != otherText.tail) {
-                // 如果本地已存在该节点ID，比较时间戳
-                if (allNodes.containsKey(current.id)) {
-                    Node existingNode = allNodes.get(current.id);
-                    // 保留时间戳较新的节点
-                    if (current.timestamp > existingNode.timestamp) {
-                        allNodes.put(current.id, current);
-                    }
-                } else {
-                    // 新节点直接添加
-                    allNodes.put(current.id, current);
-                }
-                current = current.next;
-            }
-            
-            // 重建文本链表
-            this.head.next = this.tail;
-            this.tail.prev = this.head;
-            this.nodes.clear();
-            this.length = 0;
-            
-            // 按时间戳排序节点
-            allNodes.values().stream()
-                .sorted(Comparator.comparingLong(n -> n.timestamp))
-                .forEach(node -> {
-                    Node newNode = new Node(node.value, node.id, node.timestamp);
-                    insertBefore(this.tail, newNode);
-                });
-            
-            this.version = Math.max(this.version, otherText.getVersion());
-            this.timestamp = Math.max(this.timestamp, otherText.getTimestamp());
-            incrementVersion();
-        } finally {
-            lock.writeLock().unlock();
-        }
+        mergeSequence((YText) other);
     }
 
     @Override
@@ -311,14 +505,21 @@ public class YText extends BaseCRDT {
                     Integer end = (Integer) data.get("end");
                     if (start != null && end != null) {
                         // 确保删除范围有效
-                        if (start >= 0 && end <= length && start < end) {
+                        if (start >= 0 && end <= length() && start < end) {
                             delete(start, end);
                         }
                     }
                 }
                 break;
             case UPDATE:
-                // 对于文本，UPDATE操作通常被分解为DELETE和INSERT
+                // 对于文本，UPDATE操作通常被分解为DELETE和INSERT；携带完整新文本时按最小差异更新
+                if (op.getData() instanceof Map) {
+                    Map<String, Object> data = (Map<String, Object>) op.getData();
+                    Object text = data.get("text");
+                    if (text instanceof String) {
+                        setText((String) text);
+                    }
+                }
                 break;
             case CLEAR:
                 clear();
@@ -328,53 +529,140 @@ public class YText extends BaseCRDT {
         }
     }
 
-    // 私有辅助方法
-    private Node getNodeAt(int index) {
-        if (index < 0 || index > length) {
-            throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+    /**
+     * 文本中一段范围的只读视图，按位置读取字符时在文本块上定位
+     */
+    private class TextView implements CharSequence {
+        private final int from;
+        private final int to;
+        private final long expectedModifications;
+
+        TextView(int from, int to, long expectedModifications) {
+            this.from = from;
+            this.to = to;
+            this.expectedModifications = expectedModifications;
+        }
+
+        @Override
+        public int length() {
+            return to - from;
         }
 
-        Node current;
-        if (index < length / 2) {
-            // 从头部开始查找
-            current = head.next;
-            for (int i = 0; i < index; i++) {
-                current = current.next;
+        @Override
+        public char charAt(int index) {
+            Objects.checkIndex(index, length());
+            lock.readLock().lock();
+            try {
+                checkForComodification();
+                Item item = itemAt(from + index);
+                return ((StringContent) item.getContent()).charAt(from + index - startOf(item));
+            } finally {
+                lock.readLock().unlock();
             }
-        } else {
-            // 从尾部开始查找
-            current = tail;
-            for (int i = length; i > index; i--) {
-                current = current.prev;
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            Objects.checkFromToIndex(start, end, length());
+            return new TextView(from + start, from + end, expectedModifications);
+        }
+
+        /**
+         * 从渲染缓存中截取，文本未修改时不再遍历文本块
+         */
+        @Override
+        public String toString() {
+            lock.readLock().lock();
+            try {
+                checkForComodification();
+                return YText.this.toString().substring(from, to);
+            } finally {
+                lock.readLock().unlock();
             }
         }
 
-        return current;
+        private void checkForComodification() {
+            if (modificationCount() != expectedModifications) {
+                throw new ConcurrentModificationException();
+            }
+        }
     }
 
-    private void insertAtEnd(char value) {
-        Node newNode = new Node(value, generateId(), System.currentTimeMillis());
-        insertBefore(tail, newNode);
+    // 私有辅助方法
+
+    /**
+     * 按顺序拼接所有未删除的文本块
+     */
+    private String render() {
+        StringBuilder sb = new StringBuilder(sequenceLength());
+        forEachContent(sb::append);
+        return sb.toString();
+    }
+
+    /**
+     * 在指定位置插入一段本地文本，调用方已持有写锁
+     * <p>
+     * 各文本块依次使用连续的时钟，后一块的origin是前一块的最后一个字符，与单个文本块拆分后的结构一致
+     *
+     * @param index  插入位置
+     * @param chunks 按顺序切分好的文本
+     */
+    private void insertText(int index, List<String> chunks) {
+        for (String chunk : chunks) {
+            insertContent(index, new StringContent(chunk));
+            index += chunk.length();
+        }
     }
 
-    private void insertBefore(Node target, Node newNode) {
-        newNode.prev = target.prev;
-        newNode.next = target;
-        target.prev.next = newNode;
-        target.prev = newNode;
-        nodes.put(newNode.id, newNode);
-        length++;
+    /**
+     * 把一次文本块级别的变化组合到本次修改的变更中，位置以变化发生时的文本为准
+     */
+    private void recordChange(Delta change) {
+        pendingDelta = pendingDelta == null ? change : pendingDelta.compose(change);
     }
 
-    private void removeNode(Node node) {
-        if (node == head || node == tail) {
-            return;
+    /**
+     * 把文本切分为不超过{@link #MAX_CHUNK_LENGTH}的片段，不超过上限的字符串直接复用
+     */
+    private static List<String> toChunks(CharSequence text) {
+        int total = text.length();
+        if (total <= MAX_CHUNK_LENGTH) {
+            return Collections.singletonList(text.toString());
+        }
+        List<String> chunks = new ArrayList<>(total / MAX_CHUNK_LENGTH + 1);
+        for (int start = 0; start < total; start += MAX_CHUNK_LENGTH) {
+            chunks.add(text.subSequence(start, Math.min(total, start + MAX_CHUNK_LENGTH)).toString());
         }
+        return chunks;
+    }
 
-        node.prev.next = node.next;
-        node.next.prev = node.prev;
-        nodes.remove(node.id);
-        length--;
+    /**
+     * 从Reader中读取全部字符，直接按{@link #MAX_CHUNK_LENGTH}切分
+     */
+    private static List<String> readChunks(Reader reader) throws IOException {
+        List<String> chunks = new ArrayList<>();
+        char[] buffer = new char[MAX_CHUNK_LENGTH];
+        int filled = 0;
+        int read;
+        while ((read = reader.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+            if (filled == buffer.length) {
+                chunks.add(new String(buffer));
+                filled = 0;
+            }
+        }
+        if (filled > 0) {
+            chunks.add(new String(buffer, 0, filled));
+        }
+        return chunks;
+    }
+
+    private static int totalLength(List<String> chunks) {
+        int total = 0;
+        for (String chunk : chunks) {
+            total += chunk.length();
+        }
+        return total;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,262 @@
+package com.cdfeih.yjs.java.crdt.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带计数的顺序统计树（隐式键的Treap），用于按位置定位序列中的元素
+ * <p>
+ * 树中节点的中序遍历顺序即为序列顺序，每个节点带有一个权重（例如文本块中可见字符的数量），
+ * 并维护子树权重之和。按位置查找、求节点位置、插入、删除和修改权重的期望复杂度均为O(log n)。
+ * 节点本身由调用方创建并继承 {@link Node}，树不额外分配包装对象。
+ * <p>
+ * 该类不是线程安全的，调用方需要自行加锁。
+ *
+ * @param <N> 节点类型
+ */
+public class CountedTree<N extends CountedTree.Node<N>> {
+
+    private N root;
+
+    /**
+     * 树节点的基础类，由序列中的元素直接继承
+     *
+     * @param <N> 节点类型
+     */
+    public abstract static class Node<N extends Node<N>> {
+        // 以下字段只由树本身维护，通过类型变量访问，因此使用包级访问权限
+        N left;
+        N right;
+        N parent;
+        final int priority;
+        int weight;
+        int sum;
+
+        protected Node() {
+            this.priority = ThreadLocalRandom.current().nextInt();
+        }
+
+        /**
+         * 获取节点自身的权重
+         *
+         * @return 权重
+         */
+        public int getWeight() {
+            return weight;
+        }
+    }
+
+    /**
+     * 获取所有节点的权重之和
+     *
+     * @return 权重之和
+     */
+    public int size() {
+        return sum(root);
+    }
+
+    /**
+     * 检查树是否为空
+     *
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * 清空整棵树
+     */
+    public void clear() {
+        root = null;
+    }
+
+    /**
+     * 在指定节点之后插入新节点
+     *
+     * @param anchor 插入位置左侧的节点，为null时插入到最前面
+     * @param node   新节点
+     * @param weight 新节点的权重
+     */
+    public void insertAfter(N anchor, N node, int weight) {
+        node.left = null;
+        node.right = null;
+        node.weight = weight;
+        node.sum = weight;
+
+        if (root == null) {
+            node.parent = null;
+            root = node;
+            return;
+        }
+
+        // 找到中序后继位置上的空子节点
+        N parent;
+        boolean asLeft;
+        if (anchor == null) {
+            parent = leftmost(root);
+            asLeft = true;
+        } else if (anchor.right == null) {
+            parent = anchor;
+            asLeft = false;
+        } else {
+            parent = leftmost(anchor.right);
+            asLeft = true;
+        }
+
+        node.parent = parent;
+        if (asLeft) {
+            parent.left = node;
+        } else {
+            parent.right = node;
+        }
+        for (N current = parent; current != null; current = current.parent) {
+            current.sum += weight;
+        }
+
+        // 按优先级向上旋转以维持堆性质
+        while (node.parent != null && node.priority > node.parent.priority) {
+            rotateUp(node);
+        }
+    }
+
+    /**
+     * 从树中移除节点
+     *
+     * @param node 要移除的节点
+     */
+    public void remove(N node) {
+        // 先把节点旋转到至多只有一个子节点的位置
+        while (node.left != null && node.right != null) {
+            rotateUp(node.left.priority > node.right.priority ? node.left : node.right);
+        }
+
+        N child = node.left != null ? node.left : node.right;
+        N parent = node.parent;
+        if (child != null) {
+            child.parent = parent;
+        }
+        if (parent == null) {
+            root = child;
+        } else {
+            if (parent.left == node) {
+                parent.left = child;
+            } else {
+                parent.right = child;
+            }
+            for (N current = parent; current != null; current = current.parent) {
+                current.sum -= node.weight;
+            }
+        }
+
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+    }
+
+    /**
+     * 修改节点的权重
+     *
+     * @param node   节点
+     * @param weight 新权重
+     */
+    public void setWeight(N node, int weight) {
+        int delta = weight - node.weight;
+        if (delta == 0) {
+            return;
+        }
+        node.weight = weight;
+        for (N current = node; current != null; current = current.parent) {
+            current.sum += delta;
+        }
+    }
+
+    /**
+     * 查找覆盖指定位置的节点
+     *
+     * @param index 位置，取值范围 [0, size())
+     * @return 覆盖该位置的节点
+     */
+    public N find(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+
+        N current = root;
+        while (true) {
+            int leftSum = sum(current.left);
+            if (index < leftSum) {
+                current = current.left;
+            } else {
+                index -= leftSum;
+                if (index < current.weight) {
+                    return current;
+                }
+                index -= current.weight;
+                current = current.right;
+            }
+        }
+    }
+
+    /**
+     * 计算节点之前所有节点的权重之和，即节点在序列中的起始位置
+     *
+     * @param node 节点
+     * @return 起始位置
+     */
+    public int indexOf(N node) {
+        int index = sum(node.left);
+        N current = node;
+        while (current.parent != null) {
+            N parent = current.parent;
+            if (parent.right == current) {
+                index += sum(parent.left) + parent.weight;
+            }
+            current = parent;
+        }
+        return index;
+    }
+
+    private void rotateUp(N node) {
+        N parent = node.parent;
+        N grandParent = parent.parent;
+
+        if (parent.left == node) {
+            parent.left = node.right;
+            if (node.right != null) {
+                node.right.parent = parent;
+            }
+            node.right = parent;
+        } else {
+            parent.right = node.left;
+            if (node.left != null) {
+                node.left.parent = parent;
+            }
+            node.left = parent;
+        }
+        parent.parent = node;
+        node.parent = grandParent;
+
+        if (grandParent == null) {
+            root = node;
+        } else if (grandParent.left == parent) {
+            grandParent.left = node;
+        } else {
+            grandParent.right = node;
+        }
+
+        parent.sum = sum(parent.left) + parent.weight + sum(parent.right);
+        node.sum = sum(node.left) + node.weight + sum(node.right);
+    }
+
+    private N leftmost(N node) {
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private static int sum(Node<?> node) {
+        return node == null ? 0 : node.sum;
+    }
+
+}
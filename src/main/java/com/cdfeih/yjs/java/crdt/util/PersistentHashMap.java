@@ -0,0 +1,507 @@
+package com.cdfeih.yjs.java.crdt.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 持久化（不可变）哈希映射，基于哈希数组映射前缀树（HAMT）
+ * <p>
+ * 每层按哈希值的5位分支，节点用位图记录存在的分支，只为存在的分支分配数组槽位。
+ * {@link #plus}和{@link #minus}只复制从根到目标叶子的路径（O(log32 n)），其余节点在新旧版本之间共享，
+ * 因此任意旧版本都可以作为快照继续安全地读取，读取不需要加锁。
+ * <p>
+ * 叶子节点本身实现{@link Map.Entry}，遍历时不额外分配对象。键不能为null。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    // 32位哈希最多7层位图节点，外加一层哈希冲突节点
+    private static final int MAX_DEPTH = 8;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+    private Set<Entry<K, V>> entrySet;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * 获取空映射
+     *
+     * @return 空映射
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * 返回添加或替换一个键值对后的新映射，当前映射不变
+     *
+     * @param key   键
+     * @param value 值
+     * @return 新映射；值未变化时返回当前映射
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        Leaf leaf = new Leaf(hash(key), key, value);
+        boolean[] added = new boolean[1];
+        Node newRoot = (root == null ? BitmapNode.EMPTY : root).assoc(0, leaf, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * 返回移除一个键后的新映射，当前映射不变
+     *
+     * @param key 键
+     * @return 新映射；键不存在时返回当前映射
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        Node newRoot = root.without(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf leaf = find(key);
+        return leaf != null ? (V) leaf.value : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        // 映射不可变，并发下重复创建视图也没有影响
+        Set<Entry<K, V>> view = entrySet;
+        if (view == null) {
+            view = new EntrySet();
+            entrySet = view;
+        }
+        return view;
+    }
+
+    private Leaf find(Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        return root.find(0, hash(key), key);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator<>(root);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Leaf leaf = find(entry.getKey());
+            return leaf != null && Objects.equals(leaf.value, entry.getValue());
+        }
+    }
+
+    /**
+     * 按前缀树的深度优先顺序遍历叶子
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+        private final Object[][] slots = new Object[MAX_DEPTH][];
+        private final int[] positions = new int[MAX_DEPTH];
+        private int depth;
+        private Leaf next;
+
+        EntryIterator(Node root) {
+            if (root == null) {
+                depth = -1;
+            } else {
+                slots[0] = root.slots();
+                advance();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf leaf = next;
+            advance();
+            return (Entry<K, V>) leaf;
+        }
+
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                if (positions[depth] == slots[depth].length) {
+                    depth--;
+                    continue;
+                }
+                Object slot = slots[depth][positions[depth]++];
+                if (slot instanceof Leaf) {
+                    next = (Leaf) slot;
+                    return;
+                }
+                depth++;
+                slots[depth] = ((Node) slot).slots();
+                positions[depth] = 0;
+            }
+        }
+    }
+
+    /**
+     * 叶子节点，即一个键值对
+     */
+    private static final class Leaf implements Map.Entry<Object, Object> {
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return key.equals(entry.getKey()) && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private abstract static class Node {
+
+        abstract Leaf find(int shift, int hash, Object key);
+
+        /**
+         * 添加或替换叶子
+         *
+         * @param added 新增了键时置为true
+         * @return 新节点，没有变化时返回当前节点
+         */
+        abstract Node assoc(int shift, Leaf leaf, boolean[] added);
+
+        /**
+         * 移除键
+         *
+         * @return 新节点，键不存在时返回当前节点，节点变空时返回null
+         */
+        abstract Node without(int shift, int hash, Object key);
+
+        /**
+         * 节点只剩一个叶子时返回该叶子，用于把它提升到上一层
+         */
+        abstract Leaf singleLeaf();
+
+        /**
+         * 获取节点的槽位，每个槽位是叶子或子节点，只读
+         */
+        abstract Object[] slots();
+    }
+
+    /**
+     * 以位图标记存在分支的节点，槽位按分支序号紧凑排列
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        Leaf find(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[index(bit)];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.key.equals(key) ? leaf : null;
+            }
+            return ((Node) slot).find(shift + BITS, hash, key);
+        }
+
+        @Override
+        Node assoc(int shift, Leaf leaf, boolean[] added) {
+            int bit = bit(leaf.hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = leaf;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Leaf) {
+                Leaf existing = (Leaf) slot;
+                if (existing.key.equals(leaf.key)) {
+                    if (existing.value == leaf.value) {
+                        return this;
+                    }
+                    newSlot = leaf;
+                } else {
+                    added[0] = true;
+                    newSlot = merge(shift + BITS, existing, leaf);
+                }
+            } else {
+                Node child = (Node) slot;
+                newSlot = child.assoc(shift + BITS, leaf, added);
+                if (newSlot == child) {
+                    return this;
+                }
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object slot = slots[index];
+            if (slot instanceof Leaf) {
+                if (!((Leaf) slot).key.equals(key)) {
+                    return this;
+                }
+                return removeSlot(bit, index);
+            }
+
+            Node child = (Node) slot;
+            Node newChild = child.without(shift + BITS, hash, key);
+            if (newChild == child) {
+                return this;
+            }
+            if (newChild == null) {
+                return removeSlot(bit, index);
+            }
+            Object[] newSlots = slots.clone();
+            Leaf single = newChild.singleLeaf();
+            newSlots[index] = single != null ? single : newChild;
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        @Override
+        Leaf singleLeaf() {
+            return slots.length == 1 && slots[0] instanceof Leaf ? (Leaf) slots[0] : null;
+        }
+
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+
+        private Node removeSlot(int bit, int index) {
+            if (slots.length == 1) {
+                return null;
+            }
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+            return new BitmapNode(bitmap & ~bit, newSlots);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        /**
+         * 为落在同一槽位的两个不同的键创建子节点
+         */
+        private static Node merge(int shift, Leaf a, Leaf b) {
+            if (a.hash == b.hash) {
+                return new CollisionNode(a.hash, new Leaf[]{a, b});
+            }
+            int bitA = bit(a.hash, shift);
+            int bitB = bit(b.hash, shift);
+            if (bitA == bitB) {
+                return new BitmapNode(bitA, new Object[]{merge(shift + BITS, a, b)});
+            }
+            Object[] slots = Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[]{a, b} : new Object[]{b, a};
+            return new BitmapNode(bitA | bitB, slots);
+        }
+    }
+
+    /**
+     * 哈希值完全相同的键的集合，按顺序比较
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Leaf[] leaves;
+
+        CollisionNode(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        @Override
+        Leaf find(int shift, int hash, Object key) {
+            if (hash != this.hash) {
+                return null;
+            }
+            int index = indexOf(key);
+            return index >= 0 ? leaves[index] : null;
+        }
+
+        @Override
+        Node assoc(int shift, Leaf leaf, boolean[] added) {
+            if (leaf.hash != hash) {
+                // 放入一个位图节点中，再与新叶子一起分支
+                return new BitmapNode(BitmapNode.bit(hash, shift), new Object[]{this}).assoc(shift, leaf, added);
+            }
+            int index = indexOf(leaf.key);
+            Leaf[] newLeaves;
+            if (index >= 0) {
+                if (leaves[index].value == leaf.value) {
+                    return this;
+                }
+                newLeaves = leaves.clone();
+                newLeaves[index] = leaf;
+            } else {
+                newLeaves = new Leaf[leaves.length + 1];
+                System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+                newLeaves[leaves.length] = leaf;
+                added[0] = true;
+            }
+            return new CollisionNode(hash, newLeaves);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            if (hash != this.hash) {
+                return this;
+            }
+            int index = indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            if (leaves.length == 1) {
+                return null;
+            }
+            Leaf[] newLeaves = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, index);
+            System.arraycopy(leaves, index + 1, newLeaves, index, leaves.length - index - 1);
+            return new CollisionNode(hash, newLeaves);
+        }
+
+        @Override
+        Leaf singleLeaf() {
+            return leaves.length == 1 ? leaves[0] : null;
+        }
+
+        @Override
+        Object[] slots() {
+            return leaves;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+}
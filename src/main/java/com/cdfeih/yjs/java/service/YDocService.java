@@ -6,6 +6,7 @@ import com.cdfeih.yjs.java.crdt.types.YArray;
 import com.cdfeih.yjs.java.crdt.types.YMap;
 import com.cdfeih.yjs.java.crdt.types.YText;
 import com.cdfeih.yjs.java.ydoc.YDoc;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.Map;
@@ -140,6 +141,39 @@ public class YDocService {
         doc.applyOperation(operation);
     }
 
+    /**
+     * 获取文档编码后的状态向量
+     *
+     * @param docId 文档ID
+     * @return 编码后的状态向量
+     */
+    public byte[] encodeStateVector(String docId) {
+        return requireDocument(docId).encodeStateVector();
+    }
+
+    /**
+     * 编码对方尚未见过的更新
+     *
+     * @param docId       文档ID
+     * @param stateVector 对方编码后的状态向量，为空时编码整个文档
+     * @return 编码后的更新
+     */
+    public byte[] encodeStateAsUpdate(String docId, byte[] stateVector) {
+        return requireDocument(docId).encodeStateAsUpdate(stateVector);
+    }
+
+    /**
+     * 应用另一方编码的更新
+     * <p>
+     * 更新中携带发送方映射的状态向量，应用时登记为已知副本，{@link #collectGarbage()}据此回收所有副本都已见过的墓碑
+     *
+     * @param docId  文档ID
+     * @param update 编码后的更新
+     */
+    public void applyUpdate(String docId, byte[] update) {
+        requireDocument(docId).applyUpdate(update);
+    }
+
     /**
      * 合并两个文档
      *
@@ -179,6 +213,14 @@ public class YDocService {
         return documents.size();
     }
 
+    /**
+     * 定期对所有文档执行垃圾回收，间隔由 yjs.gc.interval 配置（毫秒）
+     */
+    @Scheduled(fixedDelayString = "${yjs.gc.interval:60000}", initialDelayString = "${yjs.gc.interval:60000}")
+    public void collectGarbage() {
+        documents.values().forEach(YDoc::gc);
+    }
+
     /**
      * 保存文档状态（示例实现）
      * 在实际应用中，应该持久化到数据库
@@ -216,4 +258,12 @@ public class YDocService {
         return documents.computeIfAbsent(docId, k -> new YDoc());
     }
 
-}
\ No newline at end of file
+    private YDoc requireDocument(String docId) {
+        YDoc doc = documents.get(docId);
+        if (doc == null) {
+            throw new IllegalArgumentException("Document not found: " + docId);
+        }
+        return doc;
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.cdfeih.yjs.java.ydoc;
+
+import com.cdfeih.yjs.java.crdt.ID;
+import com.cdfeih.yjs.java.crdt.operation.CRDTOperation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 文档中暂时无法应用的操作
+ * <p>
+ * 操作按等待的条件建立索引：目标共享类型尚未注册的按目标名称分组，依赖的操作尚未应用的按依赖的客户端ID和时钟分组。
+ * 条件满足时只取出等待该条件的操作，不需要扫描整个队列。操作可能乱序到达，因此每个客户端记录已应用的时钟范围，
+ * 相邻的范围合并为一个，依赖的时钟落在某个范围内才视为已满足；更晚的时钟先被应用不会提前放行等待更早时钟的操作。
+ * <p>
+ * 队列容量有限，超出时拒绝新的操作并计数。所有方法都在同一个监视器上同步。
+ */
+final class PendingOperations {
+
+    static final int DEFAULT_CAPACITY = 10_000;
+
+    // 目标名称 -> 等待该目标注册的操作，按到达顺序
+    private final Map<String, List<CRDTOperation>> byTarget;
+    // 客户端ID -> 依赖的时钟 -> 等待该依赖的操作
+    private final Map<Integer, NavigableMap<Long, List<CRDTOperation>>> byDependency;
+    // 客户端ID -> 已应用的时钟范围（起始时钟 -> 结束时钟，不包含），范围互不相邻
+    private final Map<Integer, NavigableMap<Long, Long>> appliedRanges;
+    private int capacity;
+    private int size;
+    private int peakSize;
+    private long rejected;
+
+    PendingOperations() {
+        this.byTarget = new HashMap<>();
+        this.byDependency = new HashMap<>();
+        this.appliedRanges = new HashMap<>();
+        this.capacity = DEFAULT_CAPACITY;
+    }
+
+    /**
+     * 目标尚未注册时让操作等待目标
+     *
+     * @param operation  操作
+     * @param registered 在监视器内再次检查目标是否已注册，避免与注册同时发生时错过唤醒
+     * @return 操作是否进入等待；目标已注册时返回false，由调用方直接应用
+     * @throws IllegalStateException 队列已满
+     */
+    synchronized boolean awaitTarget(CRDTOperation operation, BooleanSupplier registered) {
+        if (registered.getAsBoolean()) {
+            return false;
+        }
+        reserve(operation);
+        byTarget.computeIfAbsent(operation.getTargetId(), target -> new ArrayList<>()).add(operation);
+        return true;
+    }
+
+    /**
+     * 依赖尚未应用时让操作等待依赖
+     *
+     * @param operation  操作
+     * @param dependency 操作依赖的另一个操作
+     * @return 操作是否进入等待；依赖已应用时返回false，由调用方直接应用
+     * @throws IllegalStateException 队列已满
+     */
+    synchronized boolean awaitDependency(CRDTOperation operation, ID dependency) {
+        if (isApplied(dependency.getClient(), dependency.getClock())) {
+            return false;
+        }
+        reserve(operation);
+        byDependency.computeIfAbsent(dependency.getClient(), client -> new TreeMap<>())
+                .computeIfAbsent(dependency.getClock(), clock -> new ArrayList<>())
+                .add(operation);
+        return true;
+    }
+
+    /**
+     * 取出等待指定目标的操作
+     *
+     * @param target 刚注册的目标名称
+     * @return 按到达顺序排列的操作
+     */
+    synchronized List<CRDTOperation> takeForTarget(String target) {
+        List<CRDTOperation> waiting = byTarget.remove(target);
+        if (waiting == null) {
+            return Collections.emptyList();
+        }
+        size -= waiting.size();
+        return waiting;
+    }
+
+    /**
+     * 记录操作已应用，并取出因此满足依赖的操作
+     *
+     * @param operation 已应用的操作
+     * @return 依赖该操作的等待操作
+     */
+    synchronized List<CRDTOperation> markApplied(CRDTOperation operation) {
+        return markApplied(operation.getClientId(), operation.getClock(), operation.getClock() + 1);
+    }
+
+    /**
+     * 记录一个客户端 [from, to) 范围内的时钟已应用，并取出因此满足依赖的操作
+     *
+     * @param client 客户端ID
+     * @param from   起始时钟（包含）
+     * @param to     结束时钟（不包含）
+     * @return 依赖的时钟在该范围内的等待操作，按依赖的时钟排列
+     */
+    synchronized List<CRDTOperation> markApplied(int client, long from, long to) {
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        NavigableMap<Long, Long> ranges = appliedRanges.computeIfAbsent(client, c -> new TreeMap<>());
+        long start = from;
+        long end = to;
+        Map.Entry<Long, Long> before = ranges.floorEntry(from);
+        if (before != null && before.getValue() >= from) {
+            start = before.getKey();
+        }
+        // 合并与新范围重叠或相邻的范围
+        Map.Entry<Long, Long> next;
+        while ((next = ranges.ceilingEntry(start)) != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+        }
+        ranges.put(start, end);
+
+        NavigableMap<Long, List<CRDTOperation>> waiting = byDependency.get(client);
+        if (waiting == null) {
+            return Collections.emptyList();
+        }
+        NavigableMap<Long, List<CRDTOperation>> ready = waiting.subMap(from, true, to, false);
+        if (ready.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<CRDTOperation> released = new ArrayList<>();
+        ready.values().forEach(released::addAll);
+        ready.clear();
+        if (waiting.isEmpty()) {
+            byDependency.remove(client);
+        }
+        size -= released.size();
+        return released;
+    }
+
+    synchronized void clear() {
+        byTarget.clear();
+        byDependency.clear();
+        appliedRanges.clear();
+        size = 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized int peakSize() {
+        return peakSize;
+    }
+
+    synchronized long rejected() {
+        return rejected;
+    }
+
+    synchronized int capacity() {
+        return capacity;
+    }
+
+    synchronized void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    private boolean isApplied(int client, long clock) {
+        NavigableMap<Long, Long> ranges = appliedRanges.get(client);
+        if (ranges == null) {
+            return false;
+        }
+        Map.Entry<Long, Long> range = ranges.floorEntry(clock);
+        return range != null && clock < range.getValue();
+    }
+
+    private void reserve(CRDTOperation operation) {
+        if (size >= capacity) {
+            rejected++;
+            throw new IllegalStateException("Too many pending operations, rejected " + operation.getOperationId());
+        }
+        size++;
+        peakSize = Math.max(peakSize, size);
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.cdfeih.yjs.java.ydoc;
+
+import com.cdfeih.yjs.java.crdt.BaseCRDT;
+import com.cdfeih.yjs.java.crdt.CRDT;
+import com.cdfeih.yjs.java.crdt.event.YEvent;
+import com.cdfeih.yjs.java.crdt.operation.CRDTOperation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 文档上的事务，由{@link YDoc#transact(java.util.function.Consumer)}创建
+ * <p>
+ * 事务中首次访问共享类型时获取其写锁并开始批量修改（{@link BaseCRDT#beginBatch()}），之后对该类型及其嵌套类型的修改
+ * 不再逐次递增版本号和通知观察者。提交时每个发生变化的类型只递增一次版本号，文档版本号也只递增一次，
+ * 事务中的全部变化可以通过{@link #encodeUpdate()}编码为一个更新。事务只能在创建它的线程中使用。
+ */
+public class Transaction {
+
+    private final YDoc doc;
+    // 事务开始时文档的状态向量，用于在提交后编码事务中的变化
+    private final Map<String, Map<Integer, Long>> stateVectorBefore;
+    // 事务中访问过、已开始批量修改的共享类型，按访问顺序
+    private final Map<String, BaseCRDT> types;
+    // 共享类型名称 -> {首次访问时的版本号, 提交后的版本号}，都在持有该类型写锁时读取
+    private final Map<String, long[]> versions;
+    // 发生变化的共享类型名称，提交后才完整
+    private final Set<String> changed;
+    // 事务的来源，以及提交时各共享类型产生的事件
+    private final Object origin;
+    private final List<YEvent> events;
+    // 文档本身是否发生变化（注册共享类型、应用操作等）
+    private boolean docChanged;
+    private boolean committed;
+    private byte[] update;
+
+    Transaction(YDoc doc, Map<String, Map<Integer, Long>> stateVectorBefore, Object origin) {
+        this.doc = doc;
+        this.stateVectorBefore = stateVectorBefore;
+        this.types = new LinkedHashMap<>();
+        this.versions = new HashMap<>();
+        this.changed = new LinkedHashSet<>();
+        this.origin = origin;
+        this.events = new ArrayList<>();
+    }
+
+    /**
+     * 获取事务所属的文档
+     *
+     * @return 文档
+     */
+    public YDoc getDoc() {
+        return doc;
+    }
+
+    /**
+     * 获取事务的来源
+     *
+     * @return 来源，未指定时为null
+     */
+    public Object getOrigin() {
+        return origin;
+    }
+
+    /**
+     * 获取共享类型，首次访问时获取其写锁，直到事务提交才释放
+     *
+     * @param name 类型名称
+     * @return CRDT实例，不存在时为null
+     */
+    public CRDT get(String name) {
+        CRDT crdt = doc.getSharedTypes().get(name);
+        if (crdt instanceof BaseCRDT && !committed && !types.containsKey(name)) {
+            BaseCRDT type = (BaseCRDT) crdt;
+            type.beginBatch(origin);
+            types.put(name, type);
+            long version = type.getVersion();
+            versions.put(name, new long[]{version, version});
+        }
+        return crdt;
+    }
+
+    /**
+     * 获取指定种类的共享类型
+     *
+     * @param name 类型名称
+     * @param kind 共享类型的类
+     * @return CRDT实例，不存在时为null
+     * @throws IllegalArgumentException 共享类型不是指定的种类
+     */
+    public <T extends CRDT> T get(String name, Class<T> kind) {
+        CRDT crdt = get(name);
+        if (crdt != null && !kind.isInstance(crdt)) {
+            throw new IllegalArgumentException("Shared type " + name + " is not a " + kind.getSimpleName());
+        }
+        return kind.cast(crdt);
+    }
+
+    /**
+     * 在事务中应用操作
+     *
+     * @param operation 要应用的操作
+     */
+    public void applyOperation(CRDTOperation operation) {
+        doc.applyOperation(operation);
+    }
+
+    /**
+     * 获取发生变化的共享类型名称
+     *
+     * @return 类型名称的只读集合，事务提交后才完整
+     */
+    public Set<String> getChanged() {
+        return Collections.unmodifiableSet(changed);
+    }
+
+    /**
+     * 获取提交时产生的事件，只在文档注册了深度观察者时收集
+     *
+     * @return 事件的只读列表，路径以共享类型的名称开头
+     */
+    public List<YEvent> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+
+    /**
+     * 获取共享类型首次在事务中访问时的版本号
+     *
+     * @param name 类型名称
+     * @return 版本号
+     * @throws IllegalArgumentException 事务中没有访问该类型
+     */
+    public long getStartVersion(String name) {
+        return versionsOf(name)[0];
+    }
+
+    /**
+     * 获取共享类型提交后的版本号
+     * <p>
+     * 与{@link #getStartVersion(String)}都在持有该类型写锁时读取，两者之间的变化都来自本事务，
+     * 可以用来取出本事务的增量而不混入其他线程的修改。事务提交前与开始时的版本号相同
+     *
+     * @param name 类型名称
+     * @return 版本号
+     * @throws IllegalArgumentException 事务中没有访问该类型
+     */
+    public long getCommittedVersion(String name) {
+        return versionsOf(name)[1];
+    }
+
+    /**
+     * 检查事务是否改变了文档
+     *
+     * @return 是否有共享类型发生变化，或文档本身发生变化
+     */
+    public boolean hasChanges() {
+        return docChanged || !changed.isEmpty();
+    }
+
+    /**
+     * 把事务中的变化编码为一个更新，格式与{@link YDoc#encodeStateAsUpdate(byte[])}相同，对方用{@link YDoc#applyUpdate(byte[])}应用
+     * <p>
+     * 只编码发生变化的共享类型中事务开始之后的结构，事务提交后调用；结果会被缓存
+     *
+     * @return 编码后的更新
+     * @throws IllegalStateException 事务尚未提交
+     */
+    public byte[] encodeUpdate() {
+        if (!committed) {
+            throw new IllegalStateException("Transaction is not committed");
+        }
+        if (update == null) {
+            update = doc.encodeStateAsUpdate(stateVectorBefore, changed);
+        }
+        return update;
+    }
+
+    /**
+     * 收集提交时产生的事件
+     *
+     * @param event 路径以共享类型名称开头的事件
+     */
+    void addEvent(YEvent event) {
+        events.add(event);
+    }
+
+    /**
+     * 记录文档本身发生了变化
+     */
+    void markDocChanged() {
+        docChanged = true;
+    }
+
+    /**
+     * 记录在事务中新注册的共享类型
+     *
+     * @param name 类型名称
+     */
+    void markRegistered(String name) {
+        docChanged = true;
+        changed.add(name);
+    }
+
+    /**
+     * 提交事务：结束所有共享类型的批量修改并释放写锁，每个发生变化的类型递增一次版本号
+     */
+    void commit() {
+        committed = true;
+        RuntimeException failure = null;
+        for (Map.Entry<String, BaseCRDT> entry : types.entrySet()) {
+            try {
+                long[] range = versions.get(entry.getKey());
+                if (entry.getValue().endBatch(version -> range[1] = version)) {
+                    changed.add(entry.getKey());
+                }
+            } catch (RuntimeException e) {
+                // 继续释放其余类型的写锁
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private long[] versionsOf(String name) {
+        long[] range = versions.get(name);
+        if (range == null) {
+            throw new IllegalArgumentException("Shared type " + name + " was not accessed in the transaction");
+        }
+        return range;
+    }
+
+}
@@ -1,52 +1,132 @@
 package com.cdfeih.yjs.java.ydoc;
 
+import com.cdfeih.yjs.java.crdt.BaseCRDT;
 import com.cdfeih.yjs.java.crdt.CRDT;
+import com.cdfeih.yjs.java.crdt.ID;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateDecoder;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateEncoder;
+import com.cdfeih.yjs.java.crdt.encoding.ValueCodec;
+import com.cdfeih.yjs.java.crdt.event.YEvent;
 import com.cdfeih.yjs.java.crdt.operation.CRDTOperation;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * YDoc是YJS的核心文档类，负责协调所有CRDT实例
+ * <p>
+ * 除了直接合并另一个文档对象（{@link #merge(YDoc)}）之外，文档之间可以通过二进制更新同步：
+ * 一方发送{@link #encodeStateVector()}，另一方用{@link #encodeStateAsUpdate(byte[])}只编码对方缺少的结构，
+ * 再由对方{@link #applyUpdate(byte[])}。每个共享类型有独立的时钟空间，因此文档的状态向量按共享类型的名称
+ * 分别记录每个客户端已见过的下一个时钟；更新中包含对方缺少的结构以及完整的删除信息，与文档大小无关。
+ * <p>
+ * 跨多个共享类型的一组修改可以放在一个事务中（{@link #transact(Consumer)}），提交时只递增一次版本号，
+ * 并编码为一个更新通知更新观察者，批量编辑因此只需要发送一条消息。
+ * <p>
+ * 文档的深度观察者（{@link #observeDeep(Consumer)}）在每个事务提交后收到一次该事务中全部共享类型的事件，
+ * 事件带有事务的来源，应用远端更新时可以传入来源以便区分本地修改。
  */
 @Getter
 @Setter
 public class YDoc {
 
     private String id;
+    // 本文档副本的客户端ID，注册到文档的共享类型都使用该ID生成结构标识
+    private final int clientId;
     private Map<String, CRDT> sharedTypes;
-    private List<CRDTOperation> pendingOperations;
+    // 暂时无法应用的操作，按缺少的目标和依赖建立索引
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final PendingOperations pendingOperations;
     private Set<String> clients;
-    private long version;
-    private long timestamp;
+    // 文档版本号，注册、应用操作和合并可能在多个线程中同时发生，因此使用原子计数
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicLong version;
+    private volatile long timestamp;
+    // 同一时刻只有一个事务，避免两个事务以不同顺序获取共享类型的写锁而死锁
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ReentrantLock transactionLock;
+    // 当前线程正在进行的事务，只在持有transactionLock时访问
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Transaction transaction;
+    // 更新观察者，每个改变了文档的事务提交后收到一次通知
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final List<BiConsumer<byte[], Transaction>> updateObservers;
+    // 文档的深度观察者，每个事务提交后收到一次事务中的全部事件
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final List<DeepListener> deepObservers;
+    // 已挂上事件收集器的共享类型，有深度观察者之后才挂上
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Set<BaseCRDT> collectedTypes;
 
     public YDoc() {
         this.id = UUID.randomUUID().toString();
+        this.clientId = ID.generateClientId();
         this.sharedTypes = new ConcurrentHashMap<>();
-        this.pendingOperations = Collections.synchronizedList(new ArrayList<>());
+        this.pendingOperations = new PendingOperations();
         this.clients = ConcurrentHashMap.newKeySet();
-        this.version = 0;
+        this.version = new AtomicLong();
         this.timestamp = System.currentTimeMillis();
+        this.transactionLock = new ReentrantLock();
+        this.updateObservers = new CopyOnWriteArrayList<>();
+        this.deepObservers = new CopyOnWriteArrayList<>();
+        this.collectedTypes = ConcurrentHashMap.newKeySet();
     }
 
     /**
      * 注册共享类型
+     * <p>
+     * 尚未生成过时钟的类型改用文档的客户端ID；已经生成过时钟的类型保留原来的客户端ID，
+     * 否则新ID下的时钟不从0开始，对方会一直等待其中缺失的时钟
      *
      * @param name 类型名称
      * @param crdt CRDT实例
      */
     public void register(String name, CRDT crdt) {
+        if (crdt instanceof BaseCRDT && ((BaseCRDT) crdt).getClock() == 0) {
+            ((BaseCRDT) crdt).setClientId(clientId);
+        }
         sharedTypes.put(name, crdt);
+        if (!deepObservers.isEmpty()) {
+            collectEvents(name, crdt);
+        }
+        Transaction tx = currentTransaction();
+        if (tx != null) {
+            tx.markRegistered(name);
+        }
         incrementVersion();
+        // 只应用等待该类型注册的操作
+        List<CRDTOperation> waiting = pendingOperations.takeForTarget(name);
+        if (!waiting.isEmpty()) {
+            applyOperations(waiting);
+        }
     }
 
     /**
@@ -61,31 +141,237 @@ public class YDoc {
 
     /**
      * 应用操作
+     * <p>
+     * 目标共享类型尚未注册、或操作依赖的另一个操作（{@link CRDTOperation#getDependency()}）尚未应用时，
+     * 操作进入待处理队列，在目标注册或依赖应用后立即应用。应用一个操作后，依赖它的等待操作也随之应用。
      *
      * @param operation 要应用的操作
+     * @throws IllegalStateException 操作需要等待，但待处理队列已满（见{@link #setMaxPendingOperations(int)}）
      */
     public void applyOperation(CRDTOperation operation) {
-        CRDT target = sharedTypes.get(operation.getTargetId());
-        if (target != null) {
-            target.applyOperation(operation);
-            incrementVersion();
-        } else {
-            // 如果目标不存在，将操作加入待处理队列
-            pendingOperations.add(operation);
+        Deque<CRDTOperation> ready = new ArrayDeque<>();
+        ready.add(operation);
+        applyReady(ready);
+    }
+
+    /**
+     * 依次应用已满足依赖的操作，以及因此满足依赖的等待操作
+     */
+    private void applyReady(Deque<CRDTOperation> ready) {
+        // 用工作队列代替递归，依赖链很长时也不会耗尽栈
+        while (!ready.isEmpty()) {
+            CRDTOperation next = ready.poll();
+            if (applyIfReady(next)) {
+                ready.addAll(pendingOperations.markApplied(next));
+            }
         }
     }
 
     /**
-     * 应用一系列操作
+     * 依赖和目标都满足时应用操作，否则让操作等待
+     *
+     * @return 操作是否已应用
+     */
+    private boolean applyIfReady(CRDTOperation operation) {
+        ID dependency = operation.getDependency();
+        if (dependency != null && pendingOperations.awaitDependency(operation, dependency)) {
+            return false;
+        }
+        String name = operation.getTargetId();
+        CRDT target;
+        while ((target = lookup(name)) == null) {
+            if (pendingOperations.awaitTarget(operation, () -> sharedTypes.containsKey(name))) {
+                return false;
+            }
+        }
+        target.applyOperation(operation);
+        incrementVersion();
+        return true;
+    }
+
+    /**
+     * 在一个事务中应用一系列操作
      *
      * @param operations 操作列表
      */
     public void applyOperations(List<CRDTOperation> operations) {
-        operations.forEach(this::applyOperation);
+        transact(tx -> operations.forEach(tx::applyOperation));
+    }
+
+    /**
+     * 在一个事务中执行一组修改
+     * <p>
+     * 事务中通过{@link Transaction#get(String)}访问的共享类型在首次访问时获取写锁，直到提交才释放；
+     * 提交时每个发生变化的类型只递增一次版本号并通知一次深度观察者，文档版本号也只递增一次，
+     * 然后把事务中的全部变化编码为一个更新，通知{@link #observeUpdate(BiConsumer)}注册的观察者。
+     * 同一文档上的事务依次执行；在事务中再次调用本方法会直接加入当前事务。
+     * 修改无法回滚，回调抛出异常时已做的修改仍会提交并通知观察者，然后重新抛出异常。
+     *
+     * @param body 在事务中执行的修改
+     * @return 已提交的事务
+     */
+    public Transaction transact(Consumer<Transaction> body) {
+        return transact(body, null);
+    }
+
+    /**
+     * 在一个事务中执行一组修改，事务产生的事件带有指定的来源
+     * <p>
+     * 来源可以用来区分变化从何而来，例如应用远端更新时传入连接对象，转发时跳过该连接；
+     * 加入外层事务时使用外层事务的来源
+     *
+     * @param body   在事务中执行的修改
+     * @param origin 事务的来源，见{@link YEvent#getOrigin()}
+     * @return 已提交的事务
+     */
+    public Transaction transact(Consumer<Transaction> body, Object origin) {
+        Transaction current = currentTransaction();
+        if (current != null) {
+            body.accept(current);
+            return current;
+        }
+
+        Transaction tx;
+        RuntimeException failure = null;
+        transactionLock.lock();
+        try {
+            tx = new Transaction(this, getStateVector(), origin);
+            transaction = tx;
+            try {
+                body.accept(tx);
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                // 提交时各类型产生的事件仍收集到事务中
+                try {
+                    tx.commit();
+                } finally {
+                    transaction = null;
+                }
+                if (tx.hasChanges()) {
+                    incrementVersion();
+                }
+            }
+        } finally {
+            transactionLock.unlock();
+        }
+
+        if (!tx.getEvents().isEmpty()) {
+            for (DeepListener listener : deepObservers) {
+                listener.accept(tx.getEvents());
+            }
+        }
+        if (!tx.getChanged().isEmpty() && !updateObservers.isEmpty()) {
+            byte[] update = tx.encodeUpdate();
+            for (BiConsumer<byte[], Transaction> observer : updateObservers) {
+                observer.accept(update, tx);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return tx;
+    }
+
+    /**
+     * 注册更新观察者，每个改变了共享类型的事务提交后收到事务中全部变化编码成的一个更新
+     * <p>
+     * 回调在提交事务的线程中、释放所有写锁之后执行
+     *
+     * @param observer 观察者，参数为编码后的更新和已提交的事务
+     */
+    public void observeUpdate(BiConsumer<byte[], Transaction> observer) {
+        updateObservers.add(observer);
+    }
+
+    /**
+     * 移除更新观察者
+     *
+     * @param observer 观察者
+     */
+    public void unobserveUpdate(BiConsumer<byte[], Transaction> observer) {
+        updateObservers.remove(observer);
+    }
+
+    /**
+     * 注册文档的深度观察者，任意共享类型及其嵌套类型发生变化时收到事件
+     * <p>
+     * 事务中的全部事件在提交后一次性通知，不在事务中的修改每次单独通知。事件的路径以共享类型的名称开头。
+     * 回调在修改的线程中同步执行
+     *
+     * @param observer 观察者
+     */
+    public void observeDeep(Consumer<List<YEvent>> observer) {
+        observeDeep(observer, null);
+    }
+
+    /**
+     * 注册文档的深度观察者，事件交给指定的执行器处理
+     *
+     * @param observer 观察者
+     * @param executor 执行观察者回调的执行器，为null时在修改的线程中同步执行
+     */
+    public void observeDeep(Consumer<List<YEvent>> observer, Executor executor) {
+        deepObservers.add(new DeepListener(observer, executor));
+        sharedTypes.forEach(this::collectEvents);
+    }
+
+    /**
+     * 移除文档的深度观察者
+     *
+     * @param observer 观察者
+     */
+    public void unobserveDeep(Consumer<List<YEvent>> observer) {
+        deepObservers.removeIf(listener -> listener.observer == observer);
+    }
+
+    /**
+     * 在共享类型上挂上事件收集器：事务中的事件收集到事务中，否则立即通知文档的深度观察者
+     */
+    private void collectEvents(String name, CRDT crdt) {
+        if (!(crdt instanceof BaseCRDT) || !collectedTypes.add((BaseCRDT) crdt)) {
+            return;
+        }
+        ((BaseCRDT) crdt).observeDeep(event -> {
+            if (deepObservers.isEmpty()) {
+                return;
+            }
+            List<Object> path = new ArrayList<>(event.getPath().size() + 1);
+            path.add(name);
+            path.addAll(event.getPath());
+            YEvent docEvent = event.withPath(path);
+            Transaction tx = currentTransaction();
+            if (tx != null) {
+                tx.addEvent(docEvent);
+            } else {
+                for (DeepListener listener : deepObservers) {
+                    listener.accept(List.of(docEvent));
+                }
+            }
+        });
+    }
+
+    /**
+     * 获取当前线程正在进行的事务
+     *
+     * @return 事务，不在事务中时为null
+     */
+    private Transaction currentTransaction() {
+        return transactionLock.isHeldByCurrentThread() ? transaction : null;
+    }
+
+    /**
+     * 查找共享类型，在事务中时通过事务访问，使其加入批量修改
+     */
+    private CRDT lookup(String name) {
+        Transaction tx = currentTransaction();
+        return tx != null ? tx.get(name) : sharedTypes.get(name);
     }
 
     /**
      * 合并另一个文档的状态
+     * <p>
+     * 本地没有的共享类型注册为同种类型的新实例再合并对方的状态，不与对方文档共享实例
      *
      * @param other 要合并的文档
      */
@@ -99,29 +385,183 @@ public class YDoc {
             CRDT localCRDT = this.get(name);
             if (localCRDT != null) {
                 localCRDT.merge(crdt);
+            } else if (crdt instanceof BaseCRDT) {
+                BaseCRDT copy = ValueCodec.newType(ValueCodec.kindOf((BaseCRDT) crdt));
+                this.register(name, copy);
+                copy.merge(crdt);
             } else {
                 this.register(name, crdt);
             }
         });
 
-        // 处理待处理操作
-        processPendingOperations();
         incrementVersion();
     }
 
     /**
-     * 处理待处理的操作
+     * 获取文档的状态向量
+     *
+     * @return 共享类型名称到该类型状态向量（客户端ID -> 已见过的下一个时钟）的映射
      */
-    private void processPendingOperations() {
-        Iterator<CRDTOperation> iterator = pendingOperations.iterator();
-        while (iterator.hasNext()) {
-            CRDTOperation operation = iterator.next();
-            CRDT target = sharedTypes.get(operation.getTargetId());
-            if (target != null) {
-                target.applyOperation(operation);
-                iterator.remove();
+    public Map<String, Map<Integer, Long>> getStateVector() {
+        Map<String, Map<Integer, Long>> stateVector = new HashMap<>();
+        sharedTypes.forEach((name, crdt) -> {
+            if (crdt instanceof BaseCRDT) {
+                stateVector.put(name, ((BaseCRDT) crdt).getStateVector());
+            }
+        });
+        return stateVector;
+    }
+
+    /**
+     * 编码文档的状态向量，发送给另一方以获取本地缺少的更新
+     *
+     * @return 编码后的状态向量
+     */
+    public byte[] encodeStateVector() {
+        Map<String, Map<Integer, Long>> stateVector = getStateVector();
+        UpdateEncoder out = new UpdateEncoder();
+        out.writeVarUint(stateVector.size());
+        for (Map.Entry<String, Map<Integer, Long>> type : stateVector.entrySet()) {
+            out.writeString(type.getKey());
+            out.writeVarUint(type.getValue().size());
+            for (Map.Entry<Integer, Long> client : type.getValue().entrySet()) {
+                out.writeClient(client.getKey());
+                out.writeVarUint(client.getValue());
             }
         }
+        return out.toByteArray();
+    }
+
+    /**
+     * 编码对方尚未见过的更新
+     * <p>
+     * 每个共享类型只编码对方状态向量之后的结构以及删除信息，对方没有的共享类型编码完整状态。
+     * 所有共享类型写入同一个编码器，客户端ID在整个更新中只完整写出一次
+     *
+     * @param encodedStateVector 对方{@link #encodeStateVector()}的结果，为null或空数组时编码整个文档
+     * @return 编码后的更新
+     */
+    public byte[] encodeStateAsUpdate(byte[] encodedStateVector) {
+        return encodeStateAsUpdate(decodeStateVector(encodedStateVector), sharedTypes.keySet());
+    }
+
+    /**
+     * 编码指定共享类型中对方尚未见过的更新
+     *
+     * @param stateVector 对方的状态向量
+     * @param names       要编码的共享类型名称，不存在的名称被忽略
+     * @return 编码后的更新
+     */
+    byte[] encodeStateAsUpdate(Map<String, Map<Integer, Long>> stateVector, Collection<String> names) {
+        List<Map.Entry<String, CRDT>> types = new ArrayList<>();
+        for (String name : names) {
+            CRDT crdt = sharedTypes.get(name);
+            if (crdt instanceof BaseCRDT) {
+                types.add(Map.entry(name, crdt));
+            }
+        }
+        UpdateEncoder out = new UpdateEncoder();
+        out.writeVarUint(types.size());
+        for (Map.Entry<String, CRDT> type : types) {
+            BaseCRDT crdt = (BaseCRDT) type.getValue();
+            out.writeString(type.getKey());
+            out.writeByte(ValueCodec.kindOf(crdt));
+            crdt.encodeState(out, stateVector.getOrDefault(type.getKey(), Collections.emptyMap()));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 应用另一方{@link #encodeStateAsUpdate(byte[])}编码的更新，本地没有的共享类型会被创建并注册
+     *
+     * @param update 编码后的更新
+     * @throws IllegalArgumentException 同名共享类型的种类与更新中的不一致
+     * @throws UncheckedIOException     更新的格式错误
+     */
+    public void applyUpdate(byte[] update) {
+        applyUpdate(ByteBuffer.wrap(update), null);
+    }
+
+    /**
+     * 应用另一方编码的更新，产生的事件带有指定的来源
+     *
+     * @param update 编码后的更新
+     * @param origin 事务的来源
+     * @throws IllegalArgumentException 同名共享类型的种类与更新中的不一致
+     * @throws UncheckedIOException     更新的格式错误
+     */
+    public void applyUpdate(byte[] update, Object origin) {
+        applyUpdate(ByteBuffer.wrap(update), origin);
+    }
+
+    /**
+     * 应用缓冲区中从当前位置开始的更新，直接在缓冲区上解码而不复制
+     *
+     * @param update 编码后的更新
+     * @throws IllegalArgumentException 同名共享类型的种类与更新中的不一致
+     * @throws UncheckedIOException     更新的格式错误
+     */
+    public void applyUpdate(ByteBuffer update) {
+        applyUpdate(update, null);
+    }
+
+    /**
+     * 应用缓冲区中从当前位置开始的更新，产生的事件带有指定的来源
+     * <p>
+     * 更新中的结构时钟属于各共享类型，与操作的时钟（{@link CRDTOperation#getClock()}）不是同一个时钟空间，
+     * 因此应用更新不会满足任何等待操作的依赖
+     *
+     * @param update 编码后的更新
+     * @param origin 事务的来源
+     * @throws IllegalArgumentException 同名共享类型的种类与更新中的不一致
+     * @throws UncheckedIOException     更新的格式错误
+     */
+    public void applyUpdate(ByteBuffer update, Object origin) {
+        transact(tx -> {
+            UpdateDecoder in = new UpdateDecoder(update);
+            try {
+                int types = in.readLength();
+                for (int i = 0; i < types; i++) {
+                    String name = in.readString();
+                    int kind = in.readByte();
+                    CRDT local = tx.get(name);
+                    if (local == null) {
+                        register(name, ValueCodec.newType(kind));
+                        local = tx.get(name);
+                    } else if (!(local instanceof BaseCRDT) || ValueCodec.kindOf((BaseCRDT) local) != kind) {
+                        throw new IllegalArgumentException("Shared type kind mismatch: " + name);
+                    }
+                    ((BaseCRDT) local).applyState(in);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            incrementVersion();
+        }, origin);
+    }
+
+    private static Map<String, Map<Integer, Long>> decodeStateVector(byte[] encoded) {
+        Map<String, Map<Integer, Long>> stateVector = new HashMap<>();
+        if (encoded == null || encoded.length == 0) {
+            return stateVector;
+        }
+        UpdateDecoder in = new UpdateDecoder(encoded);
+        try {
+            int types = in.readLength();
+            for (int i = 0; i < types; i++) {
+                String name = in.readString();
+                int clients = in.readLength();
+                Map<Integer, Long> clocks = new HashMap<>(Math.min(clients, 1024) * 2);
+                for (int j = 0; j < clients; j++) {
+                    clocks.put(in.readClient(), in.readVarUint());
+                }
+                stateVector.put(name, clocks);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return stateVector;
     }
 
     /**
@@ -134,11 +574,22 @@ public class YDoc {
         sharedTypes.forEach((name, crdt) -> {
             state.put(name, crdt.getState());
         });
-        state.put("version", this.version);
+        state.put("version", getVersion());
         state.put("timestamp", this.timestamp);
         return state;
     }
 
+    /**
+     * 对所有共享类型执行垃圾回收，释放已删除内容占用的内存
+     */
+    public void gc() {
+        sharedTypes.values().forEach(crdt -> {
+            if (crdt instanceof BaseCRDT) {
+                ((BaseCRDT) crdt).gc();
+            }
+        });
+    }
+
     /**
      * 添加客户端
      *
@@ -167,13 +618,73 @@ public class YDoc {
     }
 
     /**
-     * 递增版本号
+     * 获取文档版本号
+     *
+     * @return 版本号
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 递增版本号，在事务中时推迟到事务提交时递增一次
      */
     private void incrementVersion() {
-        this.version++;
+        Transaction tx = currentTransaction();
+        if (tx != null) {
+            tx.markDocChanged();
+            return;
+        }
+        version.incrementAndGet();
         this.timestamp = System.currentTimeMillis();
     }
 
+    /**
+     * 获取待处理队列中的操作数
+     *
+     * @return 等待目标注册或依赖应用的操作数
+     */
+    public int getPendingOperationCount() {
+        return pendingOperations.size();
+    }
+
+    /**
+     * 获取待处理队列曾经达到的最大操作数
+     *
+     * @return 队列深度的峰值
+     */
+    public int getPeakPendingOperationCount() {
+        return pendingOperations.peakSize();
+    }
+
+    /**
+     * 获取因待处理队列已满而被拒绝的操作数
+     *
+     * @return 被拒绝的操作数
+     */
+    public long getRejectedOperationCount() {
+        return pendingOperations.rejected();
+    }
+
+    /**
+     * 获取待处理队列的容量
+     *
+     * @return 最多等待的操作数
+     */
+    public int getMaxPendingOperations() {
+        return pendingOperations.capacity();
+    }
+
+    /**
+     * 设置待处理队列的容量，已在队列中的操作不受影响
+     *
+     * @param maxPendingOperations 最多等待的操作数
+     * @throws IllegalArgumentException 容量为负数
+     */
+    public void setMaxPendingOperations(int maxPendingOperations) {
+        pendingOperations.setCapacity(maxPendingOperations);
+    }
+
     /**
      * 清除文档内容
      */
@@ -183,4 +694,23 @@ public class YDoc {
         incrementVersion();
     }
 
-}
\ No newline at end of file
+    // 文档的深度观察者及执行其回调的执行器
+    private static final class DeepListener {
+        final Consumer<List<YEvent>> observer;
+        final Executor executor;
+
+        DeepListener(Consumer<List<YEvent>> observer, Executor executor) {
+            this.observer = observer;
+            this.executor = executor;
+        }
+
+        void accept(List<YEvent> events) {
+            if (executor == null) {
+                observer.accept(events);
+            } else {
+                executor.execute(() -> observer.accept(events));
+            }
+        }
+    }
+
+}
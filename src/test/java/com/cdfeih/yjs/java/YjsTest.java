@@ -1,20 +1,67 @@
 package com.cdfeih.yjs.java;
 
+import com.cdfeih.yjs.java.controller.YjsController;
+import com.cdfeih.yjs.java.crdt.DeleteSet;
+import com.cdfeih.yjs.java.crdt.ID;
+import com.cdfeih.yjs.java.crdt.delta.Delta;
+import com.cdfeih.yjs.java.crdt.delta.TextDiff;
+import com.cdfeih.yjs.java.crdt.encoding.LazyType;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateDecoder;
+import com.cdfeih.yjs.java.crdt.encoding.UpdateEncoder;
+import com.cdfeih.yjs.java.crdt.encoding.ValueCodec;
+import com.cdfeih.yjs.java.crdt.event.KeyChange;
+import com.cdfeih.yjs.java.crdt.event.SequenceChange;
+import com.cdfeih.yjs.java.crdt.event.YArrayEvent;
+import com.cdfeih.yjs.java.crdt.event.YEvent;
+import com.cdfeih.yjs.java.crdt.event.YMapEvent;
+import com.cdfeih.yjs.java.crdt.event.YTextEvent;
 import com.cdfeih.yjs.java.crdt.operation.BaseCRDTOperation;
 import com.cdfeih.yjs.java.crdt.operation.CRDTOperation;
+import com.cdfeih.yjs.java.crdt.struct.MapEntry;
 import com.cdfeih.yjs.java.crdt.types.YArray;
+import com.cdfeih.yjs.java.crdt.types.YDoubleArray;
+import com.cdfeih.yjs.java.crdt.types.YLongArray;
 import com.cdfeih.yjs.java.crdt.types.YMap;
 import com.cdfeih.yjs.java.crdt.types.YText;
+import com.cdfeih.yjs.java.crdt.util.PersistentHashMap;
+import com.cdfeih.yjs.java.ydoc.Transaction;
 import com.cdfeih.yjs.java.ydoc.YDoc;
 import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
 
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -47,6 +94,26 @@ class YjsTest {
         assertTrue(doc.getVersion() > 0);
     }
 
+    @Test
+    void testCompactIds() {
+        YDoc doc = new YDoc();
+        YText text = new YText();
+        doc.register("text", text);
+
+        // 注册到文档的共享类型使用文档的客户端ID，时钟按插入的字符数递增
+        assertEquals(doc.getClientId(), text.getClientId());
+        text.append("Hello");
+        text.insert(0, ">");
+        assertEquals(6, text.getClock());
+
+        // 操作ID由客户端ID和逻辑时钟组成
+        CRDTOperation op1 = new BaseCRDTOperation(CRDTOperation.OperationType.CLEAR, text.getId(), null);
+        CRDTOperation op2 = new BaseCRDTOperation(CRDTOperation.OperationType.CLEAR, text.getId(), null);
+        assertEquals(op1.getClientId(), op2.getClientId());
+        assertEquals(op1.getClock() + 1, op2.getClock());
+        assertEquals(op1.getClientId() + ":" + op1.getClock(), op1.getOperationId());
+    }
+
     @Test
     void testYArrayFunctionality() {
         YArray array = new YArray();
@@ -154,6 +221,958 @@ class YjsTest {
         assertTrue(text.isEmpty());
     }
 
+    @Test
+    void testYTextBlockSplit() {
+        YText text = new YText();
+
+        // 连续输入会续写到同一个文本块中
+        text.append("Hello");
+        text.insert(5, " World");
+        assertEquals("Hello World", text.toString());
+
+        // 在块内部插入和跨块删除时拆分文本块
+        text.insert(2, "--");
+        assertEquals("He--llo World", text.toString());
+        assertEquals("--llo W", text.delete(2, 9));
+        assertEquals("Heorld", text.toString());
+        assertEquals(6, text.length());
+
+        // 合并后两端的字符取并集
+        YText other = new YText();
+        other.merge(text);
+        other.insert(6, "!");
+        text.merge(other);
+        assertEquals("Heorld!", text.toString());
+    }
+
+    @Test
+    void testYTextRandomEdits() {
+        YText text = new YText();
+        StringBuilder expected = new StringBuilder();
+        Random random = new Random(42);
+
+        // 随机插入和删除，结果应与StringBuilder保持一致
+        for (int i = 0; i < 2000; i++) {
+            if (expected.length() > 0 && random.nextInt(3) == 0) {
+                int start = random.nextInt(expected.length());
+                int end = start + 1 + random.nextInt(Math.min(10, expected.length() - start));
+                assertEquals(expected.substring(start, end), text.delete(start, end));
+                expected.delete(start, end);
+            } else {
+                int index = random.nextInt(expected.length() + 1);
+                String value = Integer.toString(i);
+                text.insert(index, value);
+                expected.insert(index, value);
+            }
+            assertEquals(expected.length(), text.length());
+        }
+        assertEquals(expected.toString(), text.toString());
+    }
+
+    @Test
+    void testYTextSequentialEdits() {
+        YText text = new YText();
+        StringBuilder expected = new StringBuilder();
+        Random random = new Random(3);
+        int cursor = 0;
+
+        // 模拟打字：光标处连续输入和退格，偶尔移动光标
+        for (int i = 0; i < 5000; i++) {
+            int action = random.nextInt(20);
+            if (action == 0) {
+                cursor = random.nextInt(expected.length() + 1);
+            } else if (action < 4 && cursor > 0) {
+                text.delete(cursor - 1, cursor);
+                expected.deleteCharAt(--cursor);
+            } else {
+                String value = String.valueOf((char) ('a' + random.nextInt(26)));
+                text.insert(cursor, value);
+                expected.insert(cursor++, value);
+            }
+        }
+        assertEquals(expected.toString(), text.toString());
+        assertEquals(expected.length(), text.length());
+    }
+
+    @Test
+    void testYTextConcurrentMerge() {
+        YText text1 = new YText();
+        YText text2 = new YText();
+        text1.append("Hello World");
+        text2.merge(text1);
+
+        // 两个副本并发编辑，包括在同一位置插入、以及在对方删除的字符旁插入
+        text1.insert(5, ",");
+        text1.delete(6, 11);
+        text2.insert(5, "!");
+        text2.insert(11, "?");
+        text2.delete(0, 1);
+
+        text1.merge(text2);
+        text2.merge(text1);
+        assertEquals(text1.toString(), text2.toString());
+        assertTrue(text1.toString().startsWith("ello"));
+        assertTrue(text1.toString().endsWith("?d"));
+        assertEquals(8, text1.length());
+
+        // 重复合并不会产生重复内容
+        text1.merge(text2);
+        assertEquals(text2.toString(), text1.toString());
+    }
+
+    @Test
+    void testYTextRandomConcurrentMerge() {
+        Random random = new Random(7);
+        YText[] replicas = {new YText(), new YText(), new YText()};
+
+        for (int round = 0; round < 50; round++) {
+            // 每个副本独立编辑若干次
+            for (YText replica : replicas) {
+                for (int i = 0; i < 5; i++) {
+                    int length = replica.length();
+                    if (length > 0 && random.nextInt(3) == 0) {
+                        int start = random.nextInt(length);
+                        replica.delete(start, Math.min(length, start + 1 + random.nextInt(3)));
+                    } else {
+                        replica.insert(random.nextInt(length + 1), Integer.toString(random.nextInt(1000)));
+                    }
+                }
+            }
+            // 随机选择两个副本互相合并
+            YText a = replicas[random.nextInt(replicas.length)];
+            YText b = replicas[random.nextInt(replicas.length)];
+            a.merge(b);
+            b.merge(a);
+            assertEquals(a.toString(), b.toString());
+        }
+
+        for (YText replica : replicas) {
+            for (YText other : replicas) {
+                replica.merge(other);
+            }
+        }
+        for (YText replica : replicas) {
+            replicas[0].merge(replica);
+        }
+        for (YText replica : replicas) {
+            replica.merge(replicas[0]);
+            assertEquals(replicas[0].toString(), replica.toString());
+        }
+    }
+
+    @Test
+    void testYTextBulkInsert() throws Exception {
+        StringBuilder blob = new StringBuilder();
+        for (int i = 0; blob.length() < 50_000; i++) {
+            blob.append(i).append(' ');
+        }
+        String expected = blob.toString();
+
+        YText text = new YText();
+        text.append(blob);
+        assertEquals(expected, text.toString());
+        assertEquals(1, text.getVersion());
+
+        // 整段文本占用一段连续的时钟
+        assertEquals(expected.length(), text.getClock());
+
+        YText fromChars = new YText();
+        fromChars.append("[]");
+        fromChars.insert(1, expected.toCharArray());
+        assertEquals("[" + expected + "]", fromChars.toString());
+
+        YText fromReader = new YText();
+        fromReader.append(new StringReader(expected));
+        fromReader.insert(0, new StringReader("> "));
+        assertEquals("> " + expected, fromReader.toString());
+
+        // 在大段粘贴内部编辑后，其他副本仍能正确合并
+        YText replica = new YText();
+        replica.merge(text);
+        text.insert(20_000, "!");
+        text.delete(30_000, 40_000);
+        replica.merge(text);
+        assertEquals(text.toString(), replica.toString());
+    }
+
+    @Test
+    void testYTextRenderingCache() {
+        YText text = new YText();
+        text.append("Hello");
+
+        // 未修改时返回同一个缓存的字符串
+        String first = text.toString();
+        assertSame(first, text.toString());
+        assertSame(first, text.getState());
+
+        // 修改后缓存失效
+        text.insert(5, " World");
+        assertEquals("Hello World", text.toString());
+        text.delete(0, 6);
+        assertEquals("World", text.asCharSequence().toString());
+
+        YText other = new YText();
+        other.append("!");
+        text.merge(other);
+        assertEquals(6, text.asCharSequence().length());
+
+        // 垃圾回收不改变内容，缓存仍然有效
+        String cached = text.toString();
+        text.gc();
+        assertSame(cached, text.toString());
+
+        // 视图直接在文本块上读取字符，文本修改后失效
+        CharSequence view = text.asCharSequence();
+        assertEquals(cached.charAt(0), view.charAt(0));
+        assertEquals(cached.substring(1, 4), view.subSequence(1, 4).toString());
+        assertEquals(cached.charAt(5), view.subSequence(1, 6).charAt(4));
+        text.append("?");
+        assertThrows(ConcurrentModificationException.class, () -> view.charAt(0));
+    }
+
+    @Test
+    void testYTextDelta() {
+        YText text = new YText();
+        text.append("Hello World");
+        long version = text.getVersion();
+
+        text.insert(5, ",");
+        text.delete(7, 12);
+        text.append("Yjs");
+        Delta delta = text.getDelta(version);
+        assertEquals("Hello, Yjs", delta.apply("Hello World"));
+        assertEquals(new Delta().retain(5).insert(",").retain(1).insert("Yjs").delete(5), delta);
+
+        // 大文档上的单字符修改只产生很小的变更
+        YText big = new YText();
+        big.append("x".repeat(100_000));
+        long before = big.getVersion();
+        big.insert(50_000, "y");
+        assertEquals(new Delta().retain(50_000).insert("y"), big.getDelta(before));
+        assertTrue(big.getDelta(before, before).isEmpty());
+        assertNull(big.getDelta(-1));
+    }
+
+    @Test
+    void testYTextDeltaAfterMerge() {
+        Random random = new Random(5);
+        YText a = new YText();
+        YText b = new YText();
+        for (int round = 0; round < 30; round++) {
+            for (YText replica : new YText[]{a, b}) {
+                for (int i = 0; i < 3; i++) {
+                    int length = replica.length();
+                    if (length > 0 && random.nextBoolean()) {
+                        int start = random.nextInt(length);
+                        replica.delete(start, Math.min(length, start + 1 + random.nextInt(3)));
+                    } else {
+                        replica.insert(random.nextInt(length + 1), Integer.toString(random.nextInt(100)));
+                    }
+                }
+            }
+
+            // 合并产生的变更应用到合并前的文本上，结果与合并后的文本一致
+            String before = a.toString();
+            long version = a.getVersion();
+            a.merge(b);
+            assertEquals(a.toString(), a.getDelta(version).apply(before));
+            b.merge(a);
+        }
+    }
+
+    @Test
+    void testTextDiff() {
+        assertEquals(new Delta().retain(2).insert("x").delete(1), TextDiff.diff("abcd", "abxd"));
+        assertEquals(new Delta().delete(1).retain(4).insert("!"), TextDiff.diff("Hello", "ello!"));
+        assertTrue(TextDiff.diff("same", "same").isEmpty());
+
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            String a = randomText(random, random.nextInt(60));
+            String b = random.nextBoolean() ? randomText(random, random.nextInt(60)) : mutate(random, a);
+            assertEquals(b, TextDiff.diff(a, b).apply(a));
+        }
+    }
+
+    @Test
+    void testYTextSetText() {
+        YText text = new YText();
+        text.append("The quick brown fox jumps over the lazy dog");
+        YText replica = new YText();
+        replica.merge(text);
+        long version = text.getVersion();
+
+        // 只修改发生变化的部分，版本号只递增一次
+        Delta diff = text.setText("The quick red fox jumps over the lazy cat");
+        assertEquals("The quick red fox jumps over the lazy cat", text.toString());
+        assertEquals(version + 1, text.getVersion());
+        assertEquals(diff, text.getDelta(version));
+
+        // 与副本上的并发修改合并时，未变化的文本保持不变
+        replica.insert(0, ">> ");
+        replica.merge(text);
+        text.merge(replica);
+        assertEquals(">> The quick red fox jumps over the lazy cat", text.toString());
+        assertEquals(text.toString(), replica.toString());
+
+        // 内容相同时不产生修改
+        long unchanged = text.getVersion();
+        assertTrue(text.setText(text.toString()).isEmpty());
+        assertEquals(unchanged, text.getVersion());
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+
+    private static String mutate(Random random, String text) {
+        StringBuilder sb = new StringBuilder(text);
+        for (int i = random.nextInt(5); i >= 0; i--) {
+            int index = random.nextInt(sb.length() + 1);
+            if (index < sb.length() && random.nextBoolean()) {
+                sb.deleteCharAt(index);
+            } else {
+                sb.insert(index, randomText(random, 1 + random.nextInt(3)));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void testDeleteSet() {
+        DeleteSet deleteSet = new DeleteSet();
+        deleteSet.add(1, 10, 5);
+        deleteSet.add(1, 0, 3);
+        deleteSet.add(1, 3, 2);
+        deleteSet.add(2, 0, 1);
+        assertEquals(3, deleteSet.size());
+
+        // 填补空隙后相邻范围合并为一条
+        deleteSet.add(1, 5, 5);
+        assertEquals(2, deleteSet.size());
+        assertTrue(deleteSet.contains(1, 0, 15));
+        assertFalse(deleteSet.contains(1, 0, 16));
+        assertFalse(deleteSet.isDeleted(2, 1));
+    }
+
+    @Test
+    void testYTextGarbageCollection() {
+        Random random = new Random(11);
+        YText[] replicas = {new YText(), new YText()};
+
+        for (int round = 0; round < 50; round++) {
+            for (YText replica : replicas) {
+                for (int i = 0; i < 5; i++) {
+                    int length = replica.length();
+                    if (length > 0 && random.nextInt(2) == 0) {
+                        int start = random.nextInt(length);
+                        replica.delete(start, Math.min(length, start + 1 + random.nextInt(5)));
+                    } else {
+                        replica.insert(random.nextInt(length + 1), Integer.toString(random.nextInt(1000)));
+                    }
+                }
+                // 回收不改变可见内容
+                String before = replica.toString();
+                replica.gc();
+                assertEquals(before, replica.toString());
+            }
+            replicas[0].merge(replicas[1]);
+            replicas[1].merge(replicas[0]);
+            assertEquals(replicas[0].toString(), replicas[1].toString());
+        }
+
+        // 新副本可以从已回收的副本中完整同步
+        YText fresh = new YText();
+        fresh.merge(replicas[0]);
+        assertEquals(replicas[0].toString(), fresh.toString());
+        assertEquals(replicas[0].length(), fresh.length());
+    }
+
+    @Test
+    void testYArrayRandomEdits() {
+        Random random = new Random(13);
+        YArray array = new YArray();
+        List<Object> expected = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            int action = random.nextInt(10);
+            if (action < 5 || expected.isEmpty()) {
+                int index = random.nextInt(expected.size() + 1);
+                array.insert(index, i);
+                expected.add(index, i);
+            } else if (action < 8) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), array.remove(index));
+            } else {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.set(index, -i), array.set(index, -i));
+            }
+        }
+        assertEquals(expected, array.getState());
+
+        // ID与位置可以互相换算
+        for (int index = 0; index < expected.size(); index += 7) {
+            assertEquals(expected.get(index), array.get(index));
+            assertEquals(index, array.indexOf(array.getElementId(index)));
+        }
+
+        ID removedId = array.getElementId(0);
+        array.remove(0);
+        assertEquals(-1, array.indexOf(removedId));
+    }
+
+    @Test
+    void testYArrayBatchOperations() {
+        YArray array = new YArray();
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            rows.add("row" + i);
+        }
+
+        // 批量操作只产生一个版本
+        array.addAll(rows);
+        assertEquals(10_000, array.size());
+        assertEquals(1, array.getVersion());
+
+        array.insertAll(1, List.of("a", "b"));
+        assertEquals("a", array.get(1));
+        assertEquals("row1", array.get(3));
+        assertEquals(List.of("b", "row1"), array.removeRange(2, 4));
+        assertEquals(3, array.getVersion());
+        assertEquals(10_000, array.size());
+
+        // 通过操作批量插入和删除
+        Map<String, Object> insertData = new HashMap<>();
+        insertData.put("index", 0);
+        insertData.put("elements", List.of("x", "y", "z"));
+        array.applyOperation(new BaseCRDTOperation(CRDTOperation.OperationType.INSERT, array.getId(), insertData));
+        assertEquals("z", array.get(2));
+
+        Map<String, Object> deleteData = new HashMap<>();
+        deleteData.put("start", 0);
+        deleteData.put("end", 3);
+        array.applyOperation(new BaseCRDTOperation(CRDTOperation.OperationType.DELETE, array.getId(), deleteData));
+        assertEquals("row0", array.get(0));
+        assertEquals(5, array.getVersion());
+    }
+
+    @Test
+    void testYArrayConcurrentMerge() {
+        Random random = new Random(17);
+        YArray[] replicas = {new YArray(), new YArray(), new YArray()};
+
+        for (int round = 0; round < 50; round++) {
+            for (YArray replica : replicas) {
+                for (int i = 0; i < 4; i++) {
+                    int size = replica.size();
+                    if (size > 0 && random.nextInt(3) == 0) {
+                        int start = random.nextInt(size);
+                        replica.removeRange(start, Math.min(size, start + 1 + random.nextInt(2)));
+                    } else if (random.nextBoolean()) {
+                        replica.insert(random.nextInt(size + 1), round * 100 + i);
+                    } else {
+                        replica.insertAll(random.nextInt(size + 1), List.of("a" + round, "b" + round));
+                    }
+                }
+            }
+            YArray a = replicas[random.nextInt(replicas.length)];
+            YArray b = replicas[random.nextInt(replicas.length)];
+            a.merge(b);
+            b.merge(a);
+            assertEquals(a.getState(), b.getState());
+        }
+
+        // 不同的合并顺序得到相同的结果，重复合并不会产生重复元素
+        for (int k = 0; k < 2; k++) {
+            for (YArray replica : replicas) {
+                for (YArray other : replicas) {
+                    replica.merge(other);
+                }
+            }
+        }
+        for (YArray replica : replicas) {
+            assertEquals(replicas[0].getState(), replica.getState());
+        }
+    }
+
+    @Test
+    void testYArrayViews() {
+        YArray array = new YArray();
+        for (int i = 0; i < 300; i++) {
+            if (i % 3 == 0) {
+                array.addAll(List.of(i, i + 1, i + 2));
+            }
+        }
+        array.removeRange(50, 60);
+        List<Object> expected = (List<Object>) array.getState();
+
+        List<Object> slice = array.slice(100, 200);
+        assertEquals(100, slice.size());
+        assertEquals(expected.subList(100, 200), slice);
+        assertEquals(expected.get(150), slice.get(50));
+        assertEquals(expected.subList(120, 130), slice.subList(20, 30));
+
+        // 游标可以前后移动
+        ListIterator<Object> cursor = array.cursor(48);
+        assertEquals(expected.get(48), cursor.next());
+        assertEquals(expected.get(49), cursor.next());
+        assertEquals(expected.get(50), cursor.next());
+        assertEquals(expected.get(50), cursor.previous());
+        assertEquals(expected.get(49), cursor.previous());
+        assertEquals(49, cursor.nextIndex());
+        ListIterator<Object> end = array.cursor(array.size());
+        assertFalse(end.hasNext());
+        assertEquals(expected.get(expected.size() - 1), end.previous());
+
+        assertEquals(expected, array.stream().collect(Collectors.toList()));
+        assertEquals(expected, StreamSupport.stream(array.spliterator(), true).collect(Collectors.toList()));
+
+        // 数组被修改后，之前创建的视图不再可读
+        array.add("x");
+        assertThrows(ConcurrentModificationException.class, () -> slice.get(0));
+        assertThrows(ConcurrentModificationException.class, cursor::next);
+        assertThrows(IndexOutOfBoundsException.class, () -> array.slice(0, array.size() + 1));
+    }
+
+    @Test
+    void testYLongArray() {
+        YLongArray array = new YLongArray();
+        for (long i = 0; i < 10000; i++) {
+            array.add(i);
+        }
+        assertEquals(10000, array.size());
+        assertEquals(4321L, array.get(4321));
+
+        // 连续追加的数值共用同一段ID范围
+        ID first = array.getElementId(0);
+        ID next = array.getElementId(1);
+        assertEquals(first.getClient(), next.getClient());
+        assertEquals(first.getClock() + 1, next.getClock());
+
+        array.insertAll(5, new long[]{-1, -2, -3});
+        assertEquals(-2L, array.get(6));
+        assertEquals(5L, array.get(8));
+        assertArrayEquals(new long[]{-1, -2, -3, 5}, array.removeRange(5, 9));
+        assertEquals(6L, array.remove(5));
+        assertEquals(7L, array.set(5, 70));
+        assertEquals(9998, array.size());
+        assertEquals(70L, array.get(5));
+
+        // 并发编辑合并后收敛
+        YLongArray other = new YLongArray();
+        other.merge(array);
+        array.insert(0, 100);
+        other.insert(0, 200);
+        other.removeRange(1, 3);
+        array.merge(other);
+        other.merge(array);
+        assertArrayEquals(array.toArray(), other.toArray());
+        assertEquals(9998, array.size());
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("elements", List.of(1, 2.5, 3L));
+        array.applyOperation(new BaseCRDTOperation(CRDTOperation.OperationType.INSERT, array.getId(), data));
+        assertEquals(2L, array.get(array.size() - 2));
+
+        YDoubleArray doubles = new YDoubleArray();
+        doubles.addAll(new double[]{0.5, 1.5, 2.5});
+        doubles.insert(1, 1.0);
+        assertArrayEquals(new double[]{0.5, 1.0, 1.5, 2.5}, doubles.toArray());
+        doubles.clear();
+        assertTrue(doubles.isEmpty());
+    }
+
+    @Test
+    void testYMapLogicalClocks() {
+        YMap map1 = new YMap();
+        YMap map2 = new YMap();
+        for (int i = 0; i < 10000; i++) {
+            map1.set("key" + i, i);
+        }
+        map2.merge(map1);
+        assertEquals(map1.getState(), map2.getState());
+
+        // 同步一次修改只需要传输一个键
+        map1.set("key42", "changed");
+        Map<Integer, Long> since = map2.getStateVector();
+        Map<Integer, Long> state = new HashMap<>();
+        Map<String, MapEntry> changes = map1.getChangesSince(since, state);
+        assertEquals(1, changes.size());
+        assertEquals(1, map2.applyChanges(changes, since, state));
+        assertEquals("changed", map2.get("key42"));
+        assertTrue(map1.getChangesSince(map2.getStateVector()).isEmpty());
+
+        // 被覆盖的写入不在变化中，状态向量按发送方覆盖的范围推进，不留下缺口
+        for (int i = 0; i < 100; i++) {
+            map1.set("hot", i);
+        }
+        since = map2.getStateVector();
+        state = new HashMap<>();
+        changes = map1.getChangesSince(since, state);
+        assertEquals(1, changes.size());
+        map2.applyChanges(changes, since, state);
+        assertEquals(state.get(map1.getClientId()), map2.getStateVector().get(map1.getClientId()));
+        assertTrue(map1.getChangesSince(map2.getStateVector()).isEmpty());
+
+        // 见过对方的写入之后，本地写入总是胜出
+        map2.set("key1", "from map2");
+        map1.merge(map2);
+        map1.set("key1", "from map1");
+        map2.merge(map1);
+        assertEquals("from map1", map2.get("key1"));
+
+        // 并发写入同一个键，按标记决定胜负，合并顺序不影响结果
+        map1.set("shared", "a");
+        map2.set("shared", "b");
+        map1.merge(map2);
+        map2.merge(map1);
+        assertEquals(map1.get("shared"), map2.get("shared"));
+        assertEquals(map1.getState(), map2.getState());
+    }
+
+    @Test
+    void testYMapTombstones() {
+        YMap map1 = new YMap();
+        YMap map2 = new YMap();
+        map1.set("a", 1);
+        map1.set("b", 2);
+        map2.merge(map1);
+
+        // 过期副本的旧值不会复活被删除的键
+        map1.remove("a");
+        assertEquals(1, map1.getTombstoneCount());
+        map1.merge(map2);
+        assertFalse(map1.containsKey("a"));
+        map2.merge(map1);
+        assertFalse(map2.containsKey("a"));
+        assertEquals(map1.getState(), map2.getState());
+
+        // 删除之后的写入胜出
+        map2.set("a", 3);
+        map1.merge(map2);
+        assertEquals(3, map1.get("a"));
+        assertEquals(0, map1.getTombstoneCount());
+
+        // 所有已知副本都见过删除之后才回收墓碑
+        for (int i = 0; i < 1000; i++) {
+            map1.set("tmp", i);
+            map1.remove("tmp");
+        }
+        map1.clear();
+        assertTrue(map1.isEmpty());
+        assertEquals(3, map1.getTombstoneCount());
+        map1.gc();
+        assertEquals(3, map1.getTombstoneCount());
+        map2.merge(map1);
+        assertTrue(map2.isEmpty());
+        map1.updateReplicaState(map2.getId(), map2.getStateVector());
+        map1.gc();
+        assertEquals(0, map1.getTombstoneCount());
+
+        // 离开的副本不再阻止回收
+        YMap map3 = new YMap();
+        map1.merge(map3);
+        map1.set("c", 1);
+        map1.remove("c");
+        map1.gc();
+        assertEquals(1, map1.getTombstoneCount());
+        map1.removeReplica(map3.getId());
+        map1.updateReplicaState(map2.getId(), map1.getStateVector());
+        map1.gc();
+        assertEquals(0, map1.getTombstoneCount());
+
+        // 没有已知副本时不回收墓碑；墓碑回收之后，迟到的完整旧状态也不会复活被删除的键
+        YDoc doc = new YDoc();
+        YMap map4 = new YMap();
+        doc.register("map", map4);
+        map4.set("k", 1);
+        byte[] stale = doc.encodeStateAsUpdate(null);
+        map4.remove("k");
+        map4.gc();
+        assertEquals(1, map4.getTombstoneCount());
+        doc.applyUpdate(stale);
+        assertFalse(map4.containsKey("k"));
+        map4.updateReplicaState(map2.getId(), map4.getStateVector());
+        map4.gc();
+        assertEquals(0, map4.getTombstoneCount());
+        doc.applyUpdate(stale);
+        assertFalse(map4.containsKey("k"));
+        YDoc other = new YDoc();
+        other.applyUpdate(stale);
+        ((YMap) other.get("map")).remove("k");
+        other.applyUpdate(stale);
+        assertFalse(((YMap) other.get("map")).containsKey("k"));
+
+        // 二进制同步：服务端从收到的更新中记录发送方的状态向量，所有发送过更新的副本都见过删除后才回收墓碑
+        YDoc server = new YDoc();
+        YDoc writer = new YDoc();
+        YDoc reader = new YDoc();
+        YMap written = new YMap();
+        writer.register("map", written);
+        written.set("k", 1);
+        server.applyUpdate(writer.encodeStateAsUpdate(server.encodeStateVector()));
+        reader.applyUpdate(server.encodeStateAsUpdate(reader.encodeStateVector()));
+        // 只接收的副本发送一次没有变化的更新来登记自己
+        server.applyUpdate(reader.encodeStateAsUpdate(server.encodeStateVector()));
+        written.remove("k");
+        server.applyUpdate(writer.encodeStateAsUpdate(server.encodeStateVector()));
+        YMap serverMap = (YMap) server.get("map");
+        assertEquals(1, serverMap.getTombstoneCount());
+        server.gc();
+        assertEquals(1, serverMap.getTombstoneCount());
+        reader.applyUpdate(server.encodeStateAsUpdate(reader.encodeStateVector()));
+        assertFalse(((YMap) reader.get("map")).containsKey("k"));
+        server.applyUpdate(reader.encodeStateAsUpdate(server.encodeStateVector()));
+        server.gc();
+        assertEquals(0, serverMap.getTombstoneCount());
+    }
+
+    @Test
+    void testYMapConcurrentWrites() throws Exception {
+        YMap map = new YMap();
+        int threads = 8;
+        int writes = 5000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < writes; i++) {
+                    map.set("t" + id + "-" + i, i);
+                    map.set("shared", id);
+                    if (i % 10 == 0) {
+                        map.remove("t" + id + "-" + i);
+                    }
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // 版本号的递增不会丢失，每个键只保留一个寄存器
+        assertEquals(threads * (writes * 2L + writes / 10), map.getVersion());
+        assertEquals(threads * (writes - writes / 10) + 1, map.size());
+        assertEquals(threads * writes / 10, map.getTombstoneCount());
+        assertEquals(map.size(), ((Map<?, ?>) map.getState()).size());
+
+        // 同一个键上的并发写入按标记决定胜负，同步后两个副本一致
+        YMap copy = new YMap();
+        copy.merge(map);
+        assertEquals(map.getState(), copy.getState());
+        assertEquals(map.getEntry("shared"), copy.getEntry("shared"));
+        assertTrue(map.getChangesSince(copy.getStateVector()).isEmpty());
+
+        // 事务外的并发写入不会混入事务的事件，每次写入的变化恰好通知一次，带有正确的来源
+        YDoc doc = new YDoc();
+        YMap observed = new YMap();
+        doc.register("map", observed);
+        List<YMapEvent> events = Collections.synchronizedList(new ArrayList<>());
+        observed.observe(event -> events.add((YMapEvent) event));
+        Thread outside = new Thread(() -> {
+            for (int i = 0; i < writes; i++) {
+                observed.set("outside-" + i, i);
+            }
+        });
+        outside.start();
+        for (int i = 0; i < 500; i++) {
+            int n = i;
+            doc.transact(tx -> {
+                YMap m = tx.get("map", YMap.class);
+                m.set("tx-" + n, n);
+                m.set("tx-" + n + "-b", n);
+            }, "tx");
+        }
+        outside.join();
+        int outsideChanges = 0;
+        for (YMapEvent event : events) {
+            for (String key : event.getKeysChanged()) {
+                assertEquals(key.startsWith("tx-"), "tx".equals(event.getOrigin()), key);
+            }
+            if (event.getOrigin() == null) {
+                assertEquals(1, event.getKeysChanged().size());
+                outsideChanges++;
+            } else {
+                assertEquals(2, event.getKeysChanged().size());
+            }
+        }
+        assertEquals(writes + 500, events.size());
+        assertEquals(writes, outsideChanges);
+    }
+
+    @Test
+    void testPersistentHashMap() {
+        Random random = new Random(23);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        List<PersistentHashMap<Integer, Integer>> versions = new ArrayList<>();
+        List<Map<Integer, Integer>> expectedVersions = new ArrayList<>();
+
+        for (int i = 0; i < 20000; i++) {
+            // 键的范围较小，同时覆盖新增、替换和删除
+            int key = random.nextInt(5000) * (random.nextBoolean() ? 1 : -65536);
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expected.remove(key);
+            } else {
+                map = map.plus(key, i);
+                expected.put(key, i);
+            }
+            if (i % 2000 == 0) {
+                versions.add(map);
+                expectedVersions.add(new HashMap<>(expected));
+            }
+        }
+        assertEquals(expected, map);
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.size(), new ArrayList<>(map.entrySet()).size());
+
+        // 旧版本保持不变
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(expectedVersions.get(i), versions.get(i));
+        }
+        assertSame(map, map.minus(Integer.MAX_VALUE));
+
+        // 哈希值相同的键
+        PersistentHashMap<String, Integer> collisions = PersistentHashMap.<String, Integer>empty()
+                .plus("Aa", 1).plus("BB", 2).plus("C#", 3);
+        assertEquals(Map.of("Aa", 1, "BB", 2, "C#", 3), collisions);
+        assertEquals(Map.of("Aa", 1, "C#", 3), collisions.minus("BB"));
+        assertEquals(Map.of("C#", 3), collisions.minus("BB").minus("Aa"));
+        assertTrue(collisions.minus("Aa").minus("BB").minus("C#").isEmpty());
+    }
+
+    @Test
+    void testYMapSnapshots() {
+        YMap map = new YMap();
+        for (int i = 0; i < 1000; i++) {
+            map.set("key" + i, i);
+        }
+        Map<String, Object> snapshot = (Map<String, Object>) map.getState();
+        assertSame(snapshot, map.getState());
+        Set<String> keys = map.keySet();
+
+        map.set("key1", "changed");
+        map.remove("key2");
+        map.set("extra", true);
+
+        // 之前取得的快照不受后续写入影响
+        assertEquals(1000, snapshot.size());
+        assertEquals(1, snapshot.get("key1"));
+        assertTrue(snapshot.containsKey("key2"));
+        assertFalse(keys.contains("extra"));
+
+        Map<String, Object> current = (Map<String, Object>) map.getState();
+        assertEquals(1000, current.size());
+        assertEquals("changed", current.get("key1"));
+        assertFalse(current.containsKey("key2"));
+        assertTrue(map.values().contains(true));
+        assertEquals(1000, map.entrySet().size());
+        assertThrows(UnsupportedOperationException.class, () -> current.put("x", 1));
+
+        // 键值对视图属于快照：遍历时不为每个键值对新建对象，保留的键值对在之后的写入后仍是快照中的值
+        List<Map.Entry<String, Object>> retained = new ArrayList<>(current.entrySet());
+        Map.Entry<String, Object> first = current.entrySet().iterator().next();
+        assertSame(retained.get(0), first);
+        Map.Entry<String, Object> key1 = retained.stream().filter(e -> e.getKey().equals("key1")).findFirst().get();
+        map.set("key1", "changed again");
+        map.remove("key3");
+        assertEquals("changed", key1.getValue());
+        assertEquals(Map.entry("key1", "changed"), key1);
+        assertTrue(retained.stream().anyMatch(e -> e.getKey().equals("key3")));
+        assertTrue(current.entrySet().contains(Map.entry("key3", 3)));
+        assertThrows(UnsupportedOperationException.class, () -> key1.setValue("x"));
+        Map<String, Object> next = (Map<String, Object>) map.getState();
+        assertFalse(next.entrySet().contains(key1));
+        assertEquals(999, next.entrySet().size());
+        // 未修改的键在新旧快照之间共享同一个键值对
+        Map.Entry<String, Object> key5 = retained.stream().filter(e -> e.getKey().equals("key5")).findFirst().get();
+        assertTrue(next.entrySet().stream().anyMatch(e -> e == key5));
+
+        // 并发读取快照时，写入线程随后取得的快照总是包含它已经返回的写入
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (!stop.get()) {
+                map.size();
+            }
+        });
+        reader.start();
+        try {
+            for (int i = 0; i < 20000; i++) {
+                map.set("race", i);
+                assertEquals(i, ((Map<String, Object>) map.getState()).get("race"));
+            }
+        } finally {
+            stop.set(true);
+            assertDoesNotThrow(() -> reader.join(5000));
+        }
+    }
+
+    @Test
+    void testNestedTypes() {
+        YMap root1 = new YMap();
+        YMap profile = new YMap();
+        YArray tags = new YArray();
+        YText bio = new YText();
+        root1.set("profile", profile);
+        profile.set("tags", tags);
+        profile.set("bio", bio);
+        tags.add("a");
+        bio.append("hello");
+        assertSame(root1, profile.getParent());
+        assertEquals("profile", profile.getParentKey());
+        assertThrows(IllegalArgumentException.class, () -> tags.add(root1));
+        assertThrows(IllegalArgumentException.class, () -> root1.set("again", profile));
+
+        // 深度观察者收到嵌套类型的变化及其路径
+        List<YEvent> events = new ArrayList<>();
+        root1.observeDeep(events::add);
+        tags.add("b");
+        assertEquals(1, events.size());
+        assertSame(tags, events.get(0).getTarget());
+        assertEquals(List.of("profile", "tags"), events.get(0).getPath());
+
+        // 对方复制的嵌套类型首次读取时才构建
+        YMap root2 = new YMap();
+        root2.merge(root1);
+        assertFalse(((LazyType) root2.getEntry("profile").getRawValue()).isMaterialized());
+        YMap profile2 = (YMap) root2.get("profile");
+        assertNotSame(profile, profile2);
+        assertEquals(List.of("a", "b"), ((YArray) profile2.get("tags")).getState());
+        assertEquals("hello", profile2.get("bio").toString());
+
+        // 深层的小修改递归合并，不替换整个值
+        ((YText) profile2.get("bio")).append(" world");
+        tags.add("c");
+        root1.merge(root2);
+        root2.merge(root1);
+        assertEquals("hello world", bio.toString());
+        assertEquals(List.of("a", "b", "c"), ((YArray) profile2.get("tags")).getState());
+        assertSame(profile2, root2.get("profile"));
+
+        // 编码后再应用得到相同的嵌套结构
+        YMap root3 = new YMap();
+        ValueCodec.applyState(root3, ValueCodec.encodeState(root1));
+        YMap profile3 = (YMap) root3.get("profile");
+        assertEquals("hello world", profile3.get("bio").toString());
+        assertEquals(List.of("a", "b", "c"), ((YArray) profile3.get("tags")).getState());
+
+        // 数组中的嵌套类型
+        YArray list1 = new YArray();
+        YMap item = new YMap();
+        list1.add(item);
+        item.set("done", false);
+        YArray list2 = new YArray();
+        list2.merge(list1);
+        ((YMap) list2.get(0)).set("done", true);
+        list1.merge(list2);
+        assertEquals(true, item.get("done"));
+    }
+
     @Test
     void testCRDTMerge() {
         // 创建两个YArray实例
@@ -204,6 +1223,7 @@ class YjsTest {
         doc2.register("text", text2);
 
         // 合并文档
+        int text2Client = text2.getClientId();
         doc1.merge(doc2);
 
         // 检查合并结果
@@ -214,6 +1234,561 @@ class YjsTest {
         // 检查文本内容是否正确合并
         YText mergedText = (YText) doc1.get("text");
         assertEquals("text2-content", mergedText.toString());
+
+        // 本地没有的共享类型合并为新实例，不与对方文档共享
+        assertNotSame(text2, mergedText);
+        text2.append("!");
+        assertEquals("text2-content", mergedText.toString());
+        assertEquals(text2Client, text2.getClientId());
+
+        // 注册前已经生成过时钟的类型保留原来的客户端ID，对方同步后不缺少任何时钟
+        YDoc doc3 = new YDoc();
+        YText text3 = new YText();
+        text3.append("hi");
+        YArray array3 = new YArray();
+        array3.add(1);
+        doc3.register("text", text3);
+        doc3.register("array", array3);
+        assertNotEquals(doc3.getClientId(), text3.getClientId());
+        text3.append(" there");
+        array3.add(2);
+        YDoc peer = new YDoc();
+        peer.applyUpdate(doc3.encodeStateAsUpdate(null));
+        assertEquals("hi there", peer.get("text").toString());
+        assertEquals(List.of(1, 2), ((YArray) peer.get("array")).getState());
+    }
+
+    @Test
+    void testYDocUpdateSync() {
+        YDoc doc1 = new YDoc();
+        YDoc doc2 = new YDoc();
+        YText text1 = new YText();
+        doc1.register("text", text1);
+        text1.append("x".repeat(100000));
+        YArray array1 = new YArray();
+        doc1.register("array", array1);
+        YMap item = new YMap();
+        array1.add(item);
+        item.set("done", false);
+
+        // 初次同步传输整个文档，对方没有的共享类型被创建
+        doc2.applyUpdate(doc1.encodeStateAsUpdate(doc2.encodeStateVector()));
+        YText text2 = (YText) doc2.get("text");
+        assertEquals(text1.toString(), text2.toString());
+        assertEquals(false, ((YMap) ((YArray) doc2.get("array")).get(0)).get("done"));
+
+        // 错过三次按键只需要传输这三次按键
+        text1.insert(10, "a");
+        text1.insert(11, "b");
+        text1.delete(500, 501);
+        item.set("done", true);
+        byte[] update = doc1.encodeStateAsUpdate(doc2.encodeStateVector());
+        assertTrue(update.length < 1000);
+        doc2.applyUpdate(update);
+        assertEquals(text1.toString(), text2.toString());
+        assertEquals(true, ((YMap) ((YArray) doc2.get("array")).get(0)).get("done"));
+
+        // 对方已有的嵌套类型只传输其内部的变化，事务产生的更新同样如此
+        YText notes = new YText();
+        item.set("notes", notes);
+        notes.append("y".repeat(100000));
+        doc2.applyUpdate(doc1.encodeStateAsUpdate(doc2.encodeStateVector()));
+        YMap item2 = (YMap) ((YArray) doc2.get("array")).get(0);
+        assertEquals(notes.toString(), item2.get("notes").toString());
+        notes.insert(5, "?");
+        update = doc1.encodeStateAsUpdate(doc2.encodeStateVector());
+        assertTrue(update.length < 1000);
+        doc2.applyUpdate(update);
+        assertEquals(notes.toString(), item2.get("notes").toString());
+        List<byte[]> updates = new ArrayList<>();
+        doc1.observeUpdate((u, tx) -> updates.add(u));
+        doc1.transact(tx -> {
+            tx.get("array");
+            notes.append("!");
+        });
+        assertEquals(1, updates.size());
+        assertTrue(updates.get(0).length < 1000);
+        doc2.applyUpdate(updates.get(0));
+        assertEquals(notes.toString(), item2.get("notes").toString());
+
+        // 对方已见过且没有变化的嵌套类型不再编码，只编码状态向量超出对方的嵌套类型
+        List<YMap> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            YMap row = new YMap();
+            array1.add(row);
+            row.set("n", i);
+            rows.add(row);
+        }
+        doc2.applyUpdate(doc1.encodeStateAsUpdate(doc2.encodeStateVector()));
+        YArray array2 = (YArray) doc2.get("array");
+        assertEquals(10, ((YMap) array2.get(11)).get("n"));
+        // 状态向量只包含已构建的嵌套类型，对方尚未构建的嵌套类型会再发送一次，应用时随之构建
+        doc2.applyUpdate(doc1.encodeStateAsUpdate(doc2.encodeStateVector()));
+        byte[] idle = doc1.encodeStateAsUpdate(doc2.encodeStateVector());
+        rows.get(10).set("n", "changed");
+        byte[] one = doc1.encodeStateAsUpdate(doc2.encodeStateVector());
+        assertTrue(idle.length < 100, "idle update size: " + idle.length);
+        assertTrue(one.length < idle.length + 60, "update size: " + one.length);
+        doc2.applyUpdate(one);
+        assertEquals("changed", ((YMap) array2.get(11)).get("n"));
+
+        // 删除不推进状态向量，只有删除的嵌套序列仍然发送
+        notes.delete(0, 3);
+        doc2.applyUpdate(doc1.encodeStateAsUpdate(doc2.encodeStateVector()));
+        assertEquals(notes.toString(), item2.get("notes").toString());
+        YArray inner = new YArray();
+        rows.get(0).set("inner", inner);
+        YText deep = new YText();
+        inner.add(deep);
+        deep.append("deep");
+        doc2.applyUpdate(doc1.encodeStateAsUpdate(doc2.encodeStateVector()));
+        YText deep2 = (YText) ((YArray) ((YMap) array2.get(1)).get("inner")).get(0);
+        assertEquals("deep", deep2.toString());
+        deep.delete(0, 1);
+        doc2.applyUpdate(doc1.encodeStateAsUpdate(doc2.encodeStateVector()));
+        assertEquals("eep", deep2.toString());
+
+        // 双向同步之后状态向量一致，再次同步没有新的结构
+        ((YText) doc2.get("text")).append("!");
+        doc1.applyUpdate(doc2.encodeStateAsUpdate(doc1.encodeStateVector()));
+        assertEquals(text2.toString(), text1.toString());
+        assertEquals(doc1.getStateVector().get("text"), doc2.getStateVector().get("text"));
+
+        // 同名共享类型的种类不一致
+        YDoc doc3 = new YDoc();
+        doc3.register("text", new YMap());
+        assertThrows(IllegalArgumentException.class, () -> doc2.applyUpdate(doc3.encodeStateAsUpdate(null)));
+    }
+
+    @Test
+    void testYDocTransactions() {
+        YDoc doc = new YDoc();
+        YText text = new YText();
+        YMap map = new YMap();
+        YArray array = new YArray();
+        doc.register("text", text);
+        doc.register("map", map);
+        doc.register("array", array);
+        text.append("a-a-a-a");
+        array.add("first");
+
+        List<byte[]> updates = new ArrayList<>();
+        List<YEvent> events = new ArrayList<>();
+        doc.observeUpdate((update, tx) -> updates.add(update));
+        text.observeDeep(events::add);
+        long textVersion = text.getVersion();
+        long mapVersion = map.getVersion();
+        long docVersion = doc.getVersion();
+
+        // 全部替换：多次修改只递增一次版本号、产生一个事件和一个更新
+        Transaction committed = doc.transact(tx -> {
+            YText t = tx.get("text", YText.class);
+            for (int i = t.toString().indexOf('a'); i >= 0; i = t.toString().indexOf('a')) {
+                t.delete(i, i + 1);
+                t.insert(i, "b");
+            }
+            // 事务中读到的是最新内容
+            assertEquals("b-b-b-b", t.toString());
+            YMap m = tx.get("map", YMap.class);
+            for (int i = 0; i < 10; i++) {
+                m.set("k" + i, i);
+            }
+            // 事务中修改后，之前创建的视图仍能检测到修改
+            YArray a = tx.get("array", YArray.class);
+            List<Object> slice = a.slice(0, 1);
+            a.add("second");
+            assertThrows(ConcurrentModificationException.class, () -> slice.get(0));
+            assertThrows(IllegalArgumentException.class, () -> tx.get("map", YText.class));
+        });
+        assertEquals(textVersion + 1, text.getVersion());
+        assertEquals(mapVersion + 1, map.getVersion());
+        assertEquals(docVersion + 1, doc.getVersion());
+        assertEquals(textVersion, committed.getStartVersion("text"));
+        assertEquals(text.getVersion(), committed.getCommittedVersion("text"));
+        assertNotNull(text.getDelta(committed.getStartVersion("text"), committed.getCommittedVersion("text")));
+        assertThrows(IllegalArgumentException.class, () -> committed.getStartVersion("missing"));
+        assertEquals(1, events.size());
+        assertEquals(1, updates.size());
+        assertEquals(Set.of("text", "map", "array"), committed.getChanged());
+        assertSame(committed.encodeUpdate(), updates.get(0));
+        Delta delta = text.getDelta(textVersion);
+        assertNotNull(delta);
+
+        // 合并后的更新让另一方得到相同的状态
+        YDoc other = new YDoc();
+        other.applyUpdate(doc.encodeStateAsUpdate(null));
+        text.insert(0, ">");
+        doc.transact(tx -> tx.get("map", YMap.class).set("k0", "changed"));
+        assertEquals(2, updates.size());
+        other.applyUpdate(updates.get(1));
+        assertEquals("changed", ((YMap) other.get("map")).get("k0"));
+        assertEquals("second", ((YArray) other.get("array")).get(1));
+
+        // 没有修改的事务不递增版本号也不产生更新；嵌套的事务加入外层事务
+        long before = doc.getVersion();
+        doc.transact(tx -> doc.transact(inner -> assertSame(tx, inner)));
+        assertEquals(before, doc.getVersion());
+        assertEquals(2, updates.size());
+
+        // 回调抛出异常时已做的修改仍然提交，写锁被释放
+        assertThrows(IllegalStateException.class, () -> doc.transact(tx -> {
+            tx.get("map", YMap.class).set("k1", "kept");
+            throw new IllegalStateException();
+        }));
+        assertEquals("kept", map.get("k1"));
+        assertEquals(3, updates.size());
+        Thread writer = new Thread(() -> map.set("k2", "other thread"));
+        writer.start();
+        assertDoesNotThrow(() -> writer.join(5000));
+        assertEquals("other thread", map.get("k2"));
+    }
+
+    @Test
+    void testOperationDeltaBroadcast() {
+        List<Message<?>> sent = new ArrayList<>();
+        YjsController controller = new YjsController(new SimpMessagingTemplate((message, timeout) -> sent.add(message)));
+        controller.getDocument("doc-1");
+
+        // 客户端先同步一个名为notes的文本，文档ID与文本名称不同
+        YDoc client = new YDoc();
+        YText notes = new YText();
+        client.register("notes", notes);
+        notes.append("Hello");
+        controller.handleUpdate("doc-1", client.encodeStateAsUpdate(null));
+        sent.clear();
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("index", 5);
+        data.put("text", " world");
+        CRDTOperation operation = new BaseCRDTOperation(CRDTOperation.OperationType.INSERT, "notes", data);
+        assertSame(operation, controller.handleOperation("doc-1", operation));
+
+        // 操作应用到doc-1中的notes，并广播文本的增量变更
+        assertEquals(1, sent.size());
+        Message<?> message = sent.get(0);
+        assertEquals("/topic/document/doc-1/delta", SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        Map<?, ?> payload = (Map<?, ?>) message.getPayload();
+        assertEquals("notes", payload.get("name"));
+        Delta delta = (Delta) payload.get("delta");
+        assertFalse(delta.isEmpty());
+        assertEquals("Hello world", controller.getDocument("doc-1").get("notes"));
+
+        // 文档不存在时不应用也不广播
+        controller.handleOperation("missing", operation);
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    void testYDocOutOfOrderUpdates() {
+        YDoc doc = new YDoc();
+        YText text = new YText();
+        YMap map = new YMap();
+        doc.register("text", text);
+        doc.register("map", map);
+        text.append("XY");
+        YDoc first = new YDoc();
+        YDoc second = new YDoc();
+        first.applyUpdate(doc.encodeStateAsUpdate(null));
+        second.applyUpdate(doc.encodeStateAsUpdate(null));
+        Map<Integer, Long> synced = second.getStateVector().get("text");
+
+        List<byte[]> updates = new ArrayList<>();
+        doc.observeUpdate((update, tx) -> updates.add(update));
+        doc.transact(tx -> {
+            tx.get("text", YText.class).insert(1, "1");
+            tx.get("map", YMap.class).set("a", 1);
+        });
+        doc.transact(tx -> {
+            tx.get("text", YText.class).append("2");
+            tx.get("map", YMap.class).set("b", 2);
+        });
+        doc.transact(tx -> tx.get("text", YText.class).delete(1, 2));
+        assertEquals(3, updates.size());
+        assertEquals("XY2", text.toString());
+
+        // 先到达的第二个更新缺少同一客户端更早的时钟，暂存而不集成，状态向量不越过缺口
+        first.applyUpdate(updates.get(1));
+        assertEquals("XY", first.get("text").toString());
+        assertEquals(synced, first.getStateVector().get("text"));
+        first.applyUpdate(updates.get(0));
+        assertEquals("X1Y2", first.get("text").toString());
+        first.applyUpdate(updates.get(2));
+        assertEquals("XY2", first.get("text").toString());
+
+        // 删除先于被删除的插入到达；状态向量同步补齐缺口之后收敛
+        second.applyUpdate(updates.get(2));
+        second.applyUpdate(updates.get(1));
+        assertEquals("XY", second.get("text").toString());
+        assertEquals(2, ((YMap) second.get("map")).get("b"));
+        assertNull(((YMap) second.get("map")).get("a"));
+        second.applyUpdate(doc.encodeStateAsUpdate(second.encodeStateVector()));
+        assertEquals("XY2", second.get("text").toString());
+        assertEquals(1, ((YMap) second.get("map")).get("a"));
+        assertEquals(doc.getStateVector().get("text"), second.getStateVector().get("text"));
+        assertEquals(doc.getStateVector().get("text"), first.getStateVector().get("text"));
+        assertTrue(((YMap) second.get("map")).getChangesSince(first.getStateVector().get("map")).isEmpty());
+    }
+
+    @Test
+    void testObserverEvents() throws Exception {
+        YDoc doc = new YDoc();
+        YText text = new YText();
+        YArray array = new YArray();
+        YMap map = new YMap();
+        doc.register("text", text);
+        doc.register("array", array);
+        doc.register("map", map);
+        text.append("hello");
+        array.addAll(List.of("a", "b", "c"));
+        map.set("keep", 1);
+        map.set("drop", 2);
+
+        List<YEvent> textEvents = new ArrayList<>();
+        List<YEvent> arrayEvents = new ArrayList<>();
+        List<YEvent> mapEvents = new ArrayList<>();
+        List<List<YEvent>> docEvents = new ArrayList<>();
+        Consumer<YEvent> textObserver = textEvents::add;
+        text.observe(textObserver);
+        array.observe(arrayEvents::add);
+        map.observe(mapEvents::add);
+        doc.observeDeep(docEvents::add);
+
+        // 事务中的多次修改在提交时合并为每个类型一个事件，文档观察者收到一次全部事件
+        Object origin = new Object();
+        doc.transact(tx -> {
+            YText t = tx.get("text", YText.class);
+            t.append(" world");
+            t.delete(0, 1);
+            YArray a = tx.get("array", YArray.class);
+            a.add("d");
+            a.add("e");
+            a.remove(0);
+            YMap m = tx.get("map", YMap.class);
+            m.set("keep", 10);
+            m.set("keep", 100);
+            m.remove("drop");
+            m.set("temp", 3);
+            m.remove("temp");
+            m.set("new", 4);
+            // 提交之前不通知
+            assertTrue(textEvents.isEmpty());
+        }, origin);
+
+        assertEquals(1, textEvents.size());
+        YTextEvent textEvent = (YTextEvent) textEvents.get(0);
+        assertSame(text, textEvent.getTarget());
+        assertSame(origin, textEvent.getOrigin());
+        assertEquals(new Delta().delete(1).retain(4).insert(" world"), textEvent.getDelta());
+
+        assertEquals(1, arrayEvents.size());
+        YArrayEvent arrayEvent = (YArrayEvent) arrayEvents.get(0);
+        assertSame(origin, arrayEvent.getOrigin());
+        assertEquals(List.of(SequenceChange.insert(3, List.of("d", "e")), SequenceChange.delete(0, 1)),
+                arrayEvent.getChanges());
+
+        assertEquals(1, mapEvents.size());
+        YMapEvent mapEvent = (YMapEvent) mapEvents.get(0);
+        assertEquals(Set.of("keep", "drop", "new"), mapEvent.getKeysChanged());
+        assertEquals(new KeyChange(KeyChange.Action.UPDATE, 1), mapEvent.getKeys().get("keep"));
+        assertEquals(new KeyChange(KeyChange.Action.DELETE, 2), mapEvent.getKeys().get("drop"));
+        assertEquals(new KeyChange(KeyChange.Action.ADD, null), mapEvent.getKeys().get("new"));
+
+        assertEquals(1, docEvents.size());
+        assertEquals(3, docEvents.get(0).size());
+        assertEquals(Set.of(List.of("text"), List.of("array"), List.of("map")),
+                docEvents.get(0).stream().map(YEvent::getPath).collect(Collectors.toSet()));
+
+        // 事务之外的修改单独通知，来源为null
+        text.append("!");
+        assertEquals(2, textEvents.size());
+        assertNull(textEvents.get(1).getOrigin());
+        assertEquals(2, docEvents.size());
+
+        // 应用远端更新时事件带有指定的来源
+        YDoc other = new YDoc();
+        List<List<YEvent>> otherEvents = new ArrayList<>();
+        other.observeDeep(otherEvents::add);
+        other.applyUpdate(doc.encodeStateAsUpdate(null), "remote");
+        assertFalse(otherEvents.isEmpty());
+        assertTrue(otherEvents.stream().flatMap(List::stream).allMatch(event -> "remote".equals(event.getOrigin())));
+
+        // 浅观察者收不到嵌套类型的变化，深度观察者收到带路径的事件
+        YMap nested = new YMap();
+        map.set("nested", nested);
+        int shallow = mapEvents.size();
+        List<YEvent> deepEvents = new ArrayList<>();
+        map.observeDeep(deepEvents::add);
+        nested.set("x", 1);
+        assertEquals(shallow, mapEvents.size());
+        assertEquals(1, deepEvents.size());
+        assertEquals(List.of("nested"), deepEvents.get(0).getPath());
+        assertEquals(List.of("map", "nested"), docEvents.get(docEvents.size() - 1).get(0).getPath());
+
+        // 异步分发：回调在执行器中运行，不阻塞修改的线程
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch received = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            array.observe(event -> {
+                threads.add(Thread.currentThread());
+                received.countDown();
+            }, executor);
+            array.add("async");
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            assertNotSame(Thread.currentThread(), threads.get(0));
+        } finally {
+            executor.shutdown();
+        }
+
+        // 移除后不再通知
+        text.unobserve(textObserver);
+        int before = docEvents.size();
+        List<List<YEvent>> removed = new ArrayList<>();
+        Consumer<List<YEvent>> observer = removed::add;
+        doc.observeDeep(observer);
+        doc.unobserveDeep(observer);
+        text.append("?");
+        assertEquals(2, textEvents.size());
+        assertEquals(before + 1, docEvents.size());
+        assertTrue(removed.isEmpty());
+    }
+
+    @Test
+    void testCompactUpdateEncoding() throws Exception {
+        // 变长整数和客户端表的往返
+        UpdateEncoder out = new UpdateEncoder();
+        long[] values = {0, 1, 63, 64, -64, 127, 128, -1, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            out.writeVarInt(value);
+            out.writeVarUint(value);
+        }
+        out.writeClient(123456789);
+        out.writeClient(-5);
+        out.writeClient(123456789);
+        out.writeString("中文");
+        UpdateDecoder in = new UpdateDecoder(out.toByteBuffer());
+        for (long value : values) {
+            assertEquals(value, in.readVarInt());
+            assertEquals(value, in.readVarUint());
+        }
+        assertEquals(123456789, in.readClient());
+        assertEquals(-5, in.readClient());
+        assertEquals(123456789, in.readClient());
+        assertEquals("中文", in.readString());
+        assertFalse(in.hasRemaining());
+
+        // 连续输入的单个字符只需要十几个字节
+        YDoc doc1 = new YDoc();
+        YDoc doc2 = new YDoc();
+        YText text1 = new YText();
+        doc1.register("text", text1);
+        text1.append("hello");
+        doc2.applyUpdate(doc1.encodeStateAsUpdate(null));
+        text1.insert(5, "!");
+        byte[] update = doc1.encodeStateAsUpdate(doc2.encodeStateVector());
+        assertTrue(update.length < 24, "update size: " + update.length);
+        doc2.applyUpdate(update);
+        assertEquals("hello!", doc2.get("text").toString());
+
+        // 数组的原始类型内容和删除集合经过编码后保持一致
+        YLongArray longs1 = new YLongArray();
+        doc1.register("longs", longs1);
+        for (int i = 0; i < 100; i++) {
+            longs1.add(i - 50L);
+        }
+        longs1.remove(10);
+        doc2.applyUpdate(doc1.encodeStateAsUpdate(doc2.encodeStateVector()));
+        assertArrayEquals(longs1.toArray(), ((YLongArray) doc2.get("longs")).toArray());
+
+        // 被截断的更新
+        byte[] truncated = Arrays.copyOf(update, update.length - 1);
+        assertThrows(UncheckedIOException.class, () -> new YDoc().applyUpdate(truncated));
+    }
+
+    @Test
+    void testPendingOperations() {
+        YDoc doc = new YDoc();
+        YMap settings = new YMap();
+        doc.register("settings", settings);
+
+        // 目标尚未注册的操作等待，注册时只应用等待该目标的操作
+        BaseCRDTOperation early = new BaseCRDTOperation(CRDTOperation.OperationType.INSERT, "list",
+                Map.of("index", 0, "element", "first"));
+        BaseCRDTOperation other = new BaseCRDTOperation(CRDTOperation.OperationType.INSERT, "other",
+                Map.of("index", 0, "element", "x"));
+        doc.applyOperation(early);
+        doc.applyOperation(other);
+        assertEquals(2, doc.getPendingOperationCount());
+        YArray list = new YArray();
+        doc.register("list", list);
+        assertEquals(List.of("first"), list.getState());
+        assertEquals(1, doc.getPendingOperationCount());
+
+        // 依赖尚未应用的操作等待，依赖应用后随之应用，依赖链上的操作依次应用
+        BaseCRDTOperation first = new BaseCRDTOperation(CRDTOperation.OperationType.UPDATE, "settings", Map.of("mode", "a"));
+        BaseCRDTOperation second = new BaseCRDTOperation(CRDTOperation.OperationType.UPDATE, "settings", Map.of("mode", "b"));
+        BaseCRDTOperation third = new BaseCRDTOperation(CRDTOperation.OperationType.UPDATE, "settings", Map.of("mode", "c"));
+        second.setDependency(new ID(first.getClientId(), first.getClock()));
+        third.setDependency(new ID(second.getClientId(), second.getClock()));
+        doc.applyOperation(third);
+        doc.applyOperation(second);
+        assertNull(settings.get("mode"));
+        assertEquals(3, doc.getPendingOperationCount());
+        doc.applyOperation(first);
+        assertEquals("c", settings.get("mode"));
+        assertEquals(1, doc.getPendingOperationCount());
+        assertEquals(3, doc.getPeakPendingOperationCount());
+
+        // 依赖已经应用的操作直接应用
+        BaseCRDTOperation late = new BaseCRDTOperation(CRDTOperation.OperationType.UPDATE, "settings", Map.of("mode", "d"));
+        late.setDependency(new ID(first.getClientId(), first.getClock()));
+        doc.applyOperation(late);
+        assertEquals("d", settings.get("mode"));
+
+        // 更晚的时钟先应用，不会提前放行等待更早时钟的操作
+        BaseCRDTOperation earlier = new BaseCRDTOperation(CRDTOperation.OperationType.UPDATE, "settings", Map.of("mode", "e"));
+        BaseCRDTOperation later = new BaseCRDTOperation(CRDTOperation.OperationType.UPDATE, "settings", Map.of("mode", "f"));
+        BaseCRDTOperation waiter = new BaseCRDTOperation(CRDTOperation.OperationType.UPDATE, "settings", Map.of("mode", "g"));
+        waiter.setDependency(new ID(earlier.getClientId(), earlier.getClock()));
+        doc.applyOperation(later);
+        doc.applyOperation(waiter);
+        assertEquals("f", settings.get("mode"));
+        doc.applyOperation(earlier);
+        assertEquals("g", settings.get("mode"));
+
+        // 结构的时钟与操作的时钟相互独立：二进制更新覆盖了相同的客户端和时钟，也不会放行等待操作的依赖
+        YDoc remote = new YDoc();
+        YText text = new YText();
+        remote.register("text", text);
+        text.append("hi");
+        BaseCRDTOperation afterText = new BaseCRDTOperation(CRDTOperation.OperationType.UPDATE, "settings", Map.of("mode", "h"));
+        afterText.setDependency(new ID(text.getClientId(), 1));
+        doc.applyOperation(afterText);
+        doc.applyUpdate(remote.encodeStateAsUpdate(null));
+        assertEquals("hi", doc.get("text").toString());
+        assertEquals("g", settings.get("mode"));
+        assertEquals(2, doc.getPendingOperationCount());
+        BaseCRDTOperation fromText = new BaseCRDTOperation(CRDTOperation.OperationType.UPDATE, "settings", Map.of("mode", "i"));
+        fromText.setClientId(text.getClientId());
+        fromText.setClock(1);
+        doc.applyOperation(fromText);
+        assertEquals("h", settings.get("mode"));
+        assertEquals(1, doc.getPendingOperationCount());
+
+        // 队列容量有限，超出时拒绝并计数
+        doc.setMaxPendingOperations(1);
+        assertThrows(IllegalStateException.class, () -> doc.applyOperation(
+                new BaseCRDTOperation(CRDTOperation.OperationType.INSERT, "missing", Map.of())));
+        assertEquals(1, doc.getRejectedOperationCount());
+        assertEquals(1, doc.getPendingOperationCount());
+        doc.clear();
+        assertEquals(0, doc.getPendingOperationCount());
+
+        // 清空后已应用的记录一并清除
+        BaseCRDTOperation again = new BaseCRDTOperation(CRDTOperation.OperationType.UPDATE, "settings", Map.of("mode", "i"));
+        again.setDependency(new ID(first.getClientId(), first.getClock()));
+        doc.applyOperation(again);
+        assertEquals(1, doc.getPendingOperationCount());
     }
 
     @Test
@@ -0,0 +1,76 @@
+package com.cdfeih.yjs.java.benchmark;
+
+import com.cdfeih.yjs.java.crdt.types.YArray;
+import com.cdfeih.yjs.java.crdt.types.YDoubleArray;
+import com.cdfeih.yjs.java.crdt.types.YLongArray;
+
+import java.util.function.Supplier;
+
+/**
+ * 数值序列内存占用基准测试
+ * <p>
+ * 分别用YArray、YLongArray和YDoubleArray逐个追加100万个数值，统计每个元素平均占用的堆内存。
+ * 运行方式：mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * -Dexec.args="-cp %classpath com.cdfeih.yjs.java.benchmark.YArrayMemoryBenchmark"
+ */
+public class YArrayMemoryBenchmark {
+
+    private static final int ELEMENT_COUNT = 1_000_000;
+
+    public static void main(String[] args) {
+        report("YArray", () -> {
+            YArray array = new YArray();
+            for (int i = 0; i < ELEMENT_COUNT; i++) {
+                array.add((long) i);
+            }
+            return array;
+        });
+        report("YLongArray", () -> {
+            YLongArray array = new YLongArray();
+            for (int i = 0; i < ELEMENT_COUNT; i++) {
+                array.add(i);
+            }
+            return array;
+        });
+        report("YDoubleArray", () -> {
+            YDoubleArray array = new YDoubleArray();
+            for (int i = 0; i < ELEMENT_COUNT; i++) {
+                array.add(i * 0.5);
+            }
+            return array;
+        });
+    }
+
+    private static void report(String name, Supplier<Object> builder) {
+        // 预热一次，避免类加载等因素影响统计
+        builder.get();
+
+        long before = usedHeap();
+        long start = System.nanoTime();
+        Object array = builder.get();
+        long elapsed = System.nanoTime() - start;
+        long after = usedHeap();
+
+        System.out.printf("%-12s elements=%d heap=%.1f MB bytes/element=%.1f build=%d ms%n",
+                name, ELEMENT_COUNT, (after - before) / 1024.0 / 1024.0,
+                (double) (after - before) / ELEMENT_COUNT, elapsed / 1_000_000);
+        // 保证统计期间数组仍然可达
+        if (array.hashCode() == 0) {
+            System.out.println();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
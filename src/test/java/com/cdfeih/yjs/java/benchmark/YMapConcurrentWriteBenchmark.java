@@ -0,0 +1,87 @@
+package com.cdfeih.yjs.java.benchmark;
+
+import com.cdfeih.yjs.java.crdt.types.YMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * YMap并发写入基准测试
+ * <p>
+ * 多个线程同时向同一个映射写入，每个线程在自己的一组键上循环覆盖写入，分别以1、2、4、8个线程运行，
+ * 比较总吞吐量随线程数的变化。不同键上的写入只在各自的寄存器上原子替换，但每次写入仍要更新读写锁的共享计数、
+ * 逻辑时钟和版本号这几个共享的原子变量，吞吐量能随线程数增长多少取决于这些变量上的竞争，需要在多核机器上实测。
+ * 运行方式：mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * -Dexec.args="-cp %classpath com.cdfeih.yjs.java.benchmark.YMapConcurrentWriteBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class YMapConcurrentWriteBenchmark {
+
+    private static final int KEYS_PER_THREAD = 1024;
+
+    @State(Scope.Benchmark)
+    public static class SharedMap {
+        YMap map;
+        final AtomicInteger threads = new AtomicInteger();
+
+        @Setup(Level.Iteration)
+        public void createMap() {
+            map = new YMap();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        String[] keys;
+        int next;
+
+        @Setup
+        public void createKeys(SharedMap shared) {
+            int thread = shared.threads.getAndIncrement();
+            keys = new String[KEYS_PER_THREAD];
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                keys[i] = "t" + thread + "-" + i;
+            }
+        }
+    }
+
+    @Benchmark
+    public Object set(SharedMap shared, Writer writer) {
+        int i = writer.next++ & (KEYS_PER_THREAD - 1);
+        return shared.map.set(writer.keys[i], i);
+    }
+
+    @Benchmark
+    public Object get(SharedMap shared, Writer writer) {
+        int i = writer.next++ & (KEYS_PER_THREAD - 1);
+        return shared.map.get(writer.keys[i]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            new Runner(new OptionsBuilder()
+                    .include(YMapConcurrentWriteBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.cdfeih.yjs.java.benchmark;
+
+import com.cdfeih.yjs.java.crdt.types.YText;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * YText内存占用基准测试
+ * <p>
+ * 分别以"整段粘贴"和"逐字输入"两种方式构建约200KB的文档，统计每个字符平均占用的堆内存。
+ * 运行方式：mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * -Dexec.args="-cp %classpath com.cdfeih.yjs.java.benchmark.YTextMemoryBenchmark"
+ */
+public class YTextMemoryBenchmark {
+
+    private static final int DOCUMENT_SIZE = 200 * 1024;
+    private static final int DOCUMENT_COUNT = 5;
+
+    public static void main(String[] args) {
+        report("paste", YTextMemoryBenchmark::buildByPaste);
+        report("typing", YTextMemoryBenchmark::buildByTyping);
+    }
+
+    /**
+     * 以每次粘贴一段文本的方式构建文档
+     */
+    private static YText buildByPaste(Random random) {
+        YText text = new YText();
+        while (text.length() < DOCUMENT_SIZE) {
+            text.insert(random.nextInt(text.length() + 1), randomText(random, 1024));
+        }
+        return text;
+    }
+
+    /**
+     * 模拟逐字输入：光标大多数时候连续前进，偶尔跳到文档中的其他位置
+     */
+    private static YText buildByTyping(Random random) {
+        YText text = new YText();
+        int cursor = 0;
+        while (text.length() < DOCUMENT_SIZE) {
+            if (random.nextInt(100) == 0) {
+                cursor = random.nextInt(text.length() + 1);
+            }
+            text.insert(cursor, String.valueOf((char) ('a' + random.nextInt(26))));
+            cursor++;
+        }
+        return text;
+    }
+
+    private static void report(String name, java.util.function.Function<Random, YText> builder) {
+        // 预热一次，避免类加载等因素影响统计
+        builder.apply(new Random(1));
+
+        long before = usedHeap();
+        List<YText> documents = new ArrayList<>();
+        for (int i = 0; i < DOCUMENT_COUNT; i++) {
+            documents.add(builder.apply(new Random(i)));
+        }
+        long after = usedHeap();
+
+        long chars = documents.stream().mapToLong(YText::length).sum();
+        System.out.printf("%-8s documents=%d chars=%d heap=%.1f MB bytes/char=%.1f%n",
+                name, documents.size(), chars, (after - before) / 1024.0 / 1024.0, (double) (after - before) / chars);
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
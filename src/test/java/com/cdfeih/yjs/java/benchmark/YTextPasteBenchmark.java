@@ -0,0 +1,95 @@
+package com.cdfeih.yjs.java.benchmark;
+
+import com.cdfeih.yjs.java.crdt.types.YText;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * YText大段粘贴基准测试
+ * <p>
+ * 分别以String、char[]和Reader为来源把一段文本粘贴到空文档末尾或已有文档中间。
+ * 运行方式：mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * -Dexec.args="-cp %classpath com.cdfeih.yjs.java.benchmark.YTextPasteBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class YTextPasteBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int size;
+
+    private String blob;
+    private char[] chars;
+
+    @Setup
+    public void generateBlob() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            sb.append((char) ('a' + random.nextInt(26)));
+            if (random.nextInt(8) == 0) {
+                sb.append(' ');
+            }
+        }
+        sb.setLength(size);
+        blob = sb.toString();
+        chars = blob.toCharArray();
+    }
+
+    @Benchmark
+    public YText pasteString() {
+        YText text = new YText();
+        text.append(blob);
+        return text;
+    }
+
+    @Benchmark
+    public YText pasteCharArray() {
+        YText text = new YText();
+        text.append(chars);
+        return text;
+    }
+
+    @Benchmark
+    public YText pasteReader() throws IOException {
+        YText text = new YText();
+        text.append(new StringReader(blob));
+        return text;
+    }
+
+    @Benchmark
+    public YText pasteIntoMiddle() {
+        YText text = new YText();
+        text.append("header\nfooter\n");
+        text.insert(7, blob);
+        return text;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(YTextPasteBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}